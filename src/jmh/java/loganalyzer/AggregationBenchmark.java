@@ -0,0 +1,84 @@
+package loganalyzer;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Counting parsed entries into the user and domain structures, and selecting the popular domains from them.
+ * Cardinality of IPs and domains is configurable to see how the structures behave as they grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AggregationBenchmark {
+	
+	@Param({"500000"})
+	public int lineCount;
+	
+	@Param({"1000", "100000"})
+	public int ipCount;
+	
+	@Param({"100", "10000"})
+	public int domainCount;
+	
+	@Param({"30"})
+	public int dayCount;
+	
+	private LogDataEntry[] entries;
+	private LogUsageData filledUsageData;
+	
+	@Setup(Level.Trial)
+	public void parseEntries() throws ParseException, IOException {
+		List<String> lines = SyntheticLogs.lines(lineCount, ipCount, domainCount, dayCount);
+		entries = new LogDataEntry[lines.size()];
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = new LogDataEntry(lines.get(i));
+		}
+		filledUsageData = new LogUsageData((LargeFile) null);
+		for (LogDataEntry entry : entries) {
+			filledUsageData.updateDomainHashMap(entry);
+		}
+	}
+	
+	@Benchmark
+	public LogUsageData updateUserDataTable() {
+		LogUsageData usageData = new LogUsageData((LargeFile) null);
+		for (LogDataEntry entry : entries) {
+			usageData.updateUserDataTable(entry);
+		}
+		return usageData;
+	}
+	
+	@Benchmark
+	public LogUsageData updateDomainHashMap() throws IOException {
+		LogUsageData usageData = new LogUsageData((LargeFile) null);
+		for (LogDataEntry entry : entries) {
+			usageData.updateDomainHashMap(entry);
+		}
+		return usageData;
+	}
+	
+	@Benchmark
+	public LogUsageData createPopularDomainsList() throws IOException {
+		filledUsageData.createPopularDomainsList();
+		return filledUsageData;
+	}
+}
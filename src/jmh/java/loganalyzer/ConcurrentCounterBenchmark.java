@@ -0,0 +1,70 @@
+package loganalyzer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Many threads counting into one table: the lock-free ConcurrentCounterTable against a DailyDomainCounterTable 
+ * behind a lock. Few keys means the threads keep hitting the same slots, many keys that the tables keep growing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(4)
+public class ConcurrentCounterBenchmark {
+	
+	@Param({"16", "1000000"})
+	public int keyCount;
+	
+	private ConcurrentCounterTable concurrentTable;
+	private DailyDomainCounterTable lockedTable;
+	
+	/**
+	 * The next key of each thread, a simple LCG so the threads do not share a random generator.
+	 */
+	@State(Scope.Thread)
+	public static class Keys {
+		private long seed = System.nanoTime();
+		
+		int next(int keyCount) {
+			seed = seed * 6364136223846793005L + 1442695040888963407L;
+			return (int) ((seed >>> 33) % keyCount);
+		}
+	}
+	
+	@Setup(Level.Iteration)
+	public void createTables() {
+		concurrentTable = new ConcurrentCounterTable();
+		lockedTable = new DailyDomainCounterTable();
+	}
+	
+	@Benchmark
+	public void concurrentAdd(Keys keys) {
+		int key = keys.next(keyCount);
+		concurrentTable.add(key % 30, key, 0, 1);
+	}
+	
+	@Benchmark
+	public void lockedAdd(Keys keys) {
+		int key = keys.next(keyCount);
+		synchronized (lockedTable) {
+			lockedTable.add(key % 30, key, 1);
+		}
+	}
+}
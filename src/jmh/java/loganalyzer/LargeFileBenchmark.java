@@ -0,0 +1,70 @@
+package loganalyzer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a whole log file line by line with each LargeFile implementation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LargeFileBenchmark {
+	
+	@Param({"1000000"})
+	public int lineCount;
+	
+	private File logFile;
+	
+	@Setup
+	public void createLog() throws IOException {
+		logFile = SyntheticLogs.write(lineCount, 10000, 1000, 30);
+	}
+	
+	@Benchmark
+	public long scannerReadLine() throws IOException {
+		return readAllLines(new LargeLogFile(logFile.getPath()));
+	}
+	
+	@Benchmark
+	public long mappedReadLine() throws IOException {
+		return readAllLines(new MappedLogFile(logFile.getPath()));
+	}
+	
+	@Benchmark
+	public long mappedNextLine() throws IOException {
+		MappedLogFile file = new MappedLogFile(logFile.getPath());
+		LineSlice line = new LineSlice();
+		long length = 0;
+		while (file.nextLine(line)) {
+			length += line.length();
+		}
+		return length;
+	}
+	
+	private static long readAllLines(LargeFile file) throws IOException {
+		long length = 0;
+		String line = file.readLine();
+		while (!line.isEmpty()) {
+			length += line.length();
+			line = file.readLine();
+		}
+		return length;
+	}
+}
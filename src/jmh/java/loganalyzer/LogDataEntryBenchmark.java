@@ -0,0 +1,74 @@
+package loganalyzer;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing single log lines and building the aggregation keys from them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LogDataEntryBenchmark {
+	private static final int LINE_COUNT = 4096;
+	
+	private String[] lines;
+	private LineSlice[] slices;
+	private LogDataEntry reusedEntry;
+	private int next;
+	
+	@Setup
+	public void createLines() {
+		List<String> generated = SyntheticLogs.lines(LINE_COUNT, 10000, 1000, 30);
+		lines = generated.toArray(new String[LINE_COUNT]);
+		slices = new LineSlice[LINE_COUNT];
+		for (int i = 0; i < LINE_COUNT; i++) {
+			slices[i] = LineSlice.wrap(lines[i].getBytes(StandardCharsets.UTF_8));
+		}
+		reusedEntry = new LogDataEntry();
+	}
+	
+	@Benchmark
+	public LogDataEntry constructFromString() throws ParseException {
+		return new LogDataEntry(nextLine());
+	}
+	
+	@Benchmark
+	public void constructAndBuildKeys(Blackhole blackhole) throws ParseException {
+		LogDataEntry entry = new LogDataEntry(nextLine());
+		blackhole.consume(entry.userData());
+		blackhole.consume(entry.domainData());
+	}
+	
+	@Benchmark
+	public long parseReusedEntryFromSlice() throws ParseException {
+		reusedEntry.parse(slices[nextIndex()]);
+		return reusedEntry.epochHour();
+	}
+	
+	private String nextLine() {
+		return lines[nextIndex()];
+	}
+	
+	private int nextIndex() {
+		next = (next + 1) & (LINE_COUNT - 1);
+		return next;
+	}
+}
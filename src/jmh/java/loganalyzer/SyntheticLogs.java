@@ -0,0 +1,65 @@
+package loganalyzer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates time-ordered synthetic log lines for the benchmarks. The same parameters always give the same lines.
+ * 
+ * Domain popularity is skewed so that a few domains get most of the requests, like in real access logs.
+ */
+final class SyntheticLogs {
+	private static final long SEED = 42;
+	
+	private SyntheticLogs() {
+	}
+	
+	/**
+	 * @param lineCount number of lines, spread evenly over the days
+	 * @param ipCount number of distinct IPv4 addresses
+	 * @param domainCount number of distinct domains
+	 * @param dayCount number of days starting at 2014/11/01
+	 */
+	static List<String> lines(int lineCount, int ipCount, int domainCount, int dayCount) {
+		Random random = new Random(SEED);
+		List<String> lines = new ArrayList<String>(lineCount);
+		long firstSecond = LogTime.epochDay(2014, 11, 1) * LogTime.SECONDS_PER_DAY;
+		long secondsPerLine = Math.max(1, (long) dayCount * LogTime.SECONDS_PER_DAY / Math.max(1, lineCount));
+		StringBuilder builder = new StringBuilder(64);
+		
+		for (int i = 0; i < lineCount; i++) {
+			int ip = random.nextInt(ipCount);
+			double skew = random.nextDouble();
+			int domain = (int) (skew * skew * skew * domainCount);
+			
+			builder.setLength(0);
+			LogTime.appendDateTime(builder, firstSecond + i * secondsPerLine);
+			builder.append(", 10.").append((ip >>> 16) & 0xff).append('.').append((ip >>> 8) & 0xff).append('.').append(ip & 0xff);
+			builder.append(random.nextInt(4) == 0 ? ", POST, " : ", GET, ");
+			builder.append("domain").append(domain).append(".com");
+			lines.add(builder.toString());
+		}
+		return lines;
+	}
+	
+	/**
+	 * Writes the lines to a temporary file that is deleted when the JVM exits.
+	 */
+	static File write(int lineCount, int ipCount, int domainCount, int dayCount) throws IOException {
+		File file = File.createTempFile("synthetic-log", ".log");
+		file.deleteOnExit();
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			for (String line : lines(lineCount, ipCount, domainCount, dayCount)) {
+				writer.write(line);
+				writer.write('\n');
+			}
+		}
+		return file;
+	}
+}
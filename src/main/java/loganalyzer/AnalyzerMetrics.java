@@ -0,0 +1,193 @@
+package loganalyzer;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters of a running analysis: lines and bytes read, entries parsed, parse failures and the sizes of the 
+ * counting tables, plus the GC activity of the JVM. They can be printed as a periodic progress line and 
+ * read through JMX while the log is processed.
+ * 
+ * Reading threads count in local variables and add them here every FLUSH_LINES lines, into LongAdders so 
+ * that concurrent readers don't contend. When no metrics are set, the readers skip even that.
+ */
+public final class AnalyzerMetrics implements AnalyzerMetricsMBean {
+	static final int FLUSH_LINES = 4096;
+	static final String OBJECT_NAME = "loganalyzer:type=AnalyzerMetrics";
+	
+	private final LongAdder linesRead = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder entriesParsed = new LongAdder();
+	private final LongAdder parseFailures = new LongAdder();
+	private final AtomicLong userKeys = new AtomicLong();
+	private final AtomicLong domainKeys = new AtomicLong();
+	private final long startNanos = System.nanoTime();
+	
+	private ScheduledExecutorService progressTimer;
+	private ObjectName registeredName;
+	
+	// Values at the last progress line, for the rates since then. Only used on the progress thread.
+	private long lastProgressNanos = startNanos;
+	private long lastProgressLines;
+	private long lastProgressBytes;
+	
+	/**
+	 * Adds the lines read and parsed by a reading thread since its last call.
+	 */
+	void addLines(long lines, long bytes, long parsed) {
+		linesRead.add(lines);
+		bytesRead.add(bytes);
+		entriesParsed.add(parsed);
+	}
+	
+	void addParseFailure() {
+		parseFailures.increment();
+	}
+	
+	/**
+	 * Records the number of keys in the user and domain tables being filled.
+	 */
+	void setTableSizes(long users, long domains) {
+		userKeys.set(users);
+		domainKeys.set(domains);
+	}
+	
+	@Override
+	public long getLinesRead() {
+		return linesRead.sum();
+	}
+	
+	@Override
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+	
+	@Override
+	public long getEntriesParsed() {
+		return entriesParsed.sum();
+	}
+	
+	@Override
+	public long getParseFailures() {
+		return parseFailures.sum();
+	}
+	
+	@Override
+	public long getUserKeys() {
+		return userKeys.get();
+	}
+	
+	@Override
+	public long getDomainKeys() {
+		return domainKeys.get();
+	}
+	
+	@Override
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+	
+	@Override
+	public long getLinesPerSecond() {
+		long nanos = System.nanoTime() - startNanos;
+		return nanos == 0 ? 0 : getLinesRead() * TimeUnit.SECONDS.toNanos(1) / nanos;
+	}
+	
+	@Override
+	public long getGcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+	
+	@Override
+	public long getGcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, collector.getCollectionTime());
+		}
+		return millis;
+	}
+	
+	@Override
+	public long getHeapUsedBytes() {
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+	
+	/**
+	 * Prints a progress line to the given stream every intervalMillis, on a daemon thread, until stop() is called.
+	 */
+	public synchronized void startProgress(long intervalMillis, PrintStream output) {
+		if (progressTimer != null) {
+			throw new IllegalStateException("Progress is already reported.");
+		}
+		progressTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "progress");
+			thread.setDaemon(true);
+			return thread;
+		});
+		progressTimer.scheduleAtFixedRate(() -> output.println(progressLine()), intervalMillis, intervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Registers these metrics with the platform MBean server.
+	 */
+	public synchronized void registerMBean() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(this, name);
+		registeredName = name;
+	}
+	
+	/**
+	 * Stops the progress line and unregisters the MBean.
+	 */
+	public synchronized void stop() {
+		if (progressTimer != null) {
+			progressTimer.shutdownNow();
+			progressTimer = null;
+		}
+		if (registeredName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			} catch (JMException e) {
+				// Already gone
+			}
+			registeredName = null;
+		}
+	}
+	
+	/**
+	 * Totals so far, and line and byte rates since the previous progress line.
+	 */
+	String progressLine() {
+		long now = System.nanoTime();
+		long lines = getLinesRead();
+		long bytes = getBytesRead();
+		double seconds = Math.max(1, now - lastProgressNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+		String line = String.format("Progress: %d lines (%.0f lines/s), %.1f MB (%.1f MB/s), %d parse failures, "
+				+ "%d user keys, %d domain keys, GC %d collections %d ms, heap %d MB",
+				lines, (lines - lastProgressLines) / seconds, bytes / 1e6, (bytes - lastProgressBytes) / 1e6 / seconds,
+				getParseFailures(), getUserKeys(), getDomainKeys(), getGcCount(), getGcMillis(), getHeapUsedBytes() >> 20);
+		lastProgressNanos = now;
+		lastProgressLines = lines;
+		lastProgressBytes = bytes;
+		return line;
+	}
+}
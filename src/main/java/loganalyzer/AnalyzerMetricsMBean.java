@@ -0,0 +1,28 @@
+package loganalyzer;
+
+/**
+ * JMX view of AnalyzerMetrics, registered as "loganalyzer:type=AnalyzerMetrics".
+ */
+public interface AnalyzerMetricsMBean {
+	public long getLinesRead();
+	
+	public long getBytesRead();
+	
+	public long getEntriesParsed();
+	
+	public long getParseFailures();
+	
+	public long getUserKeys();
+	
+	public long getDomainKeys();
+	
+	public long getElapsedMillis();
+	
+	public long getLinesPerSecond();
+	
+	public long getGcCount();
+	
+	public long getGcMillis();
+	
+	public long getHeapUsedBytes();
+}
@@ -0,0 +1,547 @@
+package loganalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line options of LogAnalyzer. Options have the form "--name=value" and may appear 
+ * in any order before or after the log paths.
+ */
+final class AnalyzerOptions {
+	private final List<String> logPaths = new ArrayList<String>();
+	private int threadCount;
+	private boolean sharedCounters;
+	private boolean streamDomains;
+	private int domainRank;
+	private int topDomainCount;
+	private boolean approximate;
+	private boolean distinctUsers;
+	private long followIntervalMillis;
+	private String checkpointPath;
+	private long checkpointIntervalMillis = TimeUnit.SECONDS.toMillis(DEFAULT_CHECKPOINT_INTERVAL_SECONDS);
+	
+	private static final long DEFAULT_FOLLOW_INTERVAL_SECONDS = 10;
+	private static final long DEFAULT_CHECKPOINT_INTERVAL_SECONDS = 60;
+	private static final long DEFAULT_PROGRESS_INTERVAL_SECONDS = 10;
+	private static final String DEFAULT_INDEX_SUFFIX = ".idx";
+	
+	private boolean buildIndex;
+	private String indexPath;
+	private boolean useIndex;
+	private String outputPath;
+	private Format format = Format.TEXT;
+	private boolean pipeline;
+	private int pipelineParserCount;
+	private long progressIntervalMillis;
+	private boolean jmx;
+	
+	// Filter options, see LineFilter
+	private LineFilter filter;
+	private long fromSecond = Long.MIN_VALUE;
+	private long toSecond = Long.MAX_VALUE;
+	private boolean sorted;
+	
+	// Sharding: write the counts as a partial result, or merge partial results into the reports
+	private String partialPath;
+	private boolean merge;
+	
+	// Off-heap user counts, see OffHeapCounterSlots, and external sorting of big reports, see SortedRuns
+	private long offHeapBytes;
+	private String spillDirectory;
+	private static final long DEFAULT_OFF_HEAP_MEGABYTES = 1024;
+	private long sortMemoryBytes = Runtime.getRuntime().maxMemory() / 4;
+	
+	// Time buckets of the user counts, see TimeBuckets
+	private TimeBuckets timeBuckets = TimeBuckets.HOURLY;
+	
+	// Server mode, see UsageServer
+	private int servePort = -1;
+	private static final int DEFAULT_SERVE_PORT = 8080;
+	
+	// Skip mode: the error budget of malformed lines and their quarantine file, see MalformedLines
+	private long maxErrors = -1;
+	private String quarantinePath;
+	
+	/**
+	 * Report formats, see TextReportSink and BinaryReportSink.
+	 */
+	enum Format {
+		TEXT, CSV, BINARY
+	}
+	
+	private AnalyzerOptions() {
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if an option is unknown or has an invalid value, or if the log path is missing
+	 */
+	static AnalyzerOptions parse(String[] args) {
+		AnalyzerOptions options = new AnalyzerOptions();
+		for (String arg : args) {
+			if (!arg.startsWith("--")) {
+				options.logPaths.add(arg);
+				continue;
+			}
+			
+			int separator = arg.indexOf('=');
+			String name = separator < 0 ? arg.substring(2) : arg.substring(2, separator);
+			String value = separator < 0 ? "" : arg.substring(separator + 1);
+			switch (name) {
+				case "threads":
+					options.threadCount = parsePositiveInt(name, value);
+					break;
+				case "shared-counters":
+					options.sharedCounters = true;
+					break;
+				case "stream-domains":
+					options.streamDomains = true;
+					break;
+				case "domain-rank":
+					options.domainRank = parsePositiveInt(name, value);
+					break;
+				case "top-domains":
+					options.topDomainCount = parsePositiveInt(name, value);
+					break;
+				case "approximate":
+					options.approximate = true;
+					break;
+				case "distinct-users":
+					options.distinctUsers = true;
+					break;
+				case "follow":
+					long seconds = value.isEmpty() ? DEFAULT_FOLLOW_INTERVAL_SECONDS : parsePositiveInt(name, value);
+					options.followIntervalMillis = TimeUnit.SECONDS.toMillis(seconds);
+					break;
+				case "checkpoint":
+					if (value.isEmpty()) {
+						throw new IllegalArgumentException("Option --checkpoint expects a file path.");
+					}
+					options.checkpointPath = value;
+					break;
+				case "checkpoint-interval":
+					options.checkpointIntervalMillis = TimeUnit.SECONDS.toMillis(parsePositiveInt(name, value));
+					break;
+				case "build-index":
+					options.buildIndex = true;
+					options.indexPath = value.isEmpty() ? null : value;
+					break;
+				case "index":
+					options.useIndex = true;
+					options.indexPath = value.isEmpty() ? null : value;
+					break;
+				case "output":
+					if (value.isEmpty()) {
+						throw new IllegalArgumentException("Option --output expects a file path.");
+					}
+					options.outputPath = value;
+					break;
+				case "pipeline":
+					options.pipeline = true;
+					options.pipelineParserCount = value.isEmpty() ? 0 : parsePositiveInt(name, value);
+					break;
+				case "progress":
+					long progressSeconds = value.isEmpty() ? DEFAULT_PROGRESS_INTERVAL_SECONDS : parsePositiveInt(name, value);
+					options.progressIntervalMillis = TimeUnit.SECONDS.toMillis(progressSeconds);
+					break;
+				case "jmx":
+					options.jmx = true;
+					break;
+				case "format":
+					options.format = parseFormat(value);
+					break;
+				case "from":
+					options.fromSecond = parseTime(name, value);
+					options.filter().setTimeWindow(options.fromSecond, options.toSecond);
+					break;
+				case "to":
+					options.toSecond = parseTime(name, value);
+					options.filter().setTimeWindow(options.fromSecond, options.toSecond);
+					break;
+				case "ip":
+					options.filter().setIpRange(parseText(name, value));
+					break;
+				case "action":
+					options.filter().setAction(parseText(name, value));
+					break;
+				case "domain":
+					options.filter().setDomainSuffix(parseText(name, value));
+					break;
+				case "sorted":
+					options.sorted = true;
+					break;
+				case "partial":
+					if (value.isEmpty()) {
+						throw new IllegalArgumentException("Option --partial expects a file path.");
+					}
+					options.partialPath = value;
+					break;
+				case "merge":
+					options.merge = true;
+					break;
+				case "off-heap":
+					long megabytes = value.isEmpty() ? DEFAULT_OFF_HEAP_MEGABYTES : parsePositiveInt(name, value);
+					options.offHeapBytes = megabytes << 20;
+					break;
+				case "spill-dir":
+					options.spillDirectory = parseText(name, value);
+					break;
+				case "sort-memory":
+					options.sortMemoryBytes = (long) parsePositiveInt(name, value) << 20;
+					break;
+				case "buckets":
+					options.timeBuckets = TimeBuckets.parse(parseText(name, value));
+					break;
+				case "serve":
+					options.servePort = value.isEmpty() ? DEFAULT_SERVE_PORT : parsePositiveInt(name, value);
+					if (options.servePort > 65535) {
+						throw new IllegalArgumentException("Option --serve expects a port number but was: " + value);
+					}
+					break;
+				case "max-errors":
+					options.maxErrors = parseCount(name, value);
+					break;
+				case "quarantine":
+					options.quarantinePath = parseText(name, value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+		
+		if (options.logPaths.isEmpty()) {
+			throw new IllegalArgumentException("No log path given.");
+		}
+		if (options.streamDomains && options.threadCount > 1) {
+			throw new IllegalArgumentException("Option --stream-domains reads the log in order and can't be combined with --threads.");
+		}
+		if (options.followIntervalMillis > 0 && (options.threadCount > 1 || options.streamDomains)) {
+			throw new IllegalArgumentException("Option --follow can't be combined with --threads or --stream-domains.");
+		}
+		if (options.checkpointPath != null && (options.threadCount > 1 || options.streamDomains || options.followIntervalMillis > 0)) {
+			throw new IllegalArgumentException("Option --checkpoint can't be combined with --threads, --stream-domains or --follow.");
+		}
+		if ((options.buildIndex || options.useIndex) && (options.threadCount > 1 || options.streamDomains 
+				|| options.followIntervalMillis > 0 || options.checkpointPath != null || options.logPaths.size() > 1)) {
+			throw new IllegalArgumentException("Options --build-index and --index need a single log path and can't be combined with " 
+					+ "--threads, --stream-domains, --follow or --checkpoint.");
+		}
+		if (options.buildIndex && options.useIndex) {
+			throw new IllegalArgumentException("Options --build-index and --index can't be combined.");
+		}
+		if (options.useIndex && options.approximate) {
+			throw new IllegalArgumentException("Option --approximate can't be combined with --index, which counts exactly.");
+		}
+		if (options.distinctUsers && (options.approximate || options.useIndex || options.buildIndex)) {
+			throw new IllegalArgumentException("Option --distinct-users can't be combined with --approximate, --index or --build-index.");
+		}
+		if (options.pipeline && (options.threadCount > 1 || options.followIntervalMillis > 0 || options.checkpointPath != null 
+				|| options.buildIndex || options.useIndex)) {
+			throw new IllegalArgumentException("Option --pipeline can't be combined with --threads, --follow, --checkpoint, " 
+					+ "--build-index or --index.");
+		}
+		if (options.format == Format.BINARY && options.outputPath == null) {
+			throw new IllegalArgumentException("Option --format=binary needs an --output file.");
+		}
+		if (options.domainRank > 0 && options.topDomainCount > 0) {
+			throw new IllegalArgumentException("Options --domain-rank and --top-domains can't be combined.");
+		}
+		if (options.filter != null && (options.checkpointPath != null || options.buildIndex || options.useIndex)) {
+			throw new IllegalArgumentException("Options --from, --to, --ip, --action and --domain can't be combined with " 
+					+ "--checkpoint, --build-index or --index.");
+		}
+		if (options.sorted && options.fromSecond == Long.MIN_VALUE && options.toSecond == Long.MAX_VALUE) {
+			throw new IllegalArgumentException("Option --sorted needs a time window given with --from or --to.");
+		}
+		if (options.fromSecond >= options.toSecond) {
+			throw new IllegalArgumentException("Option --from must be before --to.");
+		}
+		if (options.filter != null) {
+			options.filter.setSortedByTime(options.sorted);
+		}
+		if (options.partialPath != null && (options.streamDomains || options.followIntervalMillis > 0 || options.buildIndex 
+				|| options.merge || options.outputPath != null || options.format != Format.TEXT)) {
+			throw new IllegalArgumentException("Option --partial writes no report and can't be combined with --stream-domains, " 
+					+ "--follow, --build-index, --merge, --output or --format.");
+		}
+		if (options.servePort >= 0 && (options.partialPath != null || options.buildIndex || options.outputPath != null 
+				|| options.format != Format.TEXT)) {
+			throw new IllegalArgumentException("Option --serve answers queries instead of writing the report and can't be combined with " 
+					+ "--partial, --build-index, --output or --format.");
+		}
+		if (options.sharedCounters && (options.streamDomains || options.followIntervalMillis > 0 || options.checkpointPath != null 
+				|| options.buildIndex || options.useIndex || options.pipeline || options.merge)) {
+			throw new IllegalArgumentException("Option --shared-counters is for reading with several threads and can't be combined with " 
+					+ "--stream-domains, --follow, --checkpoint, --build-index, --index, --pipeline or --merge.");
+		}
+		if (options.merge && (options.threadCount > 0 || options.streamDomains || options.followIntervalMillis > 0 
+				|| options.checkpointPath != null || options.buildIndex || options.useIndex || options.pipeline || options.filter != null)) {
+			throw new IllegalArgumentException("Option --merge only reads partial results and can't be combined with log reading options.");
+		}
+		if (options.quarantinePath != null && options.maxErrors < 0) {
+			throw new IllegalArgumentException("Option --quarantine needs an error budget given with --max-errors.");
+		}
+		// A checkpoint doesn't keep the spent budget, and a resumed run would overwrite the quarantine of the first one
+		if (options.maxErrors >= 0 && (options.buildIndex || options.useIndex || options.merge || options.checkpointPath != null)) {
+			throw new IllegalArgumentException("Option --max-errors is for reading logs once and can't be combined with " 
+					+ "--build-index, --index, --merge or --checkpoint.");
+		}
+		return options;
+	}
+	
+	private LineFilter filter() {
+		if (filter == null) {
+			filter = new LineFilter();
+		}
+		return filter;
+	}
+	
+	private static long parseTime(String name, String value) {
+		try {
+			return LineFilter.parseTime(value);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Option --" + name + " expects yyyy/MM/dd[ HH:mm:ss] but was: " + value);
+		}
+	}
+	
+	private static String parseText(String name, String value) {
+		if (value.isEmpty()) {
+			throw new IllegalArgumentException("Option --" + name + " expects a value.");
+		}
+		return value;
+	}
+	
+	private static Format parseFormat(String value) {
+		for (Format format : Format.values()) {
+			if (format.name().equalsIgnoreCase(value)) {
+				return format;
+			}
+		}
+		throw new IllegalArgumentException("Option --format expects text, csv or binary but was: " + value);
+	}
+	
+	private static int parsePositiveInt(String name, String value) {
+		try {
+			int number = Integer.parseInt(value);
+			if (number > 0) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("Option --" + name + " expects a positive number but was: " + value);
+	}
+	
+	private static long parseCount(String name, String value) {
+		try {
+			long number = Long.parseLong(value);
+			if (number >= 0) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("Option --" + name + " expects a number of at least 0 but was: " + value);
+	}
+	
+	/**
+	 * @return the log paths in the order given. Several paths can be given, e.g. by a glob the shell has expanded.
+	 */
+	List<String> logPaths() {
+		return logPaths;
+	}
+	
+	/**
+	 * @return the number of threads to read with, or 0 if not given
+	 */
+	int threadCount() {
+		return threadCount;
+	}
+	
+	/**
+	 * @return true if parallel workers count into shared concurrent tables instead of tables of their own
+	 */
+	boolean sharedCounters() {
+		return sharedCounters;
+	}
+	
+	boolean streamDomains() {
+		return streamDomains;
+	}
+	
+	/**
+	 * @return the popularity rank of the daily domain to report, or 0 for the default
+	 */
+	int domainRank() {
+		return domainRank;
+	}
+	
+	/**
+	 * @return the number of most popular daily domains to list, or 0 to report a single rank
+	 */
+	int topDomainCount() {
+		return topDomainCount;
+	}
+	
+	/**
+	 * @return true to count domains with fixed size sketches instead of exactly
+	 */
+	boolean approximate() {
+		return approximate;
+	}
+	
+	/**
+	 * @return true if the domains are also ranked by their estimated number of distinct IPs
+	 */
+	boolean distinctUsers() {
+		return distinctUsers;
+	}
+	
+	/**
+	 * @return how often to display the reports in follow mode, or 0 if the log is not followed
+	 */
+	long followIntervalMillis() {
+		return followIntervalMillis;
+	}
+	
+	/**
+	 * @return the file to save checkpoints to and resume from, or null if no checkpoints are used
+	 */
+	String checkpointPath() {
+		return checkpointPath;
+	}
+	
+	long checkpointIntervalMillis() {
+		return checkpointIntervalMillis;
+	}
+	
+	/**
+	 * @return the file to write the report to, or null for System.out
+	 */
+	String outputPath() {
+		return outputPath;
+	}
+	
+	Format format() {
+		return format;
+	}
+	
+	/**
+	 * @return true to build the index of the log instead of reporting
+	 */
+	boolean buildIndex() {
+		return buildIndex;
+	}
+	
+	/**
+	 * @return true to create the reports from the index of the log
+	 */
+	boolean useIndex() {
+		return useIndex;
+	}
+	
+	/**
+	 * @return the index file given with --build-index or --index, by default the log path followed by ".idx"
+	 */
+	String indexPath() {
+		return indexPath != null ? indexPath : logPaths.get(0) + DEFAULT_INDEX_SUFFIX;
+	}
+	
+	/**
+	 * @return true to read, parse and count the log in pipelined stages
+	 */
+	boolean pipeline() {
+		return pipeline;
+	}
+	
+	/**
+	 * @return the number of parser threads in pipeline mode, or 0 if not given
+	 */
+	int pipelineParserCount() {
+		return pipelineParserCount;
+	}
+	
+	/**
+	 * @return how often to print a progress line, or 0 for no progress lines
+	 */
+	long progressIntervalMillis() {
+		return progressIntervalMillis;
+	}
+	
+	/**
+	 * @return true to publish the metrics of the run as an MBean
+	 */
+	boolean jmx() {
+		return jmx;
+	}
+	
+	/**
+	 * @return the file to write the counts to as a partial result instead of the reports, or null to report
+	 */
+	String partialPath() {
+		return partialPath;
+	}
+	
+	/**
+	 * @return true if the paths are partial results to merge, instead of logs
+	 */
+	boolean merge() {
+		return merge;
+	}
+	
+	/**
+	 * @return the direct memory for the user counts, or 0 to keep them on the heap
+	 */
+	long offHeapBytes() {
+		return offHeapBytes;
+	}
+	
+	/**
+	 * @return the directory to spill off-heap user counts and sorted report runs to, by default the temporary directory
+	 */
+	String spillDirectory() {
+		return spillDirectory != null ? spillDirectory : System.getProperty("java.io.tmpdir");
+	}
+	
+	/**
+	 * @return the port to serve the reports on, or -1 to write the report instead
+	 */
+	int servePort() {
+		return servePort;
+	}
+	
+	/**
+	 * @return the memory for sorting a report in memory, by default a quarter of the maximum heap
+	 */
+	long sortMemoryBytes() {
+		return sortMemoryBytes;
+	}
+	
+	/**
+	 * @return the number of malformed lines to skip before the run fails, or -1 to fail at the first one
+	 */
+	long maxErrors() {
+		return maxErrors;
+	}
+	
+	/**
+	 * @return the file to write the skipped malformed lines to, or null
+	 */
+	String quarantinePath() {
+		return quarantinePath;
+	}
+	
+	/**
+	 * @return the time buckets of the user counts, hourly by default
+	 */
+	TimeBuckets timeBuckets() {
+		return timeBuckets;
+	}
+	
+	/**
+	 * @return the filter of the lines to count, or null if no filter option was given
+	 */
+	LineFilter lineFilter() {
+		return filter;
+	}
+}
@@ -0,0 +1,126 @@
+package loganalyzer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Approximate per-day domain popularity with a fixed amount of memory per day, whatever the number of 
+ * distinct domains. Each day has a Count-Min Sketch of all domain counts and a Space-Saving summary 
+ * that tracks the candidates for the most popular domains.
+ * 
+ * A reported count is the lowest upper bound of the two structures, and its error is the distance to the 
+ * guaranteed lower bound from the Space-Saving summary, so the true count lies in [count - error, count].
+ */
+final class ApproximateDomainCounts {
+	static final int SKETCH_DEPTH = 4;
+	static final int SKETCH_WIDTH = 8192;
+	static final int SUMMARY_SIZE = 256;
+	
+	private final Map<Long, DaySketch> days = new TreeMap<Long, DaySketch>();
+	// The day of the last entry, since the entries of a day mostly come one after another
+	private long lastEpochDay;
+	private DaySketch lastDay;
+	
+	/**
+	 * Receives the selected domains of each day, in increasing order of date.
+	 */
+	interface Visitor {
+		void visit(long epochDay, String domain, long count, long error) throws IOException;
+	}
+	
+	private static final class DaySketch {
+		private final CountMinSketch sketch;
+		private final SpaceSaving summary;
+		
+		private DaySketch(CountMinSketch sketch, SpaceSaving summary) {
+			this.sketch = sketch;
+			this.summary = summary;
+		}
+	}
+	
+	void add(LogDataEntry logEntry) {
+		DaySketch day = lastDay;
+		if (day == null || logEntry.epochDay() != lastEpochDay) {
+			day = days.get(logEntry.epochDay());
+			if (day == null) {
+				day = new DaySketch(new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH), new SpaceSaving(SUMMARY_SIZE));
+				days.put(logEntry.epochDay(), day);
+			}
+			lastEpochDay = logEntry.epochDay();
+			lastDay = day;
+		}
+		// The domain is hashed where it is in the line, and only becomes a String if the summary starts tracking it
+		long hash = Hashing.hash64(logEntry.source(), logEntry.domainStart(), logEntry.domainEnd());
+		day.sketch.add(hash, 1);
+		day.summary.add(hash, logEntry.source(), logEntry.domainStart(), logEntry.domainEnd());
+	}
+	
+	void merge(ApproximateDomainCounts other) {
+		other.days.forEach(this::merge);
+	}
+	
+	private void merge(long epochDay, DaySketch otherDay) {
+		DaySketch day = days.get(epochDay);
+		if (day == null) {
+			days.put(epochDay, otherDay);
+		} 
+		else {
+			day.sketch.merge(otherDay.sketch);
+			day.summary.merge(otherDay.summary);
+		}
+	}
+	
+	void writeTo(DataOutput output) throws IOException {
+		output.writeInt(days.size());
+		for (Map.Entry<Long, DaySketch> day : days.entrySet()) {
+			output.writeLong(day.getKey());
+			day.getValue().sketch.writeTo(output);
+			day.getValue().summary.writeTo(output);
+		}
+	}
+	
+	/**
+	 * Merges the days written by writeTo() into this instance.
+	 */
+	void readFrom(DataInput input) throws IOException {
+		int dayCount = input.readInt();
+		for (int i = 0; i < dayCount; i++) {
+			long epochDay = input.readLong();
+			merge(epochDay, new DaySketch(CountMinSketch.readFrom(input), SpaceSaving.readFrom(input)));
+		}
+	}
+	
+	boolean isEmpty() {
+		return days.isEmpty();
+	}
+	
+	void clear() {
+		days.clear();
+		lastDay = null;
+	}
+	
+	/**
+	 * Visits the domain with the given popularity rank of each day, or the domains up to that rank 
+	 * (most popular first) if listTop is set. Ranks are limited by the summary size.
+	 */
+	void forEachSelected(int rank, boolean listTop, Visitor visitor) throws IOException {
+		for (Map.Entry<Long, DaySketch> entry : days.entrySet()) {
+			DaySketch day = entry.getValue();
+			List<String> ranked = day.summary.keysDescending();
+			if (ranked.isEmpty()) {
+				continue;
+			}
+			int last = Math.min(rank, ranked.size()) - 1;
+			for (int i = listTop ? 0 : last; i <= last; i++) {
+				String domain = ranked.get(i);
+				long upperBound = Math.min(day.summary.count(domain), day.sketch.estimate(Hashing.hash64(domain)));
+				long lowerBound = day.summary.count(domain) - day.summary.error(domain);
+				visitor.visit(entry.getKey(), domain, upperBound, upperBound - lowerBound);
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package loganalyzer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes report rows in a compact binary form for other programs to load:
+ * 
+ * <pre>
+ * header:  int MAGIC, byte VERSION
+ * rows:    byte USER_ROW, UTF userIp, int epochHour, UTF action, long count
+ *          byte SAME_USER_ROW, int epochHour, UTF action, long count   (same IP as the previous user row)
+ *          byte BUCKET_ROW, UTF userIp, int bucketSeconds, long epochSecond, UTF action, long count
+ *          byte USERS_ROW, int epochDay, UTF domain, long distinctUsers   (estimated)
+ *          byte DOMAIN_ROW, int epochDay, UTF domain, long count, long error   (error is 0 for exact counts)
+ * end:     byte END
+ * </pre>
+ * 
+ * Numbers are big-endian and strings are in the modified UTF-8 form of DataOutput.writeUTF(). User rows 
+ * are sorted by IP, so most of them don't repeat the IP.
+ */
+public final class BinaryReportSink implements ReportSink {
+	static final int MAGIC = 0x4C415250;
+	static final int VERSION = 3;
+	static final int END = 0;
+	static final int USER_ROW = 1;
+	static final int SAME_USER_ROW = 2;
+	static final int DOMAIN_ROW = 3;
+	static final int BUCKET_ROW = 4;
+	static final int USERS_ROW = 5;
+	
+	private final DataOutputStream output;
+	private String lastUserIp;
+	
+	public BinaryReportSink(OutputStream output) throws IOException {
+		this.output = new DataOutputStream(new BufferedOutputStream(output, TextReportSink.BUFFER_SIZE));
+		this.output.writeInt(MAGIC);
+		this.output.writeByte(VERSION);
+	}
+	
+	@Override
+	public void userCount(String userIp, long epochHour, String action, long count) throws IOException {
+		if (userIp.equals(lastUserIp)) {
+			output.writeByte(SAME_USER_ROW);
+		} 
+		else {
+			output.writeByte(USER_ROW);
+			output.writeUTF(userIp);
+			lastUserIp = userIp;
+		}
+		output.writeInt((int) epochHour);
+		output.writeUTF(action);
+		output.writeLong(count);
+	}
+	
+	@Override
+	public void bucketCount(String userIp, long epochSecond, int bucketSeconds, String action, long count) throws IOException {
+		output.writeByte(BUCKET_ROW);
+		output.writeUTF(userIp);
+		output.writeInt(bucketSeconds);
+		output.writeLong(epochSecond);
+		output.writeUTF(action);
+		output.writeLong(count);
+	}
+	
+	@Override
+	public void domainCount(long epochDay, String domain, long count) throws IOException {
+		approximateDomainCount(epochDay, domain, count, 0);
+	}
+	
+	@Override
+	public void approximateDomainCount(long epochDay, String domain, long count, long error) throws IOException {
+		output.writeByte(DOMAIN_ROW);
+		output.writeInt((int) epochDay);
+		output.writeUTF(domain);
+		output.writeLong(count);
+		output.writeLong(error);
+	}
+	
+	@Override
+	public void domainUsers(long epochDay, String domain, long distinctUsers) throws IOException {
+		output.writeByte(USERS_ROW);
+		output.writeInt((int) epochDay);
+		output.writeUTF(domain);
+		output.writeLong(distinctUsers);
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		output.flush();
+	}
+	
+	/**
+	 * Writes the end marker and closes the stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		output.writeByte(END);
+		output.close();
+	}
+}
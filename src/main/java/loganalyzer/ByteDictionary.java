@@ -0,0 +1,141 @@
+package loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Numbers distinct byte strings (IPs, actions, domains) with dense int ids, in the order they are first seen.
+ * 
+ * Looking up a column of a parsed line hashes and compares its bytes where they are, so a value that is already 
+ * known costs no allocation. The bytes of new values are copied into one shared array, and a value is only 
+ * decoded into a String when text() is called, e.g. while a report is written.
+ * 
+ * A dictionary holds at most maxSize values, so that a log with a misplaced column fails instead of filling the heap.
+ */
+final class ByteDictionary {
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int INITIAL_BYTES = 4096;
+	
+	private final int maxSize;
+	
+	// Hash table of id + 1 per slot, 0 marks an empty slot
+	private int[] slots = new int[INITIAL_CAPACITY * 2];
+	// Per id: hash, and the start of its bytes. The bytes of an id end where the bytes of the next one start.
+	private long[] hashes = new long[INITIAL_CAPACITY];
+	private int[] starts = new int[INITIAL_CAPACITY + 1];
+	private byte[] bytes = new byte[INITIAL_BYTES];
+	private String[] texts = new String[INITIAL_CAPACITY];
+	private int size;
+	
+	ByteDictionary(int maxSize) {
+		this.maxSize = maxSize;
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * @return the id of the bytes in [start, end) of the buffer, which are added if they are new
+	 * @throws IllegalStateException if the bytes are new and the dictionary already holds maxSize values
+	 */
+	int id(ByteBuffer source, int start, int end) {
+		long hash = Hashing.hash64(source, start, end);
+		int mask = slots.length - 1;
+		for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+			int id = slots[slot] - 1;
+			if (id < 0) {
+				return add(slot, hash, source, start, end);
+			}
+			if (hashes[id] == hash && matches(id, source, start, end)) {
+				return id;
+			}
+		}
+	}
+	
+	int id(String text) {
+		byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+		return id(ByteBuffer.wrap(textBytes), 0, textBytes.length);
+	}
+	
+	/**
+	 * @return the id in this dictionary of the value with the given id in another dictionary
+	 */
+	int id(ByteDictionary other, int otherId) {
+		return id(ByteBuffer.wrap(other.bytes), other.starts[otherId], other.starts[otherId + 1]);
+	}
+	
+	/**
+	 * The value of an id as text. The String is created on the first call and kept.
+	 */
+	String text(int id) {
+		if (texts[id] == null) {
+			texts[id] = new String(bytes, starts[id], starts[id + 1] - starts[id], StandardCharsets.UTF_8);
+		}
+		return texts[id];
+	}
+	
+	/**
+	 * Forgets all values. Ids handed out before must not be used anymore.
+	 */
+	void clear() {
+		Arrays.fill(slots, 0);
+		Arrays.fill(texts, 0, size, null);
+		size = 0;
+	}
+	
+	private boolean matches(int id, ByteBuffer source, int start, int end) {
+		int offset = starts[id];
+		if (starts[id + 1] - offset != end - start) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (bytes[offset++] != source.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private int add(int slot, long hash, ByteBuffer source, int start, int end) {
+		if (size == maxSize) {
+			throw new IllegalStateException("More than " + maxSize + " distinct values in a log column.");
+		}
+		if (size == hashes.length) {
+			hashes = Arrays.copyOf(hashes, size * 2);
+			starts = Arrays.copyOf(starts, size * 2 + 1);
+			texts = Arrays.copyOf(texts, size * 2);
+		}
+		int offset = starts[size];
+		int length = end - start;
+		if (offset + length > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, offset + length));
+		}
+		for (int i = 0; i < length; i++) {
+			bytes[offset + i] = source.get(start + i);
+		}
+		
+		int id = size++;
+		hashes[id] = hash;
+		starts[id + 1] = offset + length;
+		slots[slot] = id + 1;
+		// Keep the load factor at most 0.5
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		return id;
+	}
+	
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = (int) hashes[id] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = id + 1;
+		}
+	}
+}
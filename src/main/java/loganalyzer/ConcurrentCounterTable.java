@@ -0,0 +1,199 @@
+package loganalyzer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open addressing hash table of counts with keys of three longs that many threads add to at the same time.
+ * 
+ * A new key claims its slot with a compare-and-set of the slot state, and a count is added with an atomic 
+ * getAndAdd, so threads counting different keys never wait for each other and threads counting the same key 
+ * only contend on its count. The slots are split into segments by hash, and only a segment that has to grow 
+ * is locked: adding takes the read lock of its segment (shared by all adding threads), growing the write lock.
+ * 
+ * Reading the counts with forEach() is only exact once all adding threads are done.
+ */
+final class ConcurrentCounterTable {
+	private static final int SEGMENT_BITS = 6;
+	private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+	private static final int INITIAL_SEGMENT_CAPACITY = 256;
+	
+	// Slot states
+	private static final int EMPTY = 0;
+	private static final int WRITING = 1;
+	private static final int READY = 2;
+	
+	// Words per slot: three key words and the count
+	private static final int WORDS = 4;
+	
+	/**
+	 * Receives the counts in no particular order.
+	 */
+	interface Visitor {
+		void visit(long key0, long key1, long key2, long count);
+	}
+	
+	private final Segment[] segments = new Segment[SEGMENT_COUNT];
+	
+	ConcurrentCounterTable() {
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment();
+		}
+	}
+	
+	/**
+	 * Adds a count to a key. Safe to call from any number of threads.
+	 */
+	void add(long key0, long key1, long key2, long count) {
+		int hash = hash(key0, key1, key2);
+		// The high bits choose the segment and the low bits the slot, so both are spread evenly
+		Segment segment = segments[hash >>> (32 - SEGMENT_BITS)];
+		while (true) {
+			long stamp = segment.lock.readLock();
+			Slots slots = segment.slots;
+			int result;
+			int size = 0;
+			try {
+				result = slots.add(hash, key0, key1, key2, count);
+				// Counted under the read lock, so grow() copies the final size
+				if (result == Slots.ADDED) {
+					size = slots.size.incrementAndGet();
+				}
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+			
+			if (result == Slots.EXISTING) {
+				return;
+			}
+			if (result == Slots.ADDED) {
+				// Keep the load factor below 0.6 so probe sequences stay short
+				if (size * 5L > slots.capacity() * 3L) {
+					segment.grow(slots);
+				}
+				return;
+			}
+			// Full: other threads added keys before the segment could grow
+			segment.grow(slots);
+		}
+	}
+	
+	int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.slots.size.get();
+		}
+		return size;
+	}
+	
+	void forEach(Visitor visitor) {
+		for (Segment segment : segments) {
+			long stamp = segment.lock.readLock();
+			try {
+				segment.slots.forEach(visitor);
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+	}
+	
+	private static int hash(long key0, long key1, long key2) {
+		long h = key1 * 0x9E3779B97F4A7C15L + key0;
+		h ^= key2 * 0xC2B2AE3D27D4EB4FL;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+	
+	private static final class Segment {
+		private final StampedLock lock = new StampedLock();
+		// Only replaced while the write lock is held
+		private volatile Slots slots = new Slots(INITIAL_SEGMENT_CAPACITY);
+		
+		/**
+		 * Doubles the slots, unless another thread has already replaced them.
+		 */
+		private void grow(Slots full) {
+			long stamp = lock.writeLock();
+			try {
+				if (slots != full) {
+					return;
+				}
+				// No thread is adding while the write lock is held, so all slots are READY or EMPTY
+				Slots grown = new Slots(full.capacity() * 2);
+				full.forEach((key0, key1, key2, count) -> grown.add(hash(key0, key1, key2), key0, key1, key2, count));
+				grown.size.set(full.size.get());
+				slots = grown;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+	}
+	
+	private static final class Slots {
+		private static final int ADDED = 0;
+		private static final int EXISTING = 1;
+		private static final int FULL = 2;
+		
+		private final AtomicIntegerArray states;
+		private final AtomicLongArray words;
+		private final AtomicInteger size = new AtomicInteger();
+		
+		private Slots(int capacity) {
+			states = new AtomicIntegerArray(capacity);
+			words = new AtomicLongArray(capacity * WORDS);
+		}
+		
+		private int capacity() {
+			return states.length();
+		}
+		
+		/**
+		 * @return ADDED for a new key, EXISTING if the key was there, or FULL if no slot was left for a new key
+		 */
+		private int add(int hash, long key0, long key1, long key2, long count) {
+			int mask = capacity() - 1;
+			int slot = hash & mask;
+			for (int probes = 0; probes <= mask; probes++, slot = (slot + 1) & mask) {
+				int state = states.get(slot);
+				if (state == EMPTY) {
+					if (states.compareAndSet(slot, EMPTY, WRITING)) {
+						int word = slot * WORDS;
+						words.setPlain(word, key0);
+						words.setPlain(word + 1, key1);
+						words.setPlain(word + 2, key2);
+						words.setPlain(word + 3, count);
+						// The volatile write publishes the key to threads that read the state
+						states.set(slot, READY);
+						return ADDED;
+					}
+					state = states.get(slot);
+				}
+				// Another thread is writing a key into the slot, which may be this key
+				while (state == WRITING) {
+					Thread.onSpinWait();
+					state = states.get(slot);
+				}
+				
+				int word = slot * WORDS;
+				if (words.getPlain(word) == key0 && words.getPlain(word + 1) == key1 && words.getPlain(word + 2) == key2) {
+					words.getAndAdd(word + 3, count);
+					return EXISTING;
+				}
+			}
+			return FULL;
+		}
+		
+		private void forEach(Visitor visitor) {
+			for (int slot = 0; slot < capacity(); slot++) {
+				if (states.get(slot) == READY) {
+					int word = slot * WORDS;
+					visitor.visit(words.getPlain(word), words.getPlain(word + 1), words.getPlain(word + 2), words.get(word + 3));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package loganalyzer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Count-Min Sketch: estimates how often a key was added using depth x width counters, whatever the number 
+ * of distinct keys. Estimates never undercount, and overcount by at most epsilon * total with probability 
+ * of at least 1 - delta, where epsilon = e / width and delta = e^-depth.
+ */
+final class CountMinSketch {
+	private final int depth;
+	private final int width;
+	private final long[] counters;
+	private long total;
+	
+	/**
+	 * @param width number of counters per row, rounded up to a power of two
+	 */
+	CountMinSketch(int depth, int width) {
+		if (depth < 1 || width < 1) {
+			throw new IllegalArgumentException("Sketch depth and width must be at least 1.");
+		}
+		int roundedWidth = 1;
+		while (roundedWidth < width) {
+			roundedWidth <<= 1;
+		}
+		this.depth = depth;
+		this.width = roundedWidth;
+		counters = new long[depth * roundedWidth];
+	}
+	
+	void add(long hash, long count) {
+		int mask = width - 1;
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		for (int row = 0; row < depth; row++) {
+			counters[row * width + ((h1 + row * h2) & mask)] += count;
+		}
+		total += count;
+	}
+	
+	long estimate(long hash) {
+		int mask = width - 1;
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counters[row * width + ((h1 + row * h2) & mask)]);
+		}
+		return estimate;
+	}
+	
+	long total() {
+		return total;
+	}
+	
+	/**
+	 * Maximum overcount of an estimate, holding with probability confidence().
+	 */
+	long errorBound() {
+		return (long) Math.ceil(Math.E / width * total);
+	}
+	
+	double confidence() {
+		return 1 - Math.exp(-depth);
+	}
+	
+	/**
+	 * Adds the counts of a sketch with the same dimensions, as if its keys had been added to this one.
+	 */
+	void merge(CountMinSketch other) {
+		if (other.depth != depth || other.width != width) {
+			throw new IllegalArgumentException("Only sketches with the same dimensions can be merged.");
+		}
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] += other.counters[i];
+		}
+		total += other.total;
+	}
+	
+	void writeTo(DataOutput output) throws IOException {
+		output.writeInt(depth);
+		output.writeInt(width);
+		output.writeLong(total);
+		for (long counter : counters) {
+			output.writeLong(counter);
+		}
+	}
+	
+	static CountMinSketch readFrom(DataInput input) throws IOException {
+		CountMinSketch sketch = new CountMinSketch(input.readInt(), input.readInt());
+		sketch.total = input.readLong();
+		for (int i = 0; i < sketch.counters.length; i++) {
+			sketch.counters[i] = input.readLong();
+		}
+		return sketch;
+	}
+}
@@ -0,0 +1,37 @@
+package loganalyzer;
+
+/**
+ * Storage of the slots of a HourlyIpCounterTable: per slot the key (IP as two longs, hour, kind and action) 
+ * and its count. A count of 0 marks an empty slot.
+ * 
+ * The table does the hashing and probing, so implementations only decide where the slots live: 
+ * HeapCounterSlots keeps them in Java arrays, OffHeapCounterSlots outside the heap.
+ */
+interface CounterSlots {
+	
+	int capacity();
+	
+	long high(int slot);
+	
+	long low(int slot);
+	
+	long hour(int slot);
+	
+	int meta(int slot);
+	
+	long count(int slot);
+	
+	void set(int slot, long high, long low, long hour, int meta, long count);
+	
+	void addCount(int slot, long count);
+	
+	/**
+	 * @return empty slots of the same kind with the given capacity, for growing the table
+	 */
+	CounterSlots allocate(int capacity);
+	
+	/**
+	 * Gives the memory of these slots back. They must not be used anymore.
+	 */
+	void release();
+}
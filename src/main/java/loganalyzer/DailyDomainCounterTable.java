@@ -0,0 +1,193 @@
+package loganalyzer;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table counting log entries per (day, domain id), where the ids come from a ByteDictionary.
+ * Counting a line neither decodes the domain nor allocates a key.
+ */
+final class DailyDomainCounterTable {
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	// Slot arrays. A count of 0 marks an empty slot.
+	private long[] days;
+	private int[] domainIds;
+	private int[] counts;
+	private int size;
+	
+	/**
+	 * Receives the counts in report order.
+	 */
+	interface Visitor {
+		void visit(long epochDay, int domainId, int count) throws IOException;
+	}
+	
+	DailyDomainCounterTable() {
+		allocate(INITIAL_CAPACITY);
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	boolean isEmpty() {
+		return size == 0;
+	}
+	
+	void add(long epochDay, int domainId, int count) {
+		int mask = counts.length - 1;
+		int slot = hash(epochDay, domainId) & mask;
+		while (counts[slot] != 0) {
+			if (domainIds[slot] == domainId && days[slot] == epochDay) {
+				counts[slot] += count;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		days[slot] = epochDay;
+		domainIds[slot] = domainId;
+		counts[slot] = count;
+		size++;
+		
+		// Keep the load factor below 0.6 so probe sequences stay short
+		if (size * 5L > counts.length * 3L) {
+			grow();
+		}
+	}
+	
+	/**
+	 * @return the occupied slots, whose content is read with epochDay(), domainId() and count()
+	 */
+	int[] slots() {
+		int[] slots = new int[size];
+		int occupied = 0;
+		for (int slot = 0; slot < counts.length; slot++) {
+			if (counts[slot] != 0) {
+				slots[occupied++] = slot;
+			}
+		}
+		return slots;
+	}
+	
+	/**
+	 * @return the occupied slots in [fromSlot, toSlot) ordered by day, then by the given rank of their domain ids
+	 */
+	private int[] sortedSlots(int[] domainRank, int fromSlot, int toSlot) {
+		int occupied = 0;
+		for (int slot = fromSlot; slot < toSlot; slot++) {
+			if (counts[slot] != 0) {
+				occupied++;
+			}
+		}
+		int[] slots = new int[occupied];
+		occupied = 0;
+		for (int slot = fromSlot; slot < toSlot; slot++) {
+			if (counts[slot] != 0) {
+				slots[occupied++] = slot;
+			}
+		}
+		
+		IntSorter.sort(slots, slots.length, (a, b) -> {
+			int result = Long.compare(days[a], days[b]);
+			return result != 0 ? result : Integer.compare(domainRank[domainIds[a]], domainRank[domainIds[b]]);
+		});
+		return slots;
+	}
+	
+	/**
+	 * Visits the counts ordered by day, then by the given rank of their domain ids.
+	 * 
+	 * With more than runEntries counts, ranges of slots holding about runEntries counts are sorted one at a time 
+	 * and written to temporary files in runDirectory, which are then merged, so sorting only needs memory for one run.
+	 */
+	void forEachSorted(int[] domainRank, Visitor visitor, int runEntries, Path runDirectory) throws IOException {
+		if (size <= runEntries) {
+			for (int slot : sortedSlots(domainRank, 0, counts.length)) {
+				visitor.visit(days[slot], domainIds[slot], counts[slot]);
+			}
+			return;
+		}
+		
+		try (SortedRuns runs = new SortedRuns(runDirectory)) {
+			// Hashing spreads the keys evenly, so each range holds about runEntries of them
+			int rangeSlots = (int) Math.max(1, (long) counts.length * runEntries / size);
+			for (int fromSlot = 0; fromSlot < counts.length; fromSlot += rangeSlots) {
+				int[] slots = sortedSlots(domainRank, fromSlot, (int) Math.min(counts.length, (long) fromSlot + rangeSlots));
+				runs.addRun(slots.length, output -> {
+					for (int slot : slots) {
+						output.writeLong(days[slot]);
+						output.writeInt(domainIds[slot]);
+						output.writeInt(counts[slot]);
+					}
+				});
+			}
+			
+			runs.merge(RunCursor::new, (a, b) -> {
+				int result = Long.compare(a.epochDay, b.epochDay);
+				return result != 0 ? result : Integer.compare(domainRank[a.domainId], domainRank[b.domainId]);
+			}, cursor -> visitor.visit(cursor.epochDay, cursor.domainId, cursor.count));
+		}
+	}
+	
+	private static final class RunCursor extends SortedRuns.Cursor {
+		private long epochDay;
+		private int domainId;
+		private int count;
+		
+		@Override
+		void read(DataInput input) throws IOException {
+			epochDay = input.readLong();
+			domainId = input.readInt();
+			count = input.readInt();
+		}
+	}
+	
+	long epochDay(int slot) {
+		return days[slot];
+	}
+	
+	int domainId(int slot) {
+		return domainIds[slot];
+	}
+	
+	int count(int slot) {
+		return counts[slot];
+	}
+	
+	void clear() {
+		Arrays.fill(counts, 0);
+		size = 0;
+	}
+	
+	private static int hash(long epochDay, int domainId) {
+		long h = domainId * 0x9E3779B97F4A7C15L + epochDay;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+	
+	private void allocate(int capacity) {
+		days = new long[capacity];
+		domainIds = new int[capacity];
+		counts = new int[capacity];
+		size = 0;
+	}
+	
+	private void grow() {
+		long[] oldDays = days;
+		int[] oldDomainIds = domainIds;
+		int[] oldCounts = counts;
+		
+		allocate(oldCounts.length * 2);
+		for (int slot = 0; slot < oldCounts.length; slot++) {
+			if (oldCounts[slot] != 0) {
+				add(oldDays[slot], oldDomainIds[slot], oldCounts[slot]);
+			}
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package loganalyzer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * HyperLogLog sketches estimating the number of distinct IPs per (day, domain id), where the ids come from 
+ * a ByteDictionary like those of DailyDomainCounterTable.
+ * 
+ * Each sketch has a fixed number of one byte registers whatever the number of IPs: an IP hash selects a register 
+ * by its top bits, and the register keeps the highest position of the first 1 bit in the rest of the hash.
+ * The estimate is derived from the harmonic mean of the registers, with a relative standard error of about 
+ * 1.04 / sqrt(REGISTERS), i.e. 6.5%. Two sketches merge by taking the maximum of each register, so the 
+ * sketches of parallel workers or shards add up to the sketch of the whole log.
+ * 
+ * The (day, domain) keys are kept in an open addressing table that refers to the registers of a key by its entry 
+ * number, so growing the table doesn't move any registers. The registers are kept in pages of PAGE_ENTRIES entries, 
+ * so tens of millions of keys don't need one array of more than 2 GB.
+ */
+final class DistinctUserSketches {
+	private static final int PRECISION = 8;
+	static final int REGISTERS = 1 << PRECISION;
+	private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int INITIAL_ENTRIES = 64;
+	private static final int PAGE_SHIFT = 12;
+	static final int PAGE_ENTRIES = 1 << PAGE_SHIFT;
+	
+	// Slot arrays. An entry of 0 marks an empty slot, others are the entry number + 1.
+	private long[] days;
+	private int[] domainIds;
+	private int[] entries;
+	private int size;
+	
+	// REGISTERS bytes per entry, in entry order. A page grows up to PAGE_ENTRIES entries before the next one is added.
+	private byte[][] pages = new byte[][] {new byte[INITIAL_ENTRIES * REGISTERS]};
+	private final int[] ipv6Groups = new int[IpAddress.GROUPS];
+	
+	DistinctUserSketches() {
+		allocate(INITIAL_CAPACITY);
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * Adds the IP of the entry to the sketch of its day and the given domain.
+	 */
+	void add(long epochDay, int domainId, LogDataEntry entry) {
+		int keyEntry = entry(epochDay, domainId);
+		byte[] registers = pages[page(keyEntry)];
+		int offset = pageOffset(keyEntry);
+		long hash = userHash(entry);
+		int register = (int) (hash >>> (64 - PRECISION));
+		// Position of the first 1 bit after the register bits, at most 64 - PRECISION + 1
+		byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+		if (registers[offset + register] < rank) {
+			registers[offset + register] = rank;
+		}
+	}
+	
+	/**
+	 * Merges the sketches of another instance into this one.
+	 * 
+	 * @param domainIdOf translates the domain ids of the other instance to the ids of this one
+	 */
+	void addAll(DistinctUserSketches other, IntUnaryOperator domainIdOf) {
+		for (int slot = 0; slot < other.entries.length; slot++) {
+			if (other.entries[slot] != 0) {
+				int otherEntry = other.entries[slot] - 1;
+				mergeRegisters(entry(other.days[slot], domainIdOf.applyAsInt(other.domainIds[slot])), 
+						other.pages[page(otherEntry)], pageOffset(otherEntry));
+			}
+		}
+	}
+	
+	/**
+	 * @return the estimated number of distinct IPs of the day and domain, 0 if none was added
+	 */
+	long estimate(long epochDay, int domainId) {
+		int slot = find(epochDay, domainId);
+		if (entries[slot] == 0) {
+			return 0;
+		}
+		
+		byte[] registers = pages[page(entries[slot] - 1)];
+		int offset = pageOffset(entries[slot] - 1);
+		double sum = 0;
+		int zeros = 0;
+		for (int i = 0; i < REGISTERS; i++) {
+			int rank = registers[offset + i];
+			sum += 1.0 / (1L << rank);
+			if (rank == 0) {
+				zeros++;
+			}
+		}
+		double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+		// Small cardinalities are estimated from the share of empty registers (linear counting)
+		if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+			estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+		}
+		return Math.round(estimate);
+	}
+	
+	void clear() {
+		Arrays.fill(entries, 0);
+		size = 0;
+	}
+	
+	/**
+	 * Writes the sketches in a compact binary form, with the domain texts of the given dictionary.
+	 */
+	void writeTo(DataOutput output, ByteDictionary domains) throws IOException {
+		output.writeInt(size);
+		for (int slot = 0; slot < entries.length; slot++) {
+			if (entries[slot] != 0) {
+				output.writeLong(days[slot]);
+				output.writeUTF(domains.text(domainIds[slot]));
+				output.write(pages[page(entries[slot] - 1)], pageOffset(entries[slot] - 1), REGISTERS);
+			}
+		}
+	}
+	
+	/**
+	 * Merges sketches written by writeTo() into this instance, numbering their domains with the given dictionary.
+	 */
+	void readFrom(DataInput input, ByteDictionary domains) throws IOException {
+		byte[] read = new byte[REGISTERS];
+		int sketchCount = input.readInt();
+		for (int i = 0; i < sketchCount; i++) {
+			long epochDay = input.readLong();
+			int domainId = domains.id(input.readUTF());
+			input.readFully(read);
+			mergeRegisters(entry(epochDay, domainId), read, 0);
+		}
+	}
+	
+	private void mergeRegisters(int entry, byte[] otherRegisters, int otherOffset) {
+		byte[] registers = pages[page(entry)];
+		int offset = pageOffset(entry);
+		for (int i = 0; i < REGISTERS; i++) {
+			if (registers[offset + i] < otherRegisters[otherOffset + i]) {
+				registers[offset + i] = otherRegisters[otherOffset + i];
+			}
+		}
+	}
+	
+	/**
+	 * Hashes the IP value, so that the same address written in different ways (e.g. IPv6 in upper or lower case) 
+	 * is one user, like in the user counts.
+	 */
+	private long userHash(LogDataEntry entry) {
+		ByteBuffer source = entry.source();
+		long ipv4 = IpAddress.parseIpv4(source, entry.ipStart(), entry.ipEnd());
+		if (ipv4 >= 0) {
+			return Hashing.mix64(ipv4);
+		}
+		if (IpAddress.parseIpv6(source, entry.ipStart(), entry.ipEnd(), ipv6Groups)) {
+			return Hashing.mix64(IpAddress.high(ipv6Groups) ^ Hashing.mix64(IpAddress.low(ipv6Groups)));
+		}
+		return Hashing.hash64(source, entry.ipStart(), entry.ipEnd());
+	}
+	
+	/**
+	 * @return the page of the registers of an entry
+	 */
+	static int page(int entry) {
+		return entry >>> PAGE_SHIFT;
+	}
+	
+	/**
+	 * @return the offset of the registers of an entry in its page
+	 */
+	static int pageOffset(int entry) {
+		return (entry & (PAGE_ENTRIES - 1)) * REGISTERS;
+	}
+	
+	/**
+	 * @return the entry number of the key, whose registers are added if the key is new
+	 */
+	private int entry(long epochDay, int domainId) {
+		int slot = find(epochDay, domainId);
+		if (entries[slot] != 0) {
+			return entries[slot] - 1;
+		}
+		if (size == Integer.MAX_VALUE - 1) {
+			throw new IllegalStateException("Too many distinct (day, domain) keys for the distinct user sketches.");
+		}
+		
+		int entry = size++;
+		int page = page(entry);
+		if (page == pages.length) {
+			pages = Arrays.copyOf(pages, pages.length * 2);
+		}
+		int end = pageOffset(entry) + REGISTERS;
+		if (pages[page] == null) {
+			pages[page] = new byte[INITIAL_ENTRIES * REGISTERS];
+		} 
+		else if (end > pages[page].length) {
+			pages[page] = Arrays.copyOf(pages[page], Math.min(pages[page].length * 2, PAGE_ENTRIES * REGISTERS));
+		}
+		// Registers of a cleared entry are reused
+		Arrays.fill(pages[page], end - REGISTERS, end, (byte) 0);
+		days[slot] = epochDay;
+		domainIds[slot] = domainId;
+		entries[slot] = entry + 1;
+		
+		// Keep the load factor below 0.6 so probe sequences stay short
+		if (size * 5L > entries.length * 3L) {
+			grow();
+		}
+		return entry;
+	}
+	
+	/**
+	 * @return the slot of the key, or the empty slot where it would be added
+	 */
+	private int find(long epochDay, int domainId) {
+		int mask = entries.length - 1;
+		int slot = hash(epochDay, domainId) & mask;
+		while (entries[slot] != 0 && (domainIds[slot] != domainId || days[slot] != epochDay)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private static int hash(long epochDay, int domainId) {
+		long h = domainId * 0x9E3779B97F4A7C15L + epochDay;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+	
+	private void allocate(int capacity) {
+		days = new long[capacity];
+		domainIds = new int[capacity];
+		entries = new int[capacity];
+	}
+	
+	private void grow() {
+		long[] oldDays = days;
+		int[] oldDomainIds = domainIds;
+		int[] oldEntries = entries;
+		
+		allocate(oldEntries.length * 2);
+		for (int slot = 0; slot < oldEntries.length; slot++) {
+			if (oldEntries[slot] != 0) {
+				int newSlot = find(oldDays[slot], oldDomainIds[slot]);
+				days[newSlot] = oldDays[slot];
+				domainIds[newSlot] = oldDomainIds[slot];
+				entries[newSlot] = oldEntries[slot];
+			}
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package loganalyzer;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a log file that is still being written to, like "tail -F". The read position is kept between reads, 
+ * so only bytes appended since the last read are looked at. A line is only handed out once its newline has 
+ * been written.
+ * 
+ * If the file is truncated it is read again from the start, and if it is replaced (log rotation) the rest of 
+ * the old file is read before switching to the new one. A last line without newline in the old file is dropped.
+ * 
+ * The file is read in chunks of the buffer size, and the next chunk is only read once the lines of the buffer 
+ * have been handed out, so a big existing log isn't loaded into memory at once. The buffer only grows for 
+ * a line longer than itself.
+ */
+public final class FollowingLogFile implements LargeFile, Closeable {
+	private static final int INITIAL_BUFFER_SIZE = 1024 * 1024;
+	private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+	// Also check the file regularly, in case the watch service misses an event or has to poll itself
+	private static final long MAX_WAIT_MILLIS = 1000;
+	
+	private final Path path;
+	private final WatchService watchService;
+	private FileChannel fileChannel;
+	private Object fileKey;
+	private long readPosition;
+	
+	// Bytes read from the file but not handed out yet are in [lineStart, limit)
+	private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+	private long bufferFileOffset;
+	private int lineStart;
+	private int limit;
+	// Bytes in [lineStart, scanPosition) are known to contain no newline
+	private int scanPosition;
+	
+	private final LineSlice currentLine = new LineSlice();
+	
+	public FollowingLogFile(String filePath) throws FileNotFoundException, IOException {
+		path = Paths.get(filePath).toAbsolutePath();
+		open();
+		watchService = FileSystems.getDefault().newWatchService();
+		path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, 
+				StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+	}
+	
+	/**
+	 * Returns an empty string for empty lines and when no complete line is available yet.
+	 */
+	@Override
+	public String readLine() throws IOException {
+		if (nextLine(currentLine)) {
+			return currentLine.toString();
+		}
+		return "";
+	}
+
+	/**
+	 * @return false if no complete line is available right now. More lines may be available after awaitChanges().
+	 */
+	@Override
+	public boolean nextLine(LineSlice line) throws IOException {
+		while (!findLine(line)) {
+			// The old file is only left once it has been read to its end
+			if (!fill() && !checkRotation()) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Blocks until the file or its directory changes, or until the timeout expires.
+	 */
+	public void awaitChanges(long timeoutMillis) throws IOException, InterruptedException {
+		WatchKey key = watchService.poll(Math.min(timeoutMillis, MAX_WAIT_MILLIS), TimeUnit.MILLISECONDS);
+		if (key != null) {
+			// Events of other files in the directory wake us up too, which only costs an extra read attempt
+			key.pollEvents();
+			key.reset();
+		}
+	}
+	
+	/**
+	 * Offset in the file of the first byte that hasn't been handed out as part of a line.
+	 */
+	public long position() {
+		return bufferFileOffset + lineStart;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+		fileChannel.close();
+	}
+	
+	private boolean findLine(LineSlice line) {
+		for (int i = Math.max(lineStart, scanPosition); i < limit; i++) {
+			if (buffer[i] == '\n') {
+				int length = i - lineStart;
+				if (length > 0 && buffer[i - 1] == '\r') {
+					length--;
+				}
+				line.set(ByteBuffer.wrap(buffer), lineStart, length, bufferFileOffset + lineStart);
+				lineStart = i + 1;
+				return true;
+			}
+		}
+		scanPosition = limit;
+		return false;
+	}
+	
+	/**
+	 * Reads the next chunk of the bytes appended to the file since the last read, at most the free space 
+	 * of the buffer. The buffer is only grown if it is full of a single incomplete line.
+	 * 
+	 * @return false if nothing was read
+	 */
+	private boolean fill() throws IOException {
+		if (fileChannel.size() < readPosition) {
+			// Truncated: start over, dropping the incomplete line of the old content
+			readPosition = 0;
+			bufferFileOffset = 0;
+			lineStart = 0;
+			limit = 0;
+			scanPosition = 0;
+		}
+		
+		compact();
+		if (limit == buffer.length) {
+			if (buffer.length == MAX_BUFFER_SIZE) {
+				throw new IOException("Line at offset " + bufferFileOffset + " is longer than " + MAX_BUFFER_SIZE + " bytes.");
+			}
+			byte[] bigger = new byte[(int) Math.min(buffer.length * 2L, MAX_BUFFER_SIZE)];
+			System.arraycopy(buffer, 0, bigger, 0, limit);
+			buffer = bigger;
+		}
+		int read = fileChannel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit), readPosition);
+		if (read <= 0) {
+			return false;
+		}
+		readPosition += read;
+		limit += read;
+		return true;
+	}
+	
+	/**
+	 * Moves the unread bytes to the start of the buffer.
+	 */
+	private void compact() {
+		if (lineStart == 0) {
+			return;
+		}
+		System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+		bufferFileOffset += lineStart;
+		limit -= lineStart;
+		scanPosition = Math.max(0, scanPosition - lineStart);
+		lineStart = 0;
+	}
+	
+	/**
+	 * Switches to the new file if the path now refers to a different file than the one being read.
+	 * Called once the old file has been read to its end.
+	 * @return true if a new file was opened
+	 */
+	private boolean checkRotation() throws IOException {
+		if (!Files.exists(path)) {
+			return false;
+		}
+		Object currentKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+		if (currentKey == null || currentKey.equals(fileKey)) {
+			return false;
+		}
+		
+		fileChannel.close();
+		open();
+		bufferFileOffset = 0;
+		lineStart = 0;
+		limit = 0;
+		scanPosition = 0;
+		return true;
+	}
+	
+	private void open() throws FileNotFoundException, IOException {
+		fileChannel = new FileInputStream(path.toFile()).getChannel();
+		fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+		readPosition = 0;
+	}
+}
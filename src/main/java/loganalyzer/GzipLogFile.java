@@ -0,0 +1,118 @@
+package loganalyzer;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a gzip compressed log file line by line without writing the decompressed data to disk. The file is
+ * decompressed block by block into a reusable buffer and lines are handed out as slices of that buffer,
+ * so a slice is only valid until the next call. Concatenated gzip members are read as one file.
+ * 
+ * Both "\n" and "\r\n" line endings are supported.
+ */
+public final class GzipLogFile implements LargeFile, Closeable {
+	private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+	private static final int INITIAL_BUFFER_SIZE = 1024 * 1024;
+	
+	private final InputStream input;
+	private boolean endOfFile;
+	
+	// Decompressed bytes not handed out yet are in [lineStart, limit). Bytes before scanPosition contain no newline.
+	private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+	private ByteBuffer wrappedBuffer = ByteBuffer.wrap(buffer);
+	private long bufferOffset;
+	private int lineStart;
+	private int scanPosition;
+	private int limit;
+	
+	// Only used by readLine(), which has to copy the line into a String anyway
+	private final LineSlice currentLine = new LineSlice();
+	
+	public GzipLogFile(String filePath) throws FileNotFoundException, IOException {
+		input = new GZIPInputStream(new FileInputStream(filePath), INPUT_BUFFER_SIZE);
+	}
+	
+	@Override
+	/**
+	 * Same contract as LargeLogFile: an empty string is returned for empty lines and once the end of file is reached.
+	 */
+	public String readLine() throws IOException {
+		if (nextLine(currentLine)) {
+			return currentLine.toString();
+		}
+		return "";
+	}
+	
+	@Override
+	public boolean nextLine(LineSlice line) throws IOException {
+		while (true) {
+			for (; scanPosition < limit; scanPosition++) {
+				if (buffer[scanPosition] == '\n') {
+					setLine(line, scanPosition);
+					lineStart = ++scanPosition;
+					return true;
+				}
+			}
+			
+			if (endOfFile) {
+				if (lineStart == limit) {
+					return false;
+				}
+				// Last line of the file has no line terminator
+				setLine(line, limit);
+				lineStart = limit;
+				return true;
+			}
+			fill();
+		}
+	}
+	
+	private void setLine(LineSlice line, int lineEnd) {
+		int length = lineEnd - lineStart;
+		if (length > 0 && buffer[lineEnd - 1] == '\r') {
+			length--;
+		}
+		line.set(wrappedBuffer, lineStart, length, bufferOffset + lineStart);
+	}
+	
+	/**
+	 * Decompresses the next block after the unread bytes, growing the buffer if a single line doesn't fit.
+	 */
+	private void fill() throws IOException {
+		if (lineStart > 0) {
+			System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+			bufferOffset += lineStart;
+			scanPosition -= lineStart;
+			limit -= lineStart;
+			lineStart = 0;
+		}
+		if (limit == buffer.length) {
+			byte[] bigger = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, bigger, 0, limit);
+			buffer = bigger;
+			wrappedBuffer = ByteBuffer.wrap(buffer);
+		}
+		
+		int read = input.read(buffer, limit, buffer.length - limit);
+		if (read < 0) {
+			close();
+		}
+		else {
+			limit += read;
+		}
+	}
+	
+	/**
+	 * Only needed when reading stops before the end of the file, otherwise the file is closed automatically.
+	 */
+	@Override
+	public void close() throws IOException {
+		endOfFile = true;
+		input.close();
+	}
+}
@@ -0,0 +1,41 @@
+package loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64 bit hashing of raw log bytes, used by the sketches so that a column can be hashed without decoding it.
+ */
+final class Hashing {
+	private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+	
+	private Hashing() {
+	}
+	
+	static long hash64(ByteBuffer buffer, int start, int end) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = start; i < end; i++) {
+			hash ^= buffer.get(i) & 0xff;
+			hash *= FNV_PRIME;
+		}
+		return mix64(hash);
+	}
+	
+	/**
+	 * Same hash as hash64() of the UTF-8 bytes of the text.
+	 */
+	static long hash64(String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		return hash64(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+	
+	/**
+	 * Spreads the bits of a value so that all bits of the result depend on all bits of the input.
+	 */
+	static long mix64(long value) {
+		value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+		value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return value ^ (value >>> 33);
+	}
+}
@@ -0,0 +1,74 @@
+package loganalyzer;
+
+/**
+ * Slots in parallel primitive arrays on the Java heap. The fastest storage, as long as the heap is big enough.
+ */
+final class HeapCounterSlots implements CounterSlots {
+	private final long[] ipHigh;
+	private final long[] ipLow;
+	private final long[] hours;
+	private final int[] kindAndAction;
+	private final long[] counts;
+	
+	HeapCounterSlots(int capacity) {
+		ipHigh = new long[capacity];
+		ipLow = new long[capacity];
+		hours = new long[capacity];
+		kindAndAction = new int[capacity];
+		counts = new long[capacity];
+	}
+	
+	@Override
+	public int capacity() {
+		return counts.length;
+	}
+	
+	@Override
+	public long high(int slot) {
+		return ipHigh[slot];
+	}
+	
+	@Override
+	public long low(int slot) {
+		return ipLow[slot];
+	}
+	
+	@Override
+	public long hour(int slot) {
+		return hours[slot];
+	}
+	
+	@Override
+	public int meta(int slot) {
+		return kindAndAction[slot];
+	}
+	
+	@Override
+	public long count(int slot) {
+		return counts[slot];
+	}
+	
+	@Override
+	public void set(int slot, long high, long low, long hour, int meta, long count) {
+		ipHigh[slot] = high;
+		ipLow[slot] = low;
+		hours[slot] = hour;
+		kindAndAction[slot] = meta;
+		counts[slot] = count;
+	}
+	
+	@Override
+	public void addCount(int slot, long count) {
+		counts[slot] += count;
+	}
+	
+	@Override
+	public CounterSlots allocate(int capacity) {
+		return new HeapCounterSlots(capacity);
+	}
+	
+	@Override
+	public void release() {
+		// Left to the garbage collector
+	}
+}
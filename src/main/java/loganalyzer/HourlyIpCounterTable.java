@@ -0,0 +1,500 @@
+package loganalyzer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Open addressing hash table counting log entries per (IP, hour, action) with primitive keys and counters.
+ * 
+ * IPv4 addresses are kept as a 32 bit value and IPv6 addresses as two longs, so counting a line doesn't 
+ * allocate anything. The few IP values that are not canonical addresses and the actions (GET, POST, ...) 
+ * are numbered by ByteDictionary instances.
+ * 
+ * The slots are kept in CounterSlots, on the heap by default, or off the heap for very large tables.
+ * 
+ * With other TimeBuckets than hours, the hour of the keys is the index of the finest bucket, and rollUp() 
+ * sums the counts into coarser buckets.
+ */
+final class HourlyIpCounterTable {
+	// Kinds of IP, kept in the top bits of the meta word with the action id (also used by SharedUsageCounts)
+	static final int IPV4 = 0;
+	static final int IPV6 = 1;
+	static final int OTHER_IP = 2;
+	static final int KIND_SHIFT = 30;
+	private static final int ACTION_MASK = (1 << KIND_SHIFT) - 1;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int MAX_ACTIONS = 1 << 16;
+	private static final int MAX_OTHER_IPS = 1 << 24;
+	
+	/**
+	 * Receives the counts in report order.
+	 */
+	interface Visitor {
+		void visit(String userIp, long epochHour, String action, long count) throws IOException;
+	}
+	
+	// A count of 0 marks an empty slot
+	private CounterSlots slots;
+	private int size;
+	
+	private final ByteDictionary actions = new ByteDictionary(MAX_ACTIONS);
+	private final ByteDictionary otherIps = new ByteDictionary(MAX_OTHER_IPS);
+	private final int[] ipv6Groups = new int[IpAddress.GROUPS];
+	
+	HourlyIpCounterTable() {
+		this(new HeapCounterSlots(INITIAL_CAPACITY));
+	}
+	
+	/**
+	 * @param slots the empty slots to start with, which also allocate the slots when the table grows
+	 */
+	HourlyIpCounterTable(CounterSlots slots) {
+		this.slots = slots;
+	}
+	
+	/**
+	 * Creates an empty table whose slots are kept off the heap, within the given budget.
+	 */
+	static HourlyIpCounterTable offHeap(OffHeapCounterSlots.Budget budget) {
+		return new HourlyIpCounterTable(new OffHeapCounterSlots(INITIAL_CAPACITY, budget));
+	}
+	
+	/**
+	 * Creates an empty table that keeps its slots in the same kind of storage as this one.
+	 */
+	HourlyIpCounterTable newTable() {
+		return new HourlyIpCounterTable(slots.allocate(INITIAL_CAPACITY));
+	}
+	
+	/**
+	 * Gives back the memory of the slots, e.g. off-heap memory, once the table is not used anymore.
+	 */
+	void release() {
+		slots.release();
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	void increment(LogDataEntry entry) {
+		increment(entry, entry.epochHour());
+	}
+	
+	/**
+	 * Counts the entry in the given time bucket instead of its hour, see TimeBuckets.
+	 */
+	void increment(LogDataEntry entry, long bucket) {
+		ByteBuffer source = entry.source();
+		int kind;
+		long high = 0;
+		long low = IpAddress.parseIpv4(source, entry.ipStart(), entry.ipEnd());
+		if (low >= 0) {
+			kind = IPV4;
+		} 
+		else if (IpAddress.parseIpv6(source, entry.ipStart(), entry.ipEnd(), ipv6Groups)) {
+			kind = IPV6;
+			high = IpAddress.high(ipv6Groups);
+			low = IpAddress.low(ipv6Groups);
+		} 
+		else {
+			kind = OTHER_IP;
+			low = otherIps.id(source, entry.ipStart(), entry.ipEnd());
+		}
+		
+		add(kind, high, low, bucket, actions.id(source, entry.actionStart(), entry.actionEnd()), 1);
+	}
+	
+	/**
+	 * Adds all counts of another table to this one.
+	 */
+	void addAll(HourlyIpCounterTable other) {
+		addAll(other, 1);
+	}
+	
+	/**
+	 * Creates a table of coarser time buckets, each made of bucketFactor buckets of this table, with the summed 
+	 * counts. The new table keeps its slots in the same kind of storage, and should be released once reported.
+	 */
+	HourlyIpCounterTable rollUp(int bucketFactor) {
+		HourlyIpCounterTable coarser = newTable();
+		coarser.addAll(this, bucketFactor);
+		return coarser;
+	}
+	
+	private void addAll(HourlyIpCounterTable other, int bucketFactor) {
+		CounterSlots otherSlots = other.slots;
+		for (int slot = 0; slot < otherSlots.capacity(); slot++) {
+			long count = otherSlots.count(slot);
+			if (count == 0) {
+				continue;
+			}
+			int meta = otherSlots.meta(slot);
+			int kind = meta >>> KIND_SHIFT;
+			long low = otherSlots.low(slot);
+			if (kind == OTHER_IP) {
+				low = otherIps.id(other.otherIps, (int) low);
+			}
+			int action = actions.id(other.actions, meta & ACTION_MASK);
+			add(kind, otherSlots.high(slot), low, Math.floorDiv(otherSlots.hour(slot), bucketFactor), action, count);
+		}
+	}
+	
+	/**
+	 * Adds the user counts of SharedUsageCounts, whose action and other IP ids are those of the given dictionaries.
+	 */
+	void addAll(ConcurrentCounterTable counts, ByteDictionary sharedActions, ByteDictionary sharedOtherIps) {
+		counts.forEach((high, low, metaAndHour, count) -> {
+			int meta = (int) (metaAndHour >>> 32);
+			int kind = meta >>> KIND_SHIFT;
+			long ipValue = kind == OTHER_IP ? otherIps.id(sharedOtherIps, (int) low) : low;
+			add(kind, high, ipValue, (int) metaAndHour, actions.id(sharedActions, meta & ACTION_MASK), count);
+		});
+	}
+	
+	/**
+	 * Counts rows whose IP and action are ids of dictionaries, e.g. the columns of a LogIndex. The dictionary 
+	 * texts are converted to table keys once, so counting a row doesn't look at any text.
+	 */
+	final class DictionaryCounter {
+		private final int[] kinds;
+		private final long[] highs;
+		private final long[] lows;
+		private final int[] actionIds;
+		
+		private DictionaryCounter(List<String> ips, List<String> actionTexts) {
+			kinds = new int[ips.size()];
+			highs = new long[ips.size()];
+			lows = new long[ips.size()];
+			for (int id = 0; id < kinds.length; id++) {
+				String userIp = ips.get(id);
+				byte[] bytes = userIp.getBytes(StandardCharsets.UTF_8);
+				ByteBuffer source = ByteBuffer.wrap(bytes);
+				lows[id] = IpAddress.parseIpv4(source, 0, bytes.length);
+				if (lows[id] >= 0) {
+					kinds[id] = IPV4;
+				} 
+				else if (IpAddress.parseIpv6(source, 0, bytes.length, ipv6Groups)) {
+					kinds[id] = IPV6;
+					highs[id] = IpAddress.high(ipv6Groups);
+					lows[id] = IpAddress.low(ipv6Groups);
+				} 
+				else {
+					kinds[id] = OTHER_IP;
+					lows[id] = otherIps.id(source, 0, bytes.length);
+				}
+			}
+			
+			actionIds = new int[actionTexts.size()];
+			for (int id = 0; id < actionIds.length; id++) {
+				actionIds[id] = actions.id(actionTexts.get(id));
+			}
+		}
+		
+		void increment(int ip, long bucket, int action) {
+			add(kinds[ip], highs[ip], lows[ip], bucket, actionIds[action], 1);
+		}
+	}
+	
+	DictionaryCounter dictionaryCounter(List<String> ips, List<String> actionTexts) {
+		return new DictionaryCounter(ips, actionTexts);
+	}
+	
+	private void add(int kind, long high, long low, long hour, int action, long count) {
+		int meta = (kind << KIND_SHIFT) | action;
+		int mask = slots.capacity() - 1;
+		int slot = hash(high, low, hour, meta) & mask;
+		while (slots.count(slot) != 0) {
+			if (slots.low(slot) == low && slots.hour(slot) == hour && slots.meta(slot) == meta && slots.high(slot) == high) {
+				slots.addCount(slot, count);
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		slots.set(slot, high, low, hour, meta, count);
+		size++;
+		
+		// Keep the load factor below 0.6 so probe sequences stay short
+		if (size * 5L > slots.capacity() * 3L) {
+			grow();
+		}
+	}
+	
+	private static int hash(long high, long low, long hour, int meta) {
+		long h = low * 0x9E3779B97F4A7C15L + high;
+		h ^= (hour + meta) * 0xC2B2AE3D27D4EB4FL;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+	
+	private void grow() {
+		CounterSlots oldSlots = slots;
+		slots = oldSlots.allocate(oldSlots.capacity() * 2);
+		size = 0;
+		for (int slot = 0; slot < oldSlots.capacity(); slot++) {
+			long count = oldSlots.count(slot);
+			if (count != 0) {
+				int meta = oldSlots.meta(slot);
+				add(meta >>> KIND_SHIFT, oldSlots.high(slot), oldSlots.low(slot), oldSlots.hour(slot), meta & ACTION_MASK, count);
+			}
+		}
+		oldSlots.release();
+	}
+	
+	/**
+	 * Writes the counts in a compact binary form that readFrom() can add back to a table.
+	 */
+	void writeTo(DataOutput output) throws IOException {
+		output.writeInt(actions.size());
+		for (int id = 0; id < actions.size(); id++) {
+			output.writeUTF(actions.text(id));
+		}
+		output.writeInt(otherIps.size());
+		for (int id = 0; id < otherIps.size(); id++) {
+			output.writeUTF(otherIps.text(id));
+		}
+		
+		output.writeInt(size);
+		for (int slot = 0; slot < slots.capacity(); slot++) {
+			long count = slots.count(slot);
+			if (count == 0) {
+				continue;
+			}
+			int meta = slots.meta(slot);
+			int kind = meta >>> KIND_SHIFT;
+			output.writeByte(kind);
+			if (kind == IPV6) {
+				output.writeLong(slots.high(slot));
+				output.writeLong(slots.low(slot));
+			} 
+			else {
+				output.writeInt((int) slots.low(slot));
+			}
+			output.writeInt((int) slots.hour(slot));
+			output.writeInt(meta & ACTION_MASK);
+			output.writeLong(count);
+		}
+	}
+	
+	/**
+	 * Adds counts written by writeTo() to this table.
+	 */
+	void readFrom(DataInput input) throws IOException {
+		int[] actionIds = new int[input.readInt()];
+		for (int i = 0; i < actionIds.length; i++) {
+			actionIds[i] = actions.id(input.readUTF());
+		}
+		int[] otherIds = new int[input.readInt()];
+		for (int i = 0; i < otherIds.length; i++) {
+			otherIds[i] = otherIps.id(input.readUTF());
+		}
+		
+		int entryCount = input.readInt();
+		for (int i = 0; i < entryCount; i++) {
+			int kind = input.readByte();
+			long high = 0;
+			long low;
+			if (kind == IPV6) {
+				high = input.readLong();
+				low = input.readLong();
+			} 
+			else {
+				low = input.readInt();
+				low = kind == IPV4 ? low & 0xFFFFFFFFL : otherIds[(int) low];
+			}
+			long hour = input.readInt();
+			int action = actionIds[input.readInt()];
+			add(kind, high, low, hour, action, input.readLong());
+		}
+	}
+	
+	private String ipText(int slot) {
+		switch (slots.meta(slot) >>> KIND_SHIFT) {
+			case IPV4:
+				return IpAddress.formatIpv4(slots.low(slot));
+			case IPV6:
+				return IpAddress.formatIpv6(slots.high(slot), slots.low(slot));
+			default:
+				return otherIps.text((int) slots.low(slot));
+		}
+	}
+	
+	/**
+	 * Visits all counts ordered the same way as the text keys "IP yyyy/MM/dd HH:00:00 action" would sort.
+	 */
+	void forEachSorted(Visitor visitor) throws IOException {
+		visitSorted(occupiedSlots(0, slots.capacity()), visitor);
+	}
+	
+	/**
+	 * Like forEachSorted(visitor), but a table with more than runEntries counts is sorted externally: 
+	 * ranges of slots holding about runEntries counts are sorted one at a time and written to temporary 
+	 * files in runDirectory, which are then merged. Sorting then only needs memory for one run.
+	 */
+	void forEachSorted(Visitor visitor, int runEntries, Path runDirectory) throws IOException {
+		if (size <= runEntries) {
+			forEachSorted(visitor);
+			return;
+		}
+		
+		try (SortedRuns runs = new SortedRuns(runDirectory)) {
+			// Hashing spreads the keys evenly, so each range holds about runEntries of them
+			int capacity = slots.capacity();
+			int rangeSlots = (int) Math.max(1, (long) capacity * runEntries / size);
+			for (int fromSlot = 0; fromSlot < capacity; fromSlot += rangeSlots) {
+				int[] order = occupiedSlots(fromSlot, (int) Math.min(capacity, (long) fromSlot + rangeSlots));
+				runs.addRun(order.length, output -> visitSorted(order, (userIp, epochHour, action, count) -> {
+					output.writeUTF(userIp);
+					output.writeLong(epochHour);
+					output.writeUTF(action);
+					output.writeLong(count);
+				}));
+			}
+			
+			runs.merge(RunCursor::new, (a, b) -> {
+				int result = compareIpKeys(a.userIp, b.userIp);
+				if (result == 0) {
+					result = Long.compare(a.epochHour, b.epochHour);
+				}
+				return result != 0 ? result : a.action.compareTo(b.action);
+			}, cursor -> visitor.visit(cursor.userIp, cursor.epochHour, cursor.action, cursor.count));
+		}
+	}
+	
+	private static final class RunCursor extends SortedRuns.Cursor {
+		private String userIp;
+		private long epochHour;
+		private String action;
+		private long count;
+		
+		@Override
+		void read(DataInput input) throws IOException {
+			userIp = input.readUTF();
+			epochHour = input.readLong();
+			action = input.readUTF();
+			count = input.readLong();
+		}
+	}
+	
+	/**
+	 * @return the occupied slots in [fromSlot, toSlot)
+	 */
+	private int[] occupiedSlots(int fromSlot, int toSlot) {
+		int occupied = 0;
+		for (int slot = fromSlot; slot < toSlot; slot++) {
+			if (slots.count(slot) != 0) {
+				occupied++;
+			}
+		}
+		int[] order = new int[occupied];
+		occupied = 0;
+		for (int slot = fromSlot; slot < toSlot; slot++) {
+			if (slots.count(slot) != 0) {
+				order[occupied++] = slot;
+			}
+		}
+		return order;
+	}
+	
+	/**
+	 * Visits the given slots in report order.
+	 * 
+	 * The text of every distinct IP is only created once: slots are first grouped by IP numerically, 
+	 * the distinct IP texts are ranked, and then the slots are sorted by (IP rank, hour, action rank).
+	 */
+	private void visitSorted(int[] order, Visitor visitor) throws IOException {
+		int length = order.length;
+		IntSorter.sort(order, length, (a, b) -> {
+			int result = Integer.compare(slots.meta(a) >>> KIND_SHIFT, slots.meta(b) >>> KIND_SHIFT);
+			if (result == 0) {
+				result = Long.compare(slots.high(a), slots.high(b));
+			}
+			return result != 0 ? result : Long.compare(slots.low(a), slots.low(b));
+		});
+		
+		// Number the distinct IPs and remember the IP number of each entry of order
+		int[] ipOfEntry = new int[length];
+		List<String> ipTexts = new ArrayList<String>();
+		for (int i = 0; i < length; i++) {
+			if (i == 0 || !sameIp(order[i], order[i - 1])) {
+				ipTexts.add(ipText(order[i]));
+			}
+			ipOfEntry[i] = ipTexts.size() - 1;
+		}
+		
+		int[] ipOrder = new int[ipTexts.size()];
+		for (int i = 0; i < ipOrder.length; i++) {
+			ipOrder[i] = i;
+		}
+		IntSorter.sort(ipOrder, ipOrder.length, (a, b) -> compareIpKeys(ipTexts.get(a), ipTexts.get(b)));
+		int[] ipRank = new int[ipOrder.length];
+		for (int rank = 0; rank < ipOrder.length; rank++) {
+			ipRank[ipOrder[rank]] = rank;
+		}
+		
+		// Entries are sorted by their position in order, which keeps their IP number at hand
+		int[] actionRank = rankActions();
+		int[] positions = new int[length];
+		for (int i = 0; i < length; i++) {
+			positions[i] = i;
+		}
+		IntSorter.sort(positions, length, (a, b) -> {
+			int result = Integer.compare(ipRank[ipOfEntry[a]], ipRank[ipOfEntry[b]]);
+			if (result == 0) {
+				result = Long.compare(slots.hour(order[a]), slots.hour(order[b]));
+			}
+			return result != 0 ? result 
+					: Integer.compare(actionRank[slots.meta(order[a]) & ACTION_MASK], actionRank[slots.meta(order[b]) & ACTION_MASK]);
+		});
+		
+		for (int position : positions) {
+			int slot = order[position];
+			visitor.visit(ipTexts.get(ipOfEntry[position]), slots.hour(slot), actions.text(slots.meta(slot) & ACTION_MASK), slots.count(slot));
+		}
+	}
+	
+	/**
+	 * Compares two IPs the way the keys starting with them sort: a key continues with a space after 
+	 * the IP, which decides the order when one IP is a prefix of another.
+	 */
+	private static int compareIpKeys(String userIp, String otherIp) {
+		int length = Math.min(userIp.length(), otherIp.length());
+		for (int i = 0; i < length; i++) {
+			int result = userIp.charAt(i) - otherIp.charAt(i);
+			if (result != 0) {
+				return result;
+			}
+		}
+		char next = userIp.length() > length ? userIp.charAt(length) : ' ';
+		char otherNext = otherIp.length() > length ? otherIp.charAt(length) : ' ';
+		return next - otherNext;
+	}
+	
+	private boolean sameIp(int slot, int otherSlot) {
+		return slots.low(slot) == slots.low(otherSlot) && slots.high(slot) == slots.high(otherSlot) 
+				&& (slots.meta(slot) >>> KIND_SHIFT) == (slots.meta(otherSlot) >>> KIND_SHIFT);
+	}
+	
+	private int[] rankActions() {
+		String[] sorted = new String[actions.size()];
+		for (int id = 0; id < sorted.length; id++) {
+			sorted[id] = actions.text(id);
+		}
+		Arrays.sort(sorted);
+		int[] rank = new int[actions.size()];
+		for (int id = 0; id < rank.length; id++) {
+			rank[id] = Arrays.binarySearch(sorted, actions.text(id));
+		}
+		return rank;
+	}
+}
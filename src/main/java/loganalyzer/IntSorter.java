@@ -0,0 +1,54 @@
+package loganalyzer;
+
+/**
+ * Stable merge sort of int arrays with a custom comparator. Used to sort slot indexes of the primitive 
+ * counter tables without boxing every index into an Integer.
+ */
+final class IntSorter {
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+	
+	interface IntComparator {
+		int compare(int a, int b);
+	}
+	
+	private IntSorter() {
+	}
+	
+	static void sort(int[] values, int length, IntComparator comparator) {
+		int[] buffer = new int[length];
+		mergeSort(values, buffer, 0, length, comparator);
+	}
+	
+	private static void mergeSort(int[] values, int[] buffer, int from, int to, IntComparator comparator) {
+		if (to - from <= INSERTION_SORT_THRESHOLD) {
+			for (int i = from + 1; i < to; i++) {
+				int value = values[i];
+				int j = i - 1;
+				while (j >= from && comparator.compare(values[j], value) > 0) {
+					values[j + 1] = values[j];
+					j--;
+				}
+				values[j + 1] = value;
+			}
+			return;
+		}
+		
+		int middle = (from + to) >>> 1;
+		mergeSort(values, buffer, from, middle, comparator);
+		mergeSort(values, buffer, middle, to, comparator);
+		if (comparator.compare(values[middle - 1], values[middle]) <= 0) {
+			return;
+		}
+		
+		System.arraycopy(values, from, buffer, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < middle && comparator.compare(buffer[left], buffer[right]) <= 0)) {
+				values[i] = buffer[left++];
+			} else {
+				values[i] = buffer[right++];
+			}
+		}
+	}
+}
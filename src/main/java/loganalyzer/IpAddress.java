@@ -0,0 +1,191 @@
+package loganalyzer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversions between textual IP addresses and their numeric values.
+ * 
+ * Only canonical text forms are accepted when parsing (IPv4 without leading zeros, IPv6 as in RFC 5952), 
+ * so that formatting the parsed value gives back exactly the text that was in the log.
+ */
+final class IpAddress {
+	static final int GROUPS = 8;
+	
+	private IpAddress() {
+	}
+	
+	/**
+	 * @return the address as an unsigned 32 bit value, or -1 if the bytes are not a canonical IPv4 address
+	 */
+	static long parseIpv4(ByteBuffer buffer, int start, int end) {
+		long address = 0;
+		int octets = 0;
+		int i = start;
+		while (octets < 4) {
+			int digitsStart = i;
+			int octet = 0;
+			while (i < end && i - digitsStart < 3 && buffer.get(i) >= '0' && buffer.get(i) <= '9') {
+				octet = octet * 10 + (buffer.get(i) - '0');
+				i++;
+			}
+			int digits = i - digitsStart;
+			if (digits == 0 || octet > 255 || (digits > 1 && buffer.get(digitsStart) == '0')) {
+				return -1;
+			}
+			address = (address << 8) | octet;
+			octets++;
+			
+			if (octets < 4) {
+				if (i >= end || buffer.get(i) != '.') {
+					return -1;
+				}
+				i++;
+			}
+		}
+		return i == end ? address : -1;
+	}
+	
+	/**
+	 * Parses a canonical IPv6 address into the 8 given 16 bit groups.
+	 * @return false if the bytes are not an IPv6 address in RFC 5952 form
+	 */
+	static boolean parseIpv6(ByteBuffer buffer, int start, int end, int[] groups) {
+		int explicitGroups = 0;
+		int compressedAt = -1;
+		int i = start;
+		
+		if (end - start >= 2 && buffer.get(i) == ':' && buffer.get(i + 1) == ':') {
+			compressedAt = 0;
+			i += 2;
+		}
+		while (i < end) {
+			if (explicitGroups == GROUPS) {
+				return false;
+			}
+			int digitsStart = i;
+			int group = 0;
+			while (i < end && i - digitsStart < 4) {
+				int digit = lowerHexDigit(buffer.get(i));
+				if (digit < 0) {
+					break;
+				}
+				group = (group << 4) | digit;
+				i++;
+			}
+			int digits = i - digitsStart;
+			if (digits == 0 || (digits > 1 && buffer.get(digitsStart) == '0')) {
+				return false;
+			}
+			groups[explicitGroups++] = group;
+			
+			if (i < end) {
+				if (buffer.get(i) != ':' || i + 1 >= end) {
+					return false;
+				}
+				i++;
+				if (buffer.get(i) == ':') {
+					if (compressedAt >= 0) {
+						return false;
+					}
+					compressedAt = explicitGroups;
+					i++;
+				}
+			}
+		}
+		
+		if (compressedAt < 0 && explicitGroups != GROUPS) {
+			return false;
+		}
+		// Move the groups after "::" to the end and fill the gap with zeros
+		int compressedLength = GROUPS - explicitGroups;
+		if (compressedAt >= 0) {
+			for (int g = explicitGroups - 1; g >= compressedAt; g--) {
+				groups[g + compressedLength] = groups[g];
+			}
+			for (int g = compressedAt; g < compressedAt + compressedLength; g++) {
+				groups[g] = 0;
+			}
+		}
+		
+		// Canonical form compresses the first longest run of at least two zero groups, and nothing else
+		int longestRunStart = longestZeroRun(groups);
+		int longestRunLength = zeroRunLength(groups, longestRunStart);
+		if (longestRunLength < 2) {
+			return compressedAt < 0;
+		}
+		return compressedAt == longestRunStart && compressedLength == longestRunLength;
+	}
+	
+	static long high(int[] groups) {
+		return ((long) groups[0] << 48) | ((long) groups[1] << 32) | ((long) groups[2] << 16) | groups[3];
+	}
+	
+	static long low(int[] groups) {
+		return ((long) groups[4] << 48) | ((long) groups[5] << 32) | ((long) groups[6] << 16) | groups[7];
+	}
+	
+	static String formatIpv4(long address) {
+		return ((address >>> 24) & 0xff) + "." + ((address >>> 16) & 0xff) + "." 
+				+ ((address >>> 8) & 0xff) + "." + (address & 0xff);
+	}
+	
+	static String formatIpv6(long high, long low) {
+		int[] groups = new int[GROUPS];
+		for (int g = 0; g < 4; g++) {
+			groups[g] = (int) (high >>> (48 - 16 * g)) & 0xffff;
+			groups[g + 4] = (int) (low >>> (48 - 16 * g)) & 0xffff;
+		}
+		
+		int runStart = longestZeroRun(groups);
+		int runLength = zeroRunLength(groups, runStart);
+		if (runLength < 2) {
+			runStart = -1;
+		}
+		
+		StringBuilder builder = new StringBuilder(39);
+		for (int g = 0; g < GROUPS; g++) {
+			if (g == runStart) {
+				builder.append("::");
+				g += runLength - 1;
+				continue;
+			}
+			if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ':') {
+				builder.append(':');
+			}
+			builder.append(Integer.toHexString(groups[g]));
+		}
+		return builder.toString();
+	}
+	
+	private static int longestZeroRun(int[] groups) {
+		int bestStart = -1;
+		int bestLength = 0;
+		for (int g = 0; g < GROUPS; g++) {
+			int length = zeroRunLength(groups, g);
+			if (length > bestLength) {
+				bestStart = g;
+				bestLength = length;
+			}
+			g += length;
+		}
+		return bestStart;
+	}
+	
+	private static int zeroRunLength(int[] groups, int start) {
+		int length = 0;
+		while (start >= 0 && start + length < GROUPS && groups[start + length] == 0) {
+			length++;
+		}
+		return length;
+	}
+	
+	private static int lowerHexDigit(byte b) {
+		if (b >= '0' && b <= '9') {
+			return b - '0';
+		}
+		if (b >= 'a' && b <= 'f') {
+			return b - 'a' + 10;
+		}
+		return -1;
+	}
+}
@@ -9,4 +9,10 @@ public interface LargeFile {
 	
 	public String readLine() throws IOException;
 	
+	/**
+	 * Points the given slice at the next line of the file without copying it.
+	 * @return false once the end of the file has been reached
+	 */
+	public boolean nextLine(LineSlice line) throws IOException;
+	
 }
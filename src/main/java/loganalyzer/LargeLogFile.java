@@ -3,6 +3,8 @@ package loganalyzer;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
 /**
@@ -42,6 +44,30 @@ public final class LargeLogFile implements LargeFile{
 		return logLine;
 	}
 	
+	@Override
+	/**
+	 * Fallback for callers that work on byte slices. Scanner already decoded the line into a String, 
+	 * so this encodes it back and the slice does not know its file offset.
+	 */
+	public boolean nextLine(LineSlice line) throws IOException {
+		boolean hasLine = false;
+		try {
+			hasLine = largeFileScanner.hasNextLine();
+			if (hasLine) {
+				byte[] bytes = largeFileScanner.nextLine().getBytes(StandardCharsets.UTF_8);
+				line.set(ByteBuffer.wrap(bytes), 0, bytes.length, -1);
+			} else {
+				closeStreams();
+			}
+		} catch (IllegalStateException ex){
+			if (!ex.getMessage().equals("Scanner closed")) {
+				throw ex;
+			}
+		}
+		
+		return hasLine;
+	}
+	
 	private void closeStreams() throws IOException {
 		if(largeFileStream != null) {
 			largeFileStream.close();
@@ -0,0 +1,317 @@
+package loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Selects the log lines to count by a time window, an IP prefix or CIDR range, an action and a domain suffix.
+ * 
+ * The conditions are checked on the raw bytes of a line, before a LogDataEntry is built from it, so lines 
+ * that are filtered out are never fully parsed. Such lines are not validated either: a malformed line that 
+ * is filtered out doesn't stop the reading. Lines whose columns can't be checked without parsing (fewer than 
+ * 4 columns, or a timestamp that isn't in the canonical "yyyy/MM/dd HH:mm:ss" form) are passed on to the 
+ * parser, and their time is checked again with acceptsTime() once parsed.
+ * 
+ * For logs that are ordered by time, setSortedByTime() lets readers start at the window with SortedLogSearch 
+ * and stop at the first line after it.
+ */
+public final class LineFilter {
+	/**
+	 * Outcome of test(): count the line, skip it, or stop reading since the rest of a sorted log is after the window.
+	 */
+	enum Result {
+		MATCH, SKIP, PAST_WINDOW
+	}
+	
+	// Length of "yyyy/MM/dd HH:mm:ss"
+	private static final int TIMESTAMP_LENGTH = 19;
+	// Returned for timestamps that aren't in the canonical form
+	static final long UNKNOWN_TIME = Long.MIN_VALUE;
+	
+	private long fromSecond = Long.MIN_VALUE;
+	private long toSecond = Long.MAX_VALUE;
+	private boolean sortedByTime;
+	
+	// IP condition: either a byte prefix, or an IPv4 or IPv6 network
+	private byte[] ipPrefix;
+	private boolean ipv4Network;
+	private long ipv4Address;
+	private long ipv4Mask;
+	private boolean ipv6Network;
+	private long ipv6High;
+	private long ipv6Low;
+	private long ipv6HighMask;
+	private long ipv6LowMask;
+	
+	private byte[] action;
+	// The domain itself, and the domain preceded by a dot for subdomains
+	private byte[] domain;
+	private byte[] dotDomain;
+	
+	/**
+	 * Only counts lines with a time in [fromSecond, toSecond), in seconds since 1970/01/01 00:00:00 like LogTime.
+	 */
+	public void setTimeWindow(long fromSecond, long toSecond) {
+		this.fromSecond = fromSecond;
+		this.toSecond = toSecond;
+	}
+	
+	/**
+	 * Only counts lines whose IP starts with the given text, or is in the given network if it has the form 
+	 * "address/prefix length", e.g. "10.1.0.0/16" or "2001:db8::/32".
+	 * 
+	 * @throws IllegalArgumentException if a network is not a canonical address followed by a valid prefix length
+	 */
+	public void setIpRange(String range) {
+		ipPrefix = null;
+		ipv4Network = false;
+		ipv6Network = false;
+		int slash = range.indexOf('/');
+		if (slash < 0) {
+			ipPrefix = range.getBytes(StandardCharsets.UTF_8);
+			return;
+		}
+		
+		byte[] address = range.substring(0, slash).getBytes(StandardCharsets.UTF_8);
+		int prefixLength;
+		try {
+			prefixLength = Integer.parseInt(range.substring(slash + 1));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid prefix length in IP range: " + range);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(address);
+		int[] groups = new int[IpAddress.GROUPS];
+		long ipv4 = IpAddress.parseIpv4(buffer, 0, address.length);
+		if (ipv4 >= 0 && prefixLength >= 0 && prefixLength <= 32) {
+			ipv4Network = true;
+			ipv4Mask = prefixLength == 0 ? 0 : (0xffffffffL << (32 - prefixLength)) & 0xffffffffL;
+			ipv4Address = ipv4 & ipv4Mask;
+		} else if (ipv4 < 0 && IpAddress.parseIpv6(buffer, 0, address.length, groups) 
+				&& prefixLength >= 0 && prefixLength <= 128) {
+			ipv6Network = true;
+			ipv6HighMask = mask(Math.min(prefixLength, 64));
+			ipv6LowMask = mask(Math.max(prefixLength - 64, 0));
+			ipv6High = IpAddress.high(groups) & ipv6HighMask;
+			ipv6Low = IpAddress.low(groups) & ipv6LowMask;
+		} else {
+			throw new IllegalArgumentException("Invalid IP range: " + range);
+		}
+	}
+	
+	/**
+	 * @return a mask of the given number of leading one bits out of 64
+	 */
+	private static long mask(int bits) {
+		return bits == 0 ? 0 : -1L << (64 - bits);
+	}
+	
+	/**
+	 * Only counts lines with exactly this action, e.g. "GET".
+	 */
+	public void setAction(String action) {
+		this.action = action.getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Only counts lines whose domain is the given one or one of its subdomains: "example.com" matches 
+	 * "example.com" and "www.example.com", but not "myexample.com".
+	 */
+	public void setDomainSuffix(String domain) {
+		this.domain = domain.getBytes(StandardCharsets.UTF_8);
+		this.dotDomain = ("." + domain).getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Declares that the log is ordered by time, so that reading can start at the time window and stop after it.
+	 * If it isn't, lines of the window may be missed.
+	 */
+	public void setSortedByTime(boolean sortedByTime) {
+		this.sortedByTime = sortedByTime;
+	}
+	
+	boolean sortedByTime() {
+		return sortedByTime;
+	}
+	
+	long fromSecond() {
+		return fromSecond;
+	}
+	
+	/**
+	 * @return true if readers of a sorted log can skip to the first line of the time window
+	 */
+	boolean seeksWindow() {
+		return sortedByTime && fromSecond != Long.MIN_VALUE;
+	}
+	
+	/**
+	 * Checks the columns of a raw line. Only the first 4 columns are looked at.
+	 */
+	Result test(LineSlice line) {
+		ByteBuffer buffer = line.buffer();
+		int start = line.offset();
+		int end = start + line.length();
+		
+		// Column ends, found the same way as the parser splits the line at commas
+		int dateEnd = indexOfComma(buffer, start, end);
+		int ipEnd = indexOfComma(buffer, dateEnd + 1, end);
+		int actionEnd = indexOfComma(buffer, ipEnd + 1, end);
+		if (actionEnd >= end) {
+			// The parser reports the missing columns
+			return Result.MATCH;
+		}
+		int domainEnd = indexOfComma(buffer, actionEnd + 1, end);
+		
+		if (fromSecond != Long.MIN_VALUE || toSecond != Long.MAX_VALUE) {
+			long second = timestamp(buffer, start, dateEnd);
+			if (second != UNKNOWN_TIME) {
+				if (second >= toSecond) {
+					return sortedByTime ? Result.PAST_WINDOW : Result.SKIP;
+				}
+				if (second < fromSecond) {
+					return Result.SKIP;
+				}
+			}
+		}
+		if ((ipPrefix != null || ipv4Network || ipv6Network) && !matchesIp(buffer, dateEnd + 1, ipEnd)) {
+			return Result.SKIP;
+		}
+		if (action != null && !equals(buffer, ipEnd + 1, actionEnd, action)) {
+			return Result.SKIP;
+		}
+		if (domain != null && !matchesDomain(buffer, actionEnd + 1, domainEnd)) {
+			return Result.SKIP;
+		}
+		return Result.MATCH;
+	}
+	
+	/**
+	 * Checks the time of a parsed entry, for lines whose timestamp test() couldn't decode.
+	 */
+	boolean acceptsTime(LogDataEntry entry) {
+		return entry.epochSecond() >= fromSecond && entry.epochSecond() < toSecond;
+	}
+	
+	private boolean matchesIp(ByteBuffer buffer, int start, int end) {
+		start = trimStart(buffer, start, end);
+		end = trimEnd(buffer, start, end);
+		if (ipPrefix != null) {
+			return end - start >= ipPrefix.length && regionMatches(buffer, start, ipPrefix);
+		}
+		if (ipv4Network) {
+			long address = IpAddress.parseIpv4(buffer, start, end);
+			return address >= 0 && (address & ipv4Mask) == ipv4Address;
+		}
+		// The filter is shared by the threads of parallel modes, so it has no buffer of its own
+		int[] groups = new int[IpAddress.GROUPS];
+		return IpAddress.parseIpv6(buffer, start, end, groups) 
+				&& (IpAddress.high(groups) & ipv6HighMask) == ipv6High && (IpAddress.low(groups) & ipv6LowMask) == ipv6Low;
+	}
+	
+	private boolean matchesDomain(ByteBuffer buffer, int start, int end) {
+		start = trimStart(buffer, start, end);
+		end = trimEnd(buffer, start, end);
+		if (end - start == domain.length) {
+			return regionMatches(buffer, start, domain);
+		}
+		return end - start > dotDomain.length && regionMatches(buffer, end - dotDomain.length, dotDomain);
+	}
+	
+	/**
+	 * Compares the trimmed bytes in [start, end) of the buffer with the given value.
+	 */
+	private static boolean equals(ByteBuffer buffer, int start, int end, byte[] value) {
+		start = trimStart(buffer, start, end);
+		end = trimEnd(buffer, start, end);
+		return end - start == value.length && regionMatches(buffer, start, value);
+	}
+	
+	private static boolean regionMatches(ByteBuffer buffer, int start, byte[] value) {
+		for (int i = 0; i < value.length; i++) {
+			if (buffer.get(start + i) != value[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static int indexOfComma(ByteBuffer buffer, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer.get(i) == ',') {
+				return i;
+			}
+		}
+		return end;
+	}
+	
+	/**
+	 * Same as String.trim(), like the parser.
+	 */
+	private static int trimStart(ByteBuffer buffer, int start, int end) {
+		while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+	
+	private static int trimEnd(ByteBuffer buffer, int start, int end) {
+		while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+	
+	/**
+	 * Decodes a date column in the canonical "yyyy/MM/dd HH:mm:ss" form, which is the only one the parser 
+	 * accepts with exactly 19 bytes.
+	 * 
+	 * @return seconds since 1970/01/01 00:00:00, or UNKNOWN_TIME if the column is in another form or invalid
+	 */
+	static long timestamp(ByteBuffer buffer, int start, int end) {
+		if (end - start != TIMESTAMP_LENGTH || buffer.get(start + 4) != '/' || buffer.get(start + 7) != '/' 
+				|| buffer.get(start + 10) != ' ' || buffer.get(start + 13) != ':' || buffer.get(start + 16) != ':') {
+			return UNKNOWN_TIME;
+		}
+		int year = digits(buffer, start, 4);
+		int month = digits(buffer, start + 5, 2);
+		int day = digits(buffer, start + 8, 2);
+		int hour = digits(buffer, start + 11, 2);
+		int minute = digits(buffer, start + 14, 2);
+		int second = digits(buffer, start + 17, 2);
+		if (year < 1 || month < 1 || month > 12 || day < 1 || day > LogTime.lengthOfMonth(year, month) 
+				|| hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+			return UNKNOWN_TIME;
+		}
+		return LogTime.epochDay(year, month, day) * LogTime.SECONDS_PER_DAY 
+				+ hour * LogTime.SECONDS_PER_HOUR + minute * 60 + second;
+	}
+	
+	/**
+	 * @return the value of count decimal digits, or -1 if one of the bytes is not a digit
+	 */
+	private static int digits(ByteBuffer buffer, int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+	
+	/**
+	 * Parses a time given as "yyyy/MM/dd HH:mm:ss", or as "yyyy/MM/dd" for the start of that day.
+	 * 
+	 * @throws IllegalArgumentException if the text is in neither form
+	 */
+	static long parseTime(String text) {
+		byte[] bytes = (text.length() == 10 ? text + " 00:00:00" : text).getBytes(StandardCharsets.UTF_8);
+		long second = timestamp(ByteBuffer.wrap(bytes), 0, bytes.length);
+		if (second == UNKNOWN_TIME) {
+			throw new IllegalArgumentException("Expected a time as yyyy/MM/dd[ HH:mm:ss] but was: " + text);
+		}
+		return second;
+	}
+}
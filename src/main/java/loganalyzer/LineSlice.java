@@ -0,0 +1,76 @@
+package loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A view of a single line inside a byte buffer, without the line terminator.
+ * 
+ * Readers reuse the same slice for every line, so its content is only valid until the next read. 
+ * Call toString() to get a copy of the line that can be kept around.
+ */
+public final class LineSlice {
+	private ByteBuffer buffer;
+	private int offset;
+	private int length;
+	private long fileOffset = -1;
+	
+	public LineSlice() {
+		buffer = ByteBuffer.allocate(0);
+	}
+	
+	/**
+	 * Creates a slice over a whole byte array. Used when a line only exists as a String.
+	 */
+	public static LineSlice wrap(byte[] bytes) {
+		LineSlice slice = new LineSlice();
+		slice.set(ByteBuffer.wrap(bytes), 0, bytes.length, -1);
+		return slice;
+	}
+	
+	void set(ByteBuffer buffer, int offset, int length, long fileOffset) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+		this.fileOffset = fileOffset;
+	}
+	
+	public byte byteAt(int index) {
+		return buffer.get(offset + index);
+	}
+	
+	public int length() {
+		return length;
+	}
+	
+	public boolean isEmpty() {
+		return length == 0;
+	}
+	
+	/**
+	 * Byte offset of the start of this line in the file it was read from, or -1 if unknown.
+	 */
+	public long fileOffset() {
+		return fileOffset;
+	}
+	
+	ByteBuffer buffer() {
+		return buffer;
+	}
+	
+	int offset() {
+		return offset;
+	}
+	
+	/**
+	 * Decodes the line as UTF-8. This is the only method that copies the line content.
+	 */
+	@Override
+	public String toString() {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
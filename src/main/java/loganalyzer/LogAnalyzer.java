@@ -1,43 +1,241 @@
 package loganalyzer;
 
+import java.io.Closeable;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Entry point of LogAnalyzer class. Assumes user will pass in a path to a log file.
+ * Entry point of LogAnalyzer class. Assumes user will pass in a path to a log file, 
+ * or a directory or file name pattern matching several (possibly gzip compressed) log files.
  */
 public class LogAnalyzer {
 	
 	public static void main( String[] args )
     {		
-		if(args.length != 1){
+		AnalyzerOptions options;
+		try {
+			options = AnalyzerOptions.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
 			displayUsage();
+			return;
 		}
 
+		ReportSink reportSink;
+		try {
+			reportSink = createReportSink(options);
+		} catch (IOException e) {
+			System.out.println("Can't write the report to: " + options.outputPath());
+			return;
+		}
+		
+		// Opening the log is part of the measured time
+		long startTime = System.currentTimeMillis();
+		String pathText = String.join(" ", options.logPaths());
+		UsageServer server = null;
+		MalformedLines malformedLines = null;
 		try {
-			System.out.println("Trying to open file: " + args[0]);
-			LargeLogFile logFile = new LargeLogFile(args[0]);	
-			LogUsageData usageData = new LogUsageData(logFile);
+			System.out.println("Trying to open file: " + pathText);
+			List<String> logPaths = new ArrayList<String>();
+			for (String path : options.logPaths()) {
+				logPaths.addAll(MultiFileIngester.resolve(path));
+			}
+			if (logPaths.isEmpty()) {
+				System.out.println("No log files found at: " + pathText);
+				displayUsage();
+				return;
+			}
+			String logPath = logPaths.get(0);
+			boolean compressed = MultiFileIngester.isCompressed(logPath);
+			if (!options.merge() && (logPaths.size() > 1 || compressed) && (options.followIntervalMillis() > 0 || options.checkpointPath() != null 
+					|| options.buildIndex() || options.useIndex())) {
+				System.out.println("Options --follow, --checkpoint, --build-index and --index need a single uncompressed log file.");
+				displayUsage();
+				return;
+			}
 			
-			Long startTime = System.currentTimeMillis();
+			if (options.buildIndex()) {
+				long entryCount = LogIndexWriter.write(logPath, options.indexPath());
+				System.out.println("Indexed " + entryCount + " entries into " + options.indexPath());
+				displayElapsedTime(System.currentTimeMillis() - startTime);
+				return;
+			}
 			
-			usageData.displayAllData();
+			LogUsageData usageData;
+			if (options.merge()) {
+				// The paths are partial results written with --partial
+				usageData = new LogUsageData();
+				usageData.readFromPartials(logPaths);
+			} else if (logPaths.size() > 1) {
+				if (options.streamDomains() || options.pipeline()) {
+					System.out.println("Options --stream-domains and --pipeline need a single log file.");
+					displayUsage();
+					return;
+				}
+				int threadCount = options.threadCount() > 0 ? options.threadCount() : Runtime.getRuntime().availableProcessors();
+				usageData = new LogUsageData(logPaths, threadCount);
+				if (options.sharedCounters()) {
+					usageData.enableSharedCounters();
+				}
+			} else if (options.threadCount() > 1 && !compressed) {
+				// Fail early on invalid paths, like the single threaded reader does
+				new MappedLogFile(logPath).close();
+				usageData = new LogUsageData(logPath, options.threadCount());
+				if (options.sharedCounters()) {
+					usageData.enableSharedCounters();
+				}
+			} else if (options.followIntervalMillis() > 0) {
+				usageData = new LogUsageData(new FollowingLogFile(logPath));
+			} else {
+				// A compressed file can't be split into chunks, so it is always read on one thread
+				LargeFile logFile = MultiFileIngester.open(logPath);
+				usageData = new LogUsageData(logFile);
+				if (options.streamDomains()) {
+					usageData.enableDomainStreaming();
+				}
+				if (options.checkpointPath() != null) {
+					usageData.enableCheckpoints(options.checkpointPath(), options.checkpointIntervalMillis());
+				}
+				if (options.useIndex()) {
+					usageData.readFromIndex(options.indexPath());
+				}
+				if (options.pipeline()) {
+					// The reader and the aggregator have a thread of their own
+					int parserCount = options.pipelineParserCount() > 0 ? options.pipelineParserCount() 
+							: Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+					usageData.enablePipeline(parserCount);
+				}
+			}
+			if (options.offHeapBytes() > 0) {
+				usageData.enableOffHeapCounters(options.offHeapBytes(), options.spillDirectory());
+			}
+			usageData.setSortMemory(options.sortMemoryBytes(), options.spillDirectory());
+			usageData.setTimeBuckets(options.timeBuckets());
+			if (options.approximate()) {
+				usageData.enableApproximateDomains();
+			}
+			if (options.distinctUsers()) {
+				usageData.enableDistinctUsers();
+			}
+			if (options.lineFilter() != null) {
+				usageData.setFilter(options.lineFilter());
+			}
+			if (options.maxErrors() >= 0) {
+				malformedLines = new MalformedLines(options.maxErrors(), options.quarantinePath());
+				usageData.skipMalformedLines(malformedLines);
+			}
+			if (options.domainRank() > 0) {
+				usageData.setDomainRank(options.domainRank());
+			} else if (options.topDomainCount() > 0) {
+				usageData.setTopDomainCount(options.topDomainCount());
+			}
+			if (options.servePort() >= 0) {
+				// Started once the log is known to be readable, the reports are then published to the server
+				server = new UsageServer(options.servePort());
+				reportSink = server.reportSink();
+				server.start();
+				System.out.println("Serving the reports on http://localhost:" + server.port() + "/");
+			}
+			if (reportSink != null) {
+				usageData.setReportSink(reportSink);
+			}
+			AnalyzerMetrics metrics = null;
+			if (options.progressIntervalMillis() > 0 || options.jmx()) {
+				metrics = new AnalyzerMetrics();
+				usageData.setMetrics(metrics);
+				if (options.progressIntervalMillis() > 0) {
+					// Progress goes to System.err, so it doesn't mix with a report on System.out
+					metrics.startProgress(options.progressIntervalMillis(), System.err);
+				}
+				if (options.jmx()) {
+					metrics.registerMBean();
+				}
+			}
 			
+			if (options.followIntervalMillis() > 0) {
+				// Runs until the process is stopped
+				usageData.followAllData(options.followIntervalMillis());
+				return;
+			}
+			
+			if (options.partialPath() != null) {
+				if (usageData.writePartialResult(options.partialPath())) {
+					System.out.println("Partial result written to " + options.partialPath());
+				}
+			} else {
+				usageData.displayAllData();
+			}
+			if (metrics != null) {
+				metrics.stop();
+			}
+			if (malformedLines != null) {
+				malformedLines.flush();
+				System.out.println("Skipped " + malformedLines.skipped() + " malformed lines" 
+						+ (options.quarantinePath() != null ? ", written to " + options.quarantinePath() : "") + ".");
+			}
+			
+			// The time spent writing the report is shown on its own
 			Long endTime = System.currentTimeMillis();
-			Long processingTime = endTime - startTime;	
+			Long processingTime = endTime - startTime - usageData.reportMillis();
 			
 			displayElapsedTime(processingTime);
+			System.out.println("Report written in " + usageData.reportMillis() + " ms.");
+			if (usageData.pipelineStatistics() != null) {
+				System.out.println(usageData.pipelineStatistics());
+			}
+			if (server != null) {
+				// The server keeps answering queries from the report until the process is stopped
+				return;
+			}
 			
 		} catch (FileNotFoundException e) {
-			System.out.println("You entered the following invalid path: " + args[0]);
+			System.out.println("You entered the following invalid path: " + pathText);
 			displayUsage();
 		} catch( Exception e)
 		{
 			e.printStackTrace(System.out);
+		} finally {
+			// Also when the run fails, so the report file and the lines quarantined until then are written out
+			if (options.outputPath() != null) {
+				closeQuietly(reportSink);
+			}
+			if (malformedLines != null) {
+				closeQuietly(malformedLines);
+			}
+		}
+		if (server != null) {
+			server.close();
 		}
     	
     }
 	
+	/**
+	 * @return the sink for the --output and --format options, or null to print the report as text on System.out
+	 */
+	private static ReportSink createReportSink(AnalyzerOptions options) throws IOException {
+		if (options.outputPath() == null && options.format() == AnalyzerOptions.Format.TEXT) {
+			return null;
+		}
+		OutputStream output = options.outputPath() != null ? new FileOutputStream(options.outputPath()) : System.out;
+		if (options.format() == AnalyzerOptions.Format.BINARY) {
+			return new BinaryReportSink(output);
+		}
+		return new TextReportSink(output, options.format() == AnalyzerOptions.Format.CSV);
+	}
+	
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			e.printStackTrace(System.out);
+		}
+	}
+	
 	private static void displayElapsedTime(Long elapsedTime) {
 		long hours = TimeUnit.MILLISECONDS.toHours(elapsedTime);
 		
@@ -53,6 +251,7 @@ public class LogAnalyzer {
 	}
 	
 	private static void displayUsage() {
-		System.out.println("Usage: LogAnayzer \"<log path>\"");
+		System.out.println("Usage: LogAnayzer [--threads=<count> [--shared-counters] | --stream-domains] [--domain-rank=<n> | --top-domains=<k>] [--approximate | --distinct-users] [--follow[=<seconds>]] [--checkpoint=<file> [--checkpoint-interval=<seconds>]] [--build-index[=<file>] | --index[=<file>]] [--pipeline[=<parser threads>]] [--progress[=<seconds>]] [--jmx] [--from=<yyyy/MM/dd[ HH:mm:ss]>] [--to=<yyyy/MM/dd[ HH:mm:ss]>] [--sorted] [--ip=<prefix | address/bits>] [--action=<action>] [--domain=<domain suffix>] [--buckets=<size>[,<size>...]] [--max-errors=<n> [--quarantine=<file>]] [--off-heap[=<MB>]] [--sort-memory=<MB>] [--spill-dir=<directory>] [--partial=<file> | --serve[=<port>]] [--output=<file>] [--format=text|csv|binary] \"<log path | directory | pattern>\"");
+		System.out.println("       LogAnayzer --merge [--approximate | --distinct-users] [--buckets=<size>[,<size>...]] [--off-heap[=<MB>]] [--sort-memory=<MB>] [--spill-dir=<directory>] [--domain-rank=<n> | --top-domains=<k>] [--serve[=<port>]] [--output=<file>] [--format=text|csv|binary] \"<partial result path | pattern>\"...");
 	}
 }
@@ -1,66 +1,303 @@
 package loganalyzer;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
-import java.text.ParsePosition;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
 
 /**
  * Represents a single line from a log data file.
+ * 
+ * Lines are parsed by hand in a single pass over the raw bytes: column boundaries are recorded as offsets, and 
+ * the timestamp is decoded straight into primitive epoch values. Strings are only created when asked for. 
+ * An instance can be reused for the next line by calling parse() again.
+ * 
+ * tryParse() reports a malformed line by its return value instead of an exception, so that skipping bad lines 
+ * doesn't cost a stack trace each.
  */
 public final class LogDataEntry implements LogData{
 	
-	//assume this date format is supported. Assume 24-hour format (HH is 0-23)
-	private SimpleDateFormat dateTimeFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss"); 
-	private SimpleDateFormat dateOnlyFormat = new SimpleDateFormat("yyyy/MM/dd");
+	private static final String COLUMN_COUNT_ERROR = "Incorrect log format. Entry must contain 4 columns.";
+	
+	//assume the date format "yyyy/MM/dd HH:mm:ss" is used. Assume 24-hour format (HH is 0-23)
+	private long epochSecond;
+	private long epochHour;
+	private long epochDay;
+	
+	// Column boundaries in the parsed buffer, already trimmed of whitespace
+	private ByteBuffer source;
+	private int ipStart;
+	private int ipEnd;
+	private int actionStart;
+	private int actionEnd;
+	private int domainStart;
+	private int domainEnd;
 	
-	private Date dateTime;
 	private String userIp;
 	private String action;
 	private String domain;
 	
+	// Read position of the timestamp parser
+	private int cursor;
+	
+	// Where the last tryParse() failed: the offset in the date column, or COLUMN_COUNT_FAILURE, and the column end
+	private static final int COLUMN_COUNT_FAILURE = -1;
+	private int failurePosition;
+	private int failureDateEnd;
+	
 	public LogDataEntry(String logLine) throws  ParseException {
-		tokenizeLogEntry(logLine);
+		parse(LineSlice.wrap(logLine.getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	/**
+	 * Creates an empty entry that is filled in by parse().
+	 */
+	LogDataEntry() {
 	}
 	
 	/**
-	 * Internal helper method for tokenizing a log entry (i.e. a single line from a log file).
+	 * Tokenizes a log entry (i.e. a single line from a log file) and replaces the content of this entry.
+	 * The line's buffer is referenced, not copied, so it must not change while this entry is in use.
+	 * 
+	 * Validation is the same as splitting the line at commas: trailing empty columns are ignored and exactly 
+	 * 4 columns must remain. 
 	 * @param logLine Will be of the format [Timestamp] [IP] [GET/POST action] [domain]
 	 * @throws ParseException is thrown if date and time format is not the expected "yyyy/MM/dd HH:mm:ss"
+	 * @throws IllegalArgumentException is thrown if the line doesn't contain 4 columns
+	 */
+	void parse(LineSlice logLine) throws ParseException {
+		if (!tryParse(logLine)) {
+			throwParseError(logLine);
+		}
+	}
+	
+	/**
+	 * Same as parse(), but returns false for a malformed line instead of throwing. The entry then keeps 
+	 * its previous content.
 	 */
-	private void tokenizeLogEntry(String logLine) throws ParseException {
-		String [] logData = logLine.split(",");
-		if (logData.length != 4) {
-			throw new IllegalArgumentException("Incorrect log format. Entry must contain 4 columns.");
-		} else {
-			dateTime = parseDateToExpectedFormat(logData[0], dateTimeFormat);
-			userIp = logData[1].trim();
-			action = logData[2].trim();
-			domain = logData[3].trim();
+	boolean tryParse(LineSlice logLine) {
+		ByteBuffer buffer = logLine.buffer();
+		int start = logLine.offset();
+		int end = start + logLine.length();
+		
+		// Record where the first 4 columns end while counting the columns
+		int column = 0;
+		int columnStart = start;
+		int lastNonEmptyColumn = -1;
+		int dateEnd = end;
+		int ipColumnStart = end, ipColumnEnd = end;
+		int actionColumnStart = end, actionColumnEnd = end;
+		int domainColumnStart = end, domainColumnEnd = end;
+		
+		for (int i = start; i <= end; i++) {
+			if (i < end && buffer.get(i) != ',') {
+				continue;
+			}
+			if (i > columnStart) {
+				lastNonEmptyColumn = column;
+			}
+			switch (column) {
+				case 0:
+					dateEnd = i;
+					break;
+				case 1:
+					ipColumnStart = columnStart;
+					ipColumnEnd = i;
+					break;
+				case 2:
+					actionColumnStart = columnStart;
+					actionColumnEnd = i;
+					break;
+				case 3:
+					domainColumnStart = columnStart;
+					domainColumnEnd = i;
+					break;
+				default:
+					break;
+			}
+			column++;
+			columnStart = i + 1;
+		}
+		
+		if (lastNonEmptyColumn != 3) {
+			failurePosition = COLUMN_COUNT_FAILURE;
+			return false;
 		}
+		if (!parseDateTime(buffer, start, dateEnd)) {
+			failureDateEnd = dateEnd;
+			return false;
+		}
+		
+		epochHour = LogTime.epochHour(epochSecond);
+		epochDay = LogTime.epochDayOfSecond(epochSecond);
+		
+		source = buffer;
+		ipStart = trimStart(buffer, ipColumnStart, ipColumnEnd);
+		ipEnd = trimEnd(buffer, ipStart, ipColumnEnd);
+		actionStart = trimStart(buffer, actionColumnStart, actionColumnEnd);
+		actionEnd = trimEnd(buffer, actionStart, actionColumnEnd);
+		domainStart = trimStart(buffer, domainColumnStart, domainColumnEnd);
+		domainEnd = trimEnd(buffer, domainStart, domainColumnEnd);
+		
+		userIp = null;
+		action = null;
+		domain = null;
+		return true;
 	}
 	
 	/**
-	 * Parser will not automatically throw exception if invalid format detected. Instead, it will
-	 * merely stop parsing before the end of the string. 
+	 * Throws the error of a line that tryParse() has just rejected.
 	 * 
-	 * This helper method checks to see if parsing was successful by making sure the parser index
-	 * reaches the end of the string to parse.
+	 * @throws ParseException if the date and time are not in the expected format
+	 * @throws IllegalArgumentException if the line doesn't contain 4 columns
+	 */
+	void throwParseError(LineSlice logLine) throws ParseException {
+		if (failurePosition == COLUMN_COUNT_FAILURE) {
+			throw new IllegalArgumentException(COLUMN_COUNT_ERROR);
+		}
+		throw new ParseException(dateColumn(logLine.buffer(), logLine.offset(), failureDateEnd), failurePosition);
+	}
+	
+	/**
+	 * Decodes "yyyy/MM/dd HH:mm:ss" the way a non-lenient SimpleDateFormat does: fields may have any number 
+	 * of digits and leading blanks, must be in range, and the whole column must be used.
+	 * Sets epochSecond to the seconds since 1970/01/01 00:00:00.
+	 * @return false if the column is invalid, with the failure position set
+	 */
+	private boolean parseDateTime(ByteBuffer buffer, int start, int end) {
+		cursor = start;
+		long year = parseNumber(buffer, start, end, '/');
+		long month = parseNumber(buffer, start, end, '/');
+		long day = parseNumber(buffer, start, end, ' ');
+		long hour = parseNumber(buffer, start, end, ':');
+		long minute = parseNumber(buffer, start, end, ':');
+		long second = parseNumber(buffer, start, end, -1);
+		if (second < 0) {
+			// A field before the second failed and stopped the parsing
+			return false;
+		}
+		
+		if (cursor < end || year < 1 || month < 1 || month > 12 || day < 1 
+				|| day > LogTime.lengthOfMonth(year, (int) month) || hour > 23 || minute > 59 || second > 59) {
+			failurePosition = cursor - start;
+			return false;
+		}
+		
+		epochSecond = LogTime.epochDay(year, (int) month, (int) day) * LogTime.SECONDS_PER_DAY 
+				+ hour * LogTime.SECONDS_PER_HOUR + minute * 60 + second;
+		return true;
+	}
+	
+	/**
+	 * Parses the digits at the cursor, skipping leading blanks, followed by the given separator (-1 for none).
+	 * The cursor is moved past the separator.
+	 * @return the number, or -1 if there is none (then also for every later call of the same date)
 	 */
-	private Date parseDateToExpectedFormat(String dateToBeFormatted, SimpleDateFormat expectedFormat) throws ParseException {
-		ParsePosition p = new ParsePosition(0);
-		expectedFormat.setLenient(false);
-		dateTime = expectedFormat.parse(dateToBeFormatted, p);
+	private long parseNumber(ByteBuffer buffer, int start, int end, int separator) {
+		if (cursor < 0) {
+			return -1;
+		}
+		int i = cursor;
+		while (i < end && (buffer.get(i) == ' ' || buffer.get(i) == '\t')) {
+			i++;
+		}
 		
-		// Check to make sure parsed properly since parsing may not use the whole parsed string.
-		// Force a ParseException to be thrown in this case.
-		if (p.getIndex() < dateToBeFormatted.length()) {
-			throw new ParseException(dateToBeFormatted, p.getIndex());
+		int digitsStart = i;
+		long value = 0;
+		while (i < end && buffer.get(i) >= '0' && buffer.get(i) <= '9' && i - digitsStart < 10) {
+			value = value * 10 + (buffer.get(i) - '0');
+			i++;
 		}
 		
-		return dateTime;
+		if (i == digitsStart || (separator >= 0 && (i >= end || buffer.get(i) != separator))) {
+			failurePosition = i - start;
+			cursor = -1;
+			return -1;
+		}
+		cursor = separator >= 0 ? i + 1 : i;
+		return value;
+	}
+	
+	private static String dateColumn(ByteBuffer buffer, int start, int end) {
+		return decode(buffer, start, end);
+	}
+	
+	/**
+	 * Same as String.trim(): skips control characters and spaces.
+	 */
+	private static int trimStart(ByteBuffer buffer, int start, int end) {
+		while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+			start++;
+		}
+		return start;
+	}
+	
+	private static int trimEnd(ByteBuffer buffer, int start, int end) {
+		while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+			end--;
+		}
+		return end;
+	}
+	
+	private static String decode(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = start; i < end; i++) {
+			bytes[i - start] = buffer.get(i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	ByteBuffer source() {
+		return source;
+	}
+	
+	int ipStart() {
+		return ipStart;
+	}
+	
+	int ipEnd() {
+		return ipEnd;
+	}
+	
+	int actionStart() {
+		return actionStart;
+	}
+	
+	int actionEnd() {
+		return actionEnd;
+	}
+	
+	int domainStart() {
+		return domainStart;
+	}
+	
+	int domainEnd() {
+		return domainEnd;
+	}
+	
+	long epochSecond() {
+		return epochSecond;
+	}
+	
+	long epochHour() {
+		return epochHour;
+	}
+	
+	long epochDay() {
+		return epochDay;
+	}
+	
+	public String userIp() {
+		if (userIp == null) {
+			userIp = decode(source, ipStart, ipEnd);
+		}
+		return userIp;
+	}
+	
+	public String action() {
+		if (action == null) {
+			action = decode(source, actionStart, actionEnd);
+		}
+		return action;
 	}
 	
 	@Override
@@ -71,16 +308,16 @@ public final class LogDataEntry implements LogData{
 	 * group items in hourly buckets.
 	 */
 	public String userData() {
-		Calendar calendar = GregorianCalendar.getInstance();
-		calendar.setTime(dateTime);
-		calendar.set(Calendar.MINUTE, 0);
-		calendar.set(Calendar.SECOND, 0);
-		String newTimeStamp = dateTimeFormat.format(calendar.getTime()).trim();
-		
-		return userIp + " " + newTimeStamp + " " + action;
+		StringBuilder builder = new StringBuilder(48);
+		builder.append(userIp()).append(' ');
+		LogTime.appendDateTime(builder, epochHour * LogTime.SECONDS_PER_HOUR);
+		return builder.append(' ').append(action()).toString();
 	}
 
 	public String domain() {
+		if (domain == null) {
+			domain = decode(source, domainStart, domainEnd);
+		}
 		return domain;
 	}
 	
@@ -89,8 +326,9 @@ public final class LogDataEntry implements LogData{
 	 * Helper method that simply returns a string with [Date] [Domain]. 
 	 */
 	public String domainData() {
-		String dateOnly = entryDate();
-		return dateOnly + " " + domain;
+		StringBuilder builder = new StringBuilder(32);
+		LogTime.appendDate(builder, epochDay);
+		return builder.append(' ').append(domain()).toString();
 	}
 	
 	@Override
@@ -98,11 +336,7 @@ public final class LogDataEntry implements LogData{
 	 * Helper method that simply returns the date portion of the Timestamp from log file entry.
 	 */
 	public String entryDate() {
-		Calendar calendar = GregorianCalendar.getInstance();
-		calendar.setTime(dateTime);
-		String dateOnly = dateOnlyFormat.format(calendar.getTime()).trim();
-		
-		return dateOnly;
+		return LogTime.formatDate(epochDay);
 	}
 
 }
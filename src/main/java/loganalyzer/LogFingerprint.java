@@ -0,0 +1,41 @@
+package loganalyzer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fingerprint of the first bytes of a log, used to check that a checkpoint or index still belongs to the log: 
+ * a hash of the first 64KB and of the 4KB before the end of the fingerprinted range. A log that only had 
+ * lines appended keeps the fingerprint of its old length.
+ */
+final class LogFingerprint {
+	private static final int HEAD_BYTES = 64 * 1024;
+	private static final int TAIL_BYTES = 4 * 1024;
+	
+	private LogFingerprint() {
+	}
+	
+	/**
+	 * @param length number of bytes at the start of the log to fingerprint
+	 */
+	static long of(Path logPath, long length) throws IOException {
+		try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+			long head = hashRange(channel, 0, Math.min(HEAD_BYTES, length));
+			long tail = hashRange(channel, Math.max(0, length - TAIL_BYTES), length);
+			return Hashing.mix64(head * 31 + tail);
+		}
+	}
+	
+	private static long hashRange(FileChannel channel, long start, long end) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, start + buffer.position()) < 0) {
+				break;
+			}
+		}
+		return Hashing.hash64(buffer, 0, buffer.position());
+	}
+}
@@ -0,0 +1,196 @@
+package loganalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Columnar index of the parsed entries of a log, written by LogIndexWriter, so that reports can be created 
+ * again without reading and parsing the log text. Entries are stored in log order as columns:
+ * 
+ * <pre>
+ * header:   int MAGIC, int VERSION, long log size, long log fingerprint, long row count,
+ *           long offsets of the seconds, IP, action and domain columns and of the day runs
+ * columns:  long epochSecond[rows], int ipId[rows], int actionId[rows], int domainId[rows]
+ * runs:     int count, then {long epochDay, long firstRow, long rowCount} per block of consecutive rows of one day
+ * dictionaries: int count followed by UTF texts, for IPs, actions and domains
+ * </pre>
+ * 
+ * The columns are scanned through memory mapped windows. An index is only opened if the log still has the 
+ * size and LogFingerprint it was built from.
+ */
+final class LogIndex implements Closeable {
+	static final int MAGIC = 0x4C414958;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 2 * Integer.BYTES + 8 * Long.BYTES;
+	// Rows per mapped window, which keeps each window of the long column at 512MB
+	private static final int WINDOW_ROWS = 1 << 26;
+	
+	private final FileChannel channel;
+	private final long rowCount;
+	private final long secondsOffset;
+	private final long ipsOffset;
+	private final long actionsOffset;
+	private final long domainsOffset;
+	private final long[] runDays;
+	private final long[] runFirstRows;
+	private final long[] runRowCounts;
+	private final List<String> ips;
+	private final List<String> actions;
+	private final List<String> domains;
+	
+	/**
+	 * Receives the IP and action ids and the time of each entry, in log order.
+	 */
+	interface UserRowVisitor {
+		void visit(int ipId, long epochSecond, int actionId);
+	}
+	
+	/**
+	 * Receives domain counts of a day. Days whose entries are not contiguous in the log are reported in several parts.
+	 */
+	interface DomainCountVisitor {
+		void visit(long epochDay, String domain, int count);
+	}
+	
+	/**
+	 * @throws IOException if the file is not an index or the log has changed since the index was built
+	 */
+	LogIndex(String indexPath, String logPath) throws IOException {
+		channel = FileChannel.open(Paths.get(indexPath), StandardOpenOption.READ);
+		try {
+			DataInputStream header = openStream(0);
+			if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+				throw new IOException(indexPath + " is not a log index.");
+			}
+			long logSize = header.readLong();
+			long fingerprint = header.readLong();
+			Path log = Paths.get(logPath);
+			if (Files.size(log) != logSize || LogFingerprint.of(log, logSize) != fingerprint) {
+				throw new IOException("Index " + indexPath + " doesn't match " + logPath + ", it has to be built again.");
+			}
+			rowCount = header.readLong();
+			secondsOffset = header.readLong();
+			ipsOffset = header.readLong();
+			actionsOffset = header.readLong();
+			domainsOffset = header.readLong();
+			
+			DataInputStream tail = openStream(header.readLong());
+			int runCount = tail.readInt();
+			runDays = new long[runCount];
+			runFirstRows = new long[runCount];
+			runRowCounts = new long[runCount];
+			for (int run = 0; run < runCount; run++) {
+				runDays[run] = tail.readLong();
+				runFirstRows[run] = tail.readLong();
+				runRowCounts[run] = tail.readLong();
+			}
+			ips = readDictionary(tail);
+			actions = readDictionary(tail);
+			domains = readDictionary(tail);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	long rowCount() {
+		return rowCount;
+	}
+	
+	List<String> ips() {
+		return ips;
+	}
+	
+	List<String> actions() {
+		return actions;
+	}
+	
+	/**
+	 * Scans the seconds, IP and action columns.
+	 */
+	void forEachUserRow(UserRowVisitor visitor) throws IOException {
+		for (long first = 0; first < rowCount; first += WINDOW_ROWS) {
+			int rows = (int) Math.min(WINDOW_ROWS, rowCount - first);
+			LongBuffer seconds = mapLongs(secondsOffset, first, rows);
+			IntBuffer ipIds = mapInts(ipsOffset, first, rows);
+			IntBuffer actionIds = mapInts(actionsOffset, first, rows);
+			for (int row = 0; row < rows; row++) {
+				visitor.visit(ipIds.get(row), seconds.get(row), actionIds.get(row));
+			}
+		}
+	}
+	
+	/**
+	 * Scans the domain column one day run at a time, counting the domains of a run in an array indexed by 
+	 * domain id. The day of a run is known from the run, so the seconds column isn't read.
+	 */
+	void forEachDomainCount(DomainCountVisitor visitor) throws IOException {
+		int[] counts = new int[domains.size()];
+		int[] seen = new int[domains.size()];
+		for (int run = 0; run < runDays.length; run++) {
+			// Ids seen in this run, so only those counters are reported and reset
+			int seenCount = 0;
+			long end = runFirstRows[run] + runRowCounts[run];
+			for (long first = runFirstRows[run]; first < end; first += WINDOW_ROWS) {
+				int rows = (int) Math.min(WINDOW_ROWS, end - first);
+				IntBuffer domainIds = mapInts(domainsOffset, first, rows);
+				for (int row = 0; row < rows; row++) {
+					int id = domainIds.get(row);
+					if (counts[id]++ == 0) {
+						seen[seenCount++] = id;
+					}
+				}
+			}
+			
+			for (int i = 0; i < seenCount; i++) {
+				visitor.visit(runDays[run], domains.get(seen[i]), counts[seen[i]]);
+				counts[seen[i]] = 0;
+			}
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	private LongBuffer mapLongs(long columnOffset, long firstRow, int rows) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, columnOffset + firstRow * Long.BYTES,
+				(long) rows * Long.BYTES).asLongBuffer();
+	}
+	
+	private IntBuffer mapInts(long columnOffset, long firstRow, int rows) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, columnOffset + firstRow * Integer.BYTES,
+				(long) rows * Integer.BYTES).asIntBuffer();
+	}
+	
+	/**
+	 * The stream reads from the channel's position, and isn't closed so that the channel stays open.
+	 */
+	private DataInputStream openStream(long offset) throws IOException {
+		channel.position(offset);
+		return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+	}
+	
+	private static List<String> readDictionary(DataInputStream input) throws IOException {
+		int size = input.readInt();
+		List<String> texts = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			texts.add(input.readUTF());
+		}
+		return Collections.unmodifiableList(texts);
+	}
+}
@@ -0,0 +1,160 @@
+package loganalyzer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the LogIndex of a log: parses every entry once and writes the entries as columns. The columns are 
+ * first written to temporary files next to the index, so memory use only depends on the dictionaries.
+ * 
+ * Like a report, the index covers the log up to its first empty line.
+ */
+final class LogIndexWriter {
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	private static final int MAX_DICTIONARY_SIZE = 1 << 28;
+	
+	private final Path logPath;
+	private final Path indexPath;
+	
+	private final ByteDictionary ips = new ByteDictionary(MAX_DICTIONARY_SIZE);
+	private final ByteDictionary actions = new ByteDictionary(MAX_DICTIONARY_SIZE);
+	private final ByteDictionary domains = new ByteDictionary(MAX_DICTIONARY_SIZE);
+	private final List<long[]> dayRuns = new ArrayList<long[]>();
+	private long rowCount;
+	
+	private LogIndexWriter(String logPath, String indexPath) {
+		this.logPath = Paths.get(logPath);
+		this.indexPath = Paths.get(indexPath);
+	}
+	
+	/**
+	 * @return the number of indexed entries
+	 */
+	static long write(String logPath, String indexPath) throws IOException, ParseException {
+		return new LogIndexWriter(logPath, indexPath).write();
+	}
+	
+	private long write() throws IOException, ParseException {
+		Path secondsPath = temporaryPath("seconds");
+		Path ipsPath = temporaryPath("ips");
+		Path actionsPath = temporaryPath("actions");
+		Path domainsPath = temporaryPath("domains");
+		Path temporaryIndexPath = temporaryPath("index");
+		
+		try {
+			long logSize;
+			try (MappedLogFile logFile = new MappedLogFile(logPath.toString());
+					DataOutputStream seconds = openColumn(secondsPath);
+					DataOutputStream ipColumn = openColumn(ipsPath);
+					DataOutputStream actionColumn = openColumn(actionsPath);
+					DataOutputStream domainColumn = openColumn(domainsPath)) {
+				logSize = Files.size(logPath);
+				readColumns(logFile, seconds, ipColumn, actionColumn, domainColumn);
+			}
+			
+			try (DataOutputStream output = openColumn(temporaryIndexPath)) {
+				writeHeader(output, logSize);
+				appendFile(output, secondsPath);
+				appendFile(output, ipsPath);
+				appendFile(output, actionsPath);
+				appendFile(output, domainsPath);
+				
+				output.writeInt(dayRuns.size());
+				for (long[] run : dayRuns) {
+					output.writeLong(run[0]);
+					output.writeLong(run[1]);
+					output.writeLong(run[2]);
+				}
+				writeDictionary(output, ips);
+				writeDictionary(output, actions);
+				writeDictionary(output, domains);
+			}
+			Files.move(temporaryIndexPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(secondsPath);
+			Files.deleteIfExists(ipsPath);
+			Files.deleteIfExists(actionsPath);
+			Files.deleteIfExists(domainsPath);
+			Files.deleteIfExists(temporaryIndexPath);
+		}
+		return rowCount;
+	}
+	
+	private void readColumns(MappedLogFile logFile, DataOutputStream seconds, DataOutputStream ipColumn,
+			DataOutputStream actionColumn, DataOutputStream domainColumn) throws IOException, ParseException {
+		LineSlice currentLine = new LineSlice();
+		LogDataEntry logEntry = new LogDataEntry();
+		boolean hasLine = logFile.nextLine(currentLine);
+		
+		if (!hasLine || currentLine.isEmpty()) {
+			throw new IllegalArgumentException("Incorrect log format. Entry must contain 4 columns.");
+		}
+		
+		long[] run = null;
+		while (hasLine && !currentLine.isEmpty()) {
+			logEntry.parse(currentLine);
+			seconds.writeLong(logEntry.epochSecond());
+			ByteBuffer source = logEntry.source();
+			ipColumn.writeInt(ips.id(source, logEntry.ipStart(), logEntry.ipEnd()));
+			actionColumn.writeInt(actions.id(source, logEntry.actionStart(), logEntry.actionEnd()));
+			domainColumn.writeInt(domains.id(source, logEntry.domainStart(), logEntry.domainEnd()));
+			
+			// A run is a block of consecutive entries of the same day: {epochDay, first row, row count}
+			if (run == null || run[0] != logEntry.epochDay()) {
+				run = new long[] {logEntry.epochDay(), rowCount, 0};
+				dayRuns.add(run);
+			}
+			run[2]++;
+			rowCount++;
+			
+			hasLine = logFile.nextLine(currentLine);
+		}
+	}
+	
+	private void writeHeader(DataOutputStream output, long logSize) throws IOException {
+		long secondsOffset = LogIndex.HEADER_SIZE;
+		long ipsOffset = secondsOffset + rowCount * Long.BYTES;
+		long actionsOffset = ipsOffset + rowCount * Integer.BYTES;
+		long domainsOffset = actionsOffset + rowCount * Integer.BYTES;
+		long runsOffset = domainsOffset + rowCount * Integer.BYTES;
+		
+		output.writeInt(LogIndex.MAGIC);
+		output.writeInt(LogIndex.VERSION);
+		output.writeLong(logSize);
+		output.writeLong(LogFingerprint.of(logPath, logSize));
+		output.writeLong(rowCount);
+		output.writeLong(secondsOffset);
+		output.writeLong(ipsOffset);
+		output.writeLong(actionsOffset);
+		output.writeLong(domainsOffset);
+		output.writeLong(runsOffset);
+	}
+	
+	private static void writeDictionary(DataOutputStream output, ByteDictionary dictionary) throws IOException {
+		output.writeInt(dictionary.size());
+		for (int id = 0; id < dictionary.size(); id++) {
+			output.writeUTF(dictionary.text(id));
+		}
+	}
+	
+	private Path temporaryPath(String column) {
+		return indexPath.resolveSibling(indexPath.getFileName() + "." + column + ".tmp");
+	}
+	
+	private static DataOutputStream openColumn(Path path) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+	}
+	
+	private static void appendFile(DataOutputStream output, Path path) throws IOException {
+		Files.copy(path, output);
+	}
+}
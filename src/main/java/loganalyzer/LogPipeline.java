@@ -0,0 +1,507 @@
+package loganalyzer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads a log in three pipelined stages, so that reading (and decompressing) the file, parsing lines and 
+ * counting entries run at the same time:
+ * 
+ * <pre>
+ * reader thread --raw queue--&gt; parser threads --parsed queue--&gt; aggregator (calling thread)
+ * </pre>
+ * 
+ * The reader copies lines into batches, the parsers parse every line of a batch into a LogDataEntry, and the 
+ * aggregator counts the entries. A fixed number of batches is allocated up front and recycled through a free 
+ * queue, so a stage that falls behind blocks the stages before it instead of letting batches pile up.
+ * 
+ * Batches are counted in file order, so the counts are the same as reading the log on a single thread, 
+ * streaming and approximate domain counts included. PipelineStatistics tell which stage is the bottleneck.
+ * 
+ * With a LineFilter, the reader drops the lines the filter rejects, so they are neither copied nor parsed.
+ * In skip mode (see MalformedLines), the reader drops blank lines, and the parsers leave malformed lines out 
+ * of the entries of their batch. The aggregator counts them against the error budget, so they are skipped and 
+ * quarantined in file order whatever parser got to them first.
+ */
+final class LogPipeline {
+	private static final int BATCH_LINES = 4096;
+	private static final int BATCH_BYTES = 512 * 1024;
+	private static final int QUEUE_BATCHES_PER_PARSER = 2;
+	
+	private final int parserCount;
+	private final PipelineStatistics statistics;
+	// Metrics and error budget of the owner, or null
+	private AnalyzerMetrics metrics;
+	private MalformedLines malformedLines;
+	
+	/**
+	 * A block of consecutive lines, copied from the log, and their parsed entries once a parser is done.
+	 */
+	private static final class Batch {
+		private long sequence;
+		private byte[] bytes;
+		private ByteBuffer buffer;
+		private int byteCount;
+		private final int[] lineStarts;
+		private final int[] lineLengths;
+		private final long[] lineOffsets;
+		private int lineCount;
+		// The parsed lines, fewer than the lines if malformed lines were skipped
+		private final LogDataEntry[] entries;
+		private int entryCount;
+		// Lines that failed to parse in skip mode, each with the number of entries before it
+		private final int[] malformedIndexes;
+		private final int[] entriesBeforeMalformed;
+		private int malformedCount;
+		// Set if the reader or a parser failed after the lines of this batch
+		private Exception failure;
+		
+		private Batch(int maxLines, int byteSize) {
+			bytes = new byte[byteSize];
+			buffer = ByteBuffer.wrap(bytes);
+			lineStarts = new int[maxLines];
+			lineLengths = new int[maxLines];
+			lineOffsets = new long[maxLines];
+			entries = new LogDataEntry[maxLines];
+			malformedIndexes = new int[maxLines];
+			entriesBeforeMalformed = new int[maxLines];
+			for (int i = 0; i < maxLines; i++) {
+				entries[i] = new LogDataEntry();
+			}
+		}
+		
+		private void clear(long sequence) {
+			this.sequence = sequence;
+			byteCount = 0;
+			lineCount = 0;
+			entryCount = 0;
+			malformedCount = 0;
+			failure = null;
+		}
+		
+		private boolean fits(int length) {
+			return lineCount < lineStarts.length && byteCount + length <= bytes.length;
+		}
+		
+		private void add(LineSlice line) {
+			int length = line.length();
+			if (byteCount + length > bytes.length) {
+				// Only for a line longer than a whole batch
+				bytes = new byte[length];
+				buffer = ByteBuffer.wrap(bytes);
+			}
+			for (int i = 0; i < length; i++) {
+				bytes[byteCount + i] = line.byteAt(i);
+			}
+			lineStarts[lineCount] = byteCount;
+			lineLengths[lineCount] = length;
+			lineOffsets[lineCount] = line.fileOffset();
+			lineCount++;
+			byteCount += length;
+		}
+	}
+	
+	// Marks the end of the batches on the queues. Each parser passes it on once.
+	private static final Batch END = new Batch(0, 0);
+	
+	LogPipeline(int parserCount) {
+		if (parserCount < 1) {
+			throw new IllegalArgumentException("Parser count must be at least 1.");
+		}
+		this.parserCount = parserCount;
+		this.statistics = new PipelineStatistics(parserCount);
+	}
+	
+	PipelineStatistics statistics() {
+		return statistics;
+	}
+	
+	/**
+	 * Counts the log entries into owner, on the calling thread, until the end of the file or the first empty line 
+	 * (except in skip mode).
+	 * 
+	 * @param firstLineRequired when set, an empty first line (or empty file) is rejected as a malformed entry, 
+	 * except in skip mode
+	 */
+	void readAllEntries(LogUsageData owner, LargeFile logFile, boolean firstLineRequired) throws Exception {
+		metrics = owner.metrics();
+		malformedLines = owner.malformedLines();
+		LineFilter filter = owner.filter();
+		int queueCapacity = parserCount * QUEUE_BATCHES_PER_PARSER;
+		// Enough batches to fill both queues while every parser holds one
+		int batchCount = 2 * queueCapacity + parserCount + 1;
+		BlockingQueue<Batch> freeBatches = new ArrayBlockingQueue<Batch>(batchCount);
+		BlockingQueue<Batch> rawBatches = new ArrayBlockingQueue<Batch>(queueCapacity + parserCount);
+		BlockingQueue<Batch> parsedBatches = new ArrayBlockingQueue<Batch>(queueCapacity + parserCount);
+		for (int i = 0; i < batchCount; i++) {
+			freeBatches.add(new Batch(BATCH_LINES, BATCH_BYTES));
+		}
+		
+		ExecutorService pool = Executors.newFixedThreadPool(parserCount + 1);
+		try {
+			pool.execute(() -> read(logFile, firstLineRequired, filter, freeBatches, rawBatches));
+			for (int i = 0; i < parserCount; i++) {
+				pool.execute(() -> parse(rawBatches, parsedBatches));
+			}
+			aggregate(owner, filter, freeBatches, parsedBatches, batchCount);
+		} finally {
+			// Stops the other stages if the aggregator failed
+			pool.shutdownNow();
+		}
+	}
+	
+	private void read(LargeFile logFile, boolean firstLineRequired, LineFilter filter, 
+			BlockingQueue<Batch> freeBatches, BlockingQueue<Batch> rawBatches) {
+		PipelineStatistics.Stage stage = statistics.reader();
+		LineSlice currentLine = new LineSlice();
+		long sequence = 0;
+		Batch batch = null;
+		// Lines dropped by the filter since the last batch was sent, for the metrics
+		long skippedLines = 0;
+		long skippedBytes = 0;
+		try {
+			boolean hasLine = logFile.nextLine(currentLine);
+			if (firstLineRequired && malformedLines == null && (!hasLine || currentLine.isEmpty())) {
+				throw new IllegalArgumentException("Incorrect log format. Entry must contain 4 columns.");
+			}
+			
+			long busyStart = System.nanoTime();
+			while (hasLine && (malformedLines != null || !currentLine.isEmpty())) {
+				LineFilter.Result filterResult = currentLine.isEmpty() ? LineFilter.Result.SKIP 
+						: filter == null ? LineFilter.Result.MATCH : filter.test(currentLine);
+				if (filterResult == LineFilter.Result.PAST_WINDOW) {
+					break;
+				}
+				if (filterResult == LineFilter.Result.SKIP) {
+					skippedLines++;
+					skippedBytes += currentLine.length() + 1;
+					hasLine = logFile.nextLine(currentLine);
+					continue;
+				}
+				
+				if (batch != null && !batch.fits(currentLine.length())) {
+					stage.addBusy(batch.lineCount, System.nanoTime() - busyStart);
+					addReadMetrics(batch, skippedLines, skippedBytes);
+					skippedLines = 0;
+					skippedBytes = 0;
+					stage.putOutput(rawBatches, batch);
+					busyStart = System.nanoTime();
+					batch = null;
+				}
+				if (batch == null) {
+					batch = stage.takeInput(freeBatches);
+					batch.clear(sequence++);
+				}
+				batch.add(currentLine);
+				hasLine = logFile.nextLine(currentLine);
+			}
+			if (batch == null) {
+				// Every line was filtered out
+				batch = stage.takeInput(freeBatches);
+				batch.clear(sequence++);
+			}
+			stage.addBusy(batch.lineCount, System.nanoTime() - busyStart);
+			addReadMetrics(batch, skippedLines, skippedBytes);
+			stage.putOutput(rawBatches, batch);
+		} catch (InterruptedException e) {
+			return;
+		} catch (Exception e) {
+			if (!sendFailure(freeBatches, rawBatches, batch, sequence, e)) {
+				return;
+			}
+		}
+		
+		for (int i = 0; i < parserCount; i++) {
+			if (!putQuietly(rawBatches, END)) {
+				return;
+			}
+		}
+	}
+	
+	private void parse(BlockingQueue<Batch> rawBatches, BlockingQueue<Batch> parsedBatches) {
+		PipelineStatistics.Stage stage = statistics.parsers();
+		LineSlice line = new LineSlice();
+		try {
+			while (true) {
+				Batch batch = stage.takeInput(rawBatches);
+				if (batch == END) {
+					break;
+				}
+				
+				long busyStart = System.nanoTime();
+				try {
+					for (int i = 0; i < batch.lineCount; i++) {
+						line.set(batch.buffer, batch.lineStarts[i], batch.lineLengths[i], batch.lineOffsets[i]);
+						LogDataEntry entry = batch.entries[batch.entryCount];
+						if (entry.tryParse(line)) {
+							batch.entryCount++;
+							continue;
+						}
+						if (metrics != null) {
+							metrics.addParseFailure();
+						}
+						if (malformedLines == null) {
+							entry.throwParseError(line);
+						}
+						// A skipped line leaves its entry to the next line
+						batch.malformedIndexes[batch.malformedCount] = i;
+						batch.entriesBeforeMalformed[batch.malformedCount] = batch.entryCount;
+						batch.malformedCount++;
+					}
+				} catch (Exception e) {
+					// Only the lines before the failing one are counted, like when reading on a single thread
+					batch.failure = e;
+				}
+				if (metrics != null) {
+					metrics.addLines(0, 0, batch.entryCount);
+				}
+				stage.addBusy(batch.lineCount, System.nanoTime() - busyStart);
+				stage.putOutput(parsedBatches, batch);
+			}
+			parsedBatches.put(END);
+		} catch (InterruptedException e) {
+			// The pipeline is shutting down
+		}
+	}
+	
+	/**
+	 * Counts the parsed batches in sequence order. Batches that arrive early wait in a ring indexed by sequence, 
+	 * which can't overflow since there are only batchCount batches.
+	 */
+	private void aggregate(LogUsageData owner, LineFilter filter, BlockingQueue<Batch> freeBatches, 
+			BlockingQueue<Batch> parsedBatches, int batchCount) throws Exception {
+		PipelineStatistics.Stage stage = statistics.aggregator();
+		LineSlice line = new LineSlice();
+		LogDataEntry malformedEntry = new LogDataEntry();
+		Batch[] waiting = new Batch[batchCount];
+		long nextSequence = 0;
+		int endCount = 0;
+		
+		while (endCount < parserCount) {
+			Batch batch = stage.takeInput(parsedBatches);
+			if (batch == END) {
+				endCount++;
+				continue;
+			}
+			waiting[(int) (batch.sequence % batchCount)] = batch;
+			
+			int slot = (int) (nextSequence % batchCount);
+			while (waiting[slot] != null) {
+				Batch next = waiting[slot];
+				waiting[slot] = null;
+				
+				long busyStart = System.nanoTime();
+				int entryIndex = 0;
+				for (int i = 0; i < next.malformedCount; i++) {
+					// The entries before a malformed line are counted even if it spends the budget
+					entryIndex = countEntries(owner, filter, next, entryIndex, next.entriesBeforeMalformed[i]);
+					int lineIndex = next.malformedIndexes[i];
+					line.set(next.buffer, next.lineStarts[lineIndex], next.lineLengths[lineIndex], next.lineOffsets[lineIndex]);
+					if (!malformedLines.skip(line, null)) {
+						// Parsed again for its error
+						malformedEntry.tryParse(line);
+						malformedEntry.throwParseError(line);
+					}
+				}
+				countEntries(owner, filter, next, entryIndex, next.entryCount);
+				if (next.failure != null) {
+					throw next.failure;
+				}
+				stage.addBusy(next.lineCount, System.nanoTime() - busyStart);
+				owner.recordTableSizes();
+				
+				freeBatches.add(next);
+				nextSequence++;
+				slot = (int) (nextSequence % batchCount);
+			}
+		}
+	}
+	
+	/**
+	 * Counts the entries [firstEntry, endEntry) of a batch into owner.
+	 * 
+	 * @return endEntry
+	 */
+	private static int countEntries(LogUsageData owner, LineFilter filter, Batch batch, int firstEntry, int endEntry) 
+			throws IOException {
+		for (int i = firstEntry; i < endEntry; i++) {
+			if (filter == null || filter.acceptsTime(batch.entries[i])) {
+				owner.updateUserDataTable(batch.entries[i]);
+				owner.updateDomainHashMap(batch.entries[i]);
+			}
+		}
+		return endEntry;
+	}
+	
+	/**
+	 * Lines of a batch, and the lines filtered out before it, are added to the metrics as read. The lines of 
+	 * the batch are added as parsed by the parser stage.
+	 */
+	private void addReadMetrics(Batch batch, long skippedLines, long skippedBytes) {
+		if (metrics != null) {
+			// Each line was followed by a line terminator
+			metrics.addLines(batch.lineCount + skippedLines, batch.byteCount + batch.lineCount + skippedBytes, 0);
+		}
+	}
+	
+	/**
+	 * Passes a failure of the reader on in sequence order, with the batch being filled if there is one, 
+	 * so the lines read before the failure are still counted.
+	 * 
+	 * @return false if the pipeline is shutting down
+	 */
+	private static boolean sendFailure(BlockingQueue<Batch> freeBatches, BlockingQueue<Batch> rawBatches, 
+			Batch batch, long sequence, Exception failure) {
+		try {
+			if (batch == null) {
+				batch = freeBatches.take();
+				batch.clear(sequence);
+			}
+			batch.failure = failure;
+			rawBatches.put(batch);
+			return true;
+		} catch (InterruptedException e) {
+			return false;
+		}
+	}
+	
+	private static boolean putQuietly(BlockingQueue<Batch> queue, Batch batch) {
+		try {
+			queue.put(batch);
+			return true;
+		} catch (InterruptedException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Throughput and waiting times of the stages, and the depth of the queues between them.
+	 * Updated once per batch, and safe to read while the pipeline runs.
+	 */
+	static final class PipelineStatistics {
+		private final Stage reader = new Stage("reader", 1, true);
+		private final Stage parsers;
+		private final Stage aggregator = new Stage("aggregator", 1, false);
+		
+		/**
+		 * Counters of one stage. The input and output wait times are the time spent blocked on an empty input 
+		 * queue and on a full output queue. The depth of the output queue is sampled before each put.
+		 */
+		static final class Stage {
+			private final String name;
+			private final int threadCount;
+			private final boolean hasOutputQueue;
+			private final AtomicLong lines = new AtomicLong();
+			private final AtomicLong batches = new AtomicLong();
+			private final AtomicLong busyNanos = new AtomicLong();
+			private final AtomicLong inputWaitNanos = new AtomicLong();
+			private final AtomicLong outputWaitNanos = new AtomicLong();
+			private final AtomicLong queueDepthSum = new AtomicLong();
+			private final AtomicLong queueDepthMax = new AtomicLong();
+			
+			private Stage(String name, int threadCount, boolean hasOutputQueue) {
+				this.name = name;
+				this.threadCount = threadCount;
+				this.hasOutputQueue = hasOutputQueue;
+			}
+			
+			private void addBusy(int lineCount, long nanos) {
+				lines.addAndGet(lineCount);
+				batches.incrementAndGet();
+				busyNanos.addAndGet(nanos);
+			}
+			
+			private <T> T takeInput(BlockingQueue<T> queue) throws InterruptedException {
+				long start = System.nanoTime();
+				T batch = queue.take();
+				inputWaitNanos.addAndGet(System.nanoTime() - start);
+				return batch;
+			}
+			
+			private <T> void putOutput(BlockingQueue<T> queue, T batch) throws InterruptedException {
+				int depth = queue.size();
+				queueDepthSum.addAndGet(depth);
+				queueDepthMax.accumulateAndGet(depth, Math::max);
+				
+				long start = System.nanoTime();
+				queue.put(batch);
+				outputWaitNanos.addAndGet(System.nanoTime() - start);
+			}
+			
+			long lines() {
+				return lines.get();
+			}
+			
+			/**
+			 * @return lines per second of busy time, per thread of the stage
+			 */
+			long linesPerSecond() {
+				long nanos = busyNanos.get();
+				return nanos == 0 ? 0 : lines.get() * TimeUnit.SECONDS.toNanos(1) / nanos;
+			}
+			
+			long inputWaitMillis() {
+				return TimeUnit.NANOSECONDS.toMillis(inputWaitNanos.get());
+			}
+			
+			long outputWaitMillis() {
+				return TimeUnit.NANOSECONDS.toMillis(outputWaitNanos.get());
+			}
+			
+			/**
+			 * @return the average depth of the output queue before a put, or 0 for the last stage
+			 */
+			double averageQueueDepth() {
+				long count = batches.get();
+				return count == 0 ? 0 : (double) queueDepthSum.get() / count;
+			}
+			
+			long maxQueueDepth() {
+				return queueDepthMax.get();
+			}
+			
+			@Override
+			public String toString() {
+				String text = String.format("%-10s x%d: %d lines, %d lines/s per thread while busy, waited %d ms for input", 
+						name, threadCount, lines(), linesPerSecond(), inputWaitMillis());
+				if (hasOutputQueue) {
+					text += String.format(", %d ms for output, output queue depth %.1f on average, %d at most", 
+							outputWaitMillis(), averageQueueDepth(), maxQueueDepth());
+				}
+				return text;
+			}
+		}
+		
+		private PipelineStatistics(int parserCount) {
+			parsers = new Stage("parser", parserCount, true);
+		}
+		
+		Stage reader() {
+			return reader;
+		}
+		
+		Stage parsers() {
+			return parsers;
+		}
+		
+		Stage aggregator() {
+			return aggregator;
+		}
+		
+		List<Stage> stages() {
+			List<Stage> stages = new ArrayList<Stage>();
+			stages.add(reader);
+			stages.add(parsers);
+			stages.add(aggregator);
+			return stages;
+		}
+	}
+}
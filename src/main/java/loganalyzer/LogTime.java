@@ -0,0 +1,105 @@
+package loganalyzer;
+
+/**
+ * Calendar arithmetic on primitive epoch values, so that log timestamps can be bucketed and formatted 
+ * without Calendar, Date or SimpleDateFormat objects.
+ * 
+ * Log timestamps carry no time zone, so they are treated as local date and time fields counted from 
+ * 1970/01/01 00:00:00 on the proleptic Gregorian calendar. That makes every day exactly 86400 seconds long.
+ */
+final class LogTime {
+	static final int SECONDS_PER_HOUR = 3600;
+	static final int SECONDS_PER_DAY = 86400;
+	
+	private LogTime() {
+	}
+	
+	static boolean isLeapYear(long year) {
+		return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+	}
+	
+	static int lengthOfMonth(long year, int month) {
+		switch (month) {
+			case 2:
+				return isLeapYear(year) ? 29 : 28;
+			case 4:
+			case 6:
+			case 9:
+			case 11:
+				return 30;
+			default:
+				return 31;
+		}
+	}
+	
+	/**
+	 * Number of days between 1970/01/01 and the given date. Month and day are expected to be valid.
+	 */
+	static long epochDay(long year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+	
+	static long epochHour(long epochSecond) {
+		return Math.floorDiv(epochSecond, SECONDS_PER_HOUR);
+	}
+	
+	static long epochDayOfSecond(long epochSecond) {
+		return Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+	}
+	
+	/**
+	 * Appends the date in "yyyy/MM/dd" format.
+	 */
+	static StringBuilder appendDate(StringBuilder builder, long epochDay) {
+		long z = epochDay + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		long dayOfEra = z - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long shiftedMonth = (5 * dayOfYear + 2) / 153;
+		int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+		int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		
+		appendPadded(builder, year, 4).append('/');
+		appendPadded(builder, month, 2).append('/');
+		return appendPadded(builder, day, 2);
+	}
+	
+	/**
+	 * Appends the date and time in "yyyy/MM/dd HH:mm:ss" format.
+	 */
+	static StringBuilder appendDateTime(StringBuilder builder, long epochSecond) {
+		long secondOfDay = Math.floorMod(epochSecond, SECONDS_PER_DAY);
+		appendDate(builder, epochDayOfSecond(epochSecond)).append(' ');
+		appendPadded(builder, secondOfDay / SECONDS_PER_HOUR, 2).append(':');
+		appendPadded(builder, secondOfDay / 60 % 60, 2).append(':');
+		return appendPadded(builder, secondOfDay % 60, 2);
+	}
+	
+	static String formatDate(long epochDay) {
+		return appendDate(new StringBuilder(10), epochDay).toString();
+	}
+	
+	static String formatHour(long epochHour) {
+		return formatDateTime(epochHour * SECONDS_PER_HOUR);
+	}
+	
+	static String formatDateTime(long epochSecond) {
+		return appendDateTime(new StringBuilder(19), epochSecond).toString();
+	}
+	
+	private static StringBuilder appendPadded(StringBuilder builder, long value, int width) {
+		for (long limit = 10, digits = 1; digits < width; limit *= 10, digits++) {
+			if (value < limit) {
+				builder.append('0');
+			}
+		}
+		return builder.append(value);
+	}
+}
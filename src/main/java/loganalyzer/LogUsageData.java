@@ -1,241 +1,1091 @@
 package loganalyzer;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Class that only displays log usage data in desired format, as per requirements.
  */
 public final class LogUsageData implements UsageData{
 	
-	private LargeLogFile logDataFile;
+	private LargeFile logDataFile;
+	private ParallelLogIngester parallelIngester;
+	private MultiFileIngester multiFileIngester;
+	private LogPipeline pipeline;
 	
-	// Hash map used for storing IP usage and later for display purposes
-	private Map<String, Integer> userDataHashMap;
+	// Hash table used for storing IP usage and later for display purposes. Its slots may be kept off the heap.
+	private HourlyIpCounterTable userDataTable;
+	// The time buckets of the user report: the table counts the finest, the coarser ones are rolled up from it
+	private TimeBuckets timeBuckets = TimeBuckets.HOURLY;
 	
-	// Data structures needed for displaying second most popular domain
-	private Map<String, PopularDomain> domainHashMap;
-	private PriorityQueue<PopularDomain> popularDomainsMinHeap;
-	private final int HEAP_LIMIT = 2;
-	private List<PopularDomain> allSecondPopularDomains;
+	// Data structures needed for displaying second most popular domain. Domains are counted by dictionary id.
+	private ByteDictionary domains;
+	private DailyDomainCounterTable domainCounts;
+	private static final int MAX_DOMAINS = 1 << 28;
+	private TopK<PopularDomain> topDomains;
+	private static final int DEFAULT_DOMAIN_RANK = 2;
+	private boolean listTopDomains;
+	private List<PopularDomain> allSelectedDomains;
 	
-	public LogUsageData(LargeLogFile logFile) {
+	// Streaming mode: the domain report of a day is displayed as soon as the next day starts
+	private boolean streamDomainsByDay;
+	private long currentDomainDay;
+	
+	// Approximate mode: sketches replace the exact domain counts
+	private ApproximateDomainCounts approximateDomains;
+	
+	// Distinct user mode: the domains of each day are also ranked by their estimated number of distinct IPs
+	private DistinctUserSketches distinctUsers;
+	private TopK<PopularDomain> topDistinctDomains;
+	private List<PopularDomain> allDistinctDomains;
+	
+	// Shared counter mode: parallel workers count into one SharedUsageCounts instead of their own tables. 
+	// sharedEntries is the number of entries this partial, and the partials merged into it, counted there.
+	private SharedUsageCounts sharedCounts;
+	private SharedUsageCounts.Writer sharedWriter;
+	private long sharedEntries;
+	
+	// Follow mode: set from another thread to end following the log
+	private volatile boolean followStopped;
+	
+	// Index mode: the counts are taken from the columns of a LogIndex instead of the log text
+	private LogIndex logIndex;
+	
+	// Merge mode: the counts are added up from partial results instead of read from logs
+	private List<String> partialPaths;
+	
+	// Report rows are written to the configured sink, or to System.out as text
+	private ReportSink reportSink;
+	private ReportSink activeSink;
+	
+	// Checkpoint mode: the counts are saved periodically so that a restarted run can resume
+	private UsageCheckpoint checkpoint;
+	private int linesSinceCheckpointCheck;
+	private static final int CHECKPOINT_CHECK_LINES = 64 * 1024;
+	
+	// Optional metrics of the run, and the time the last report took to create and write
+	private AnalyzerMetrics metrics;
+	private long reportMillis;
+	
+	// Optional filter of the lines to count, checked before lines are parsed
+	private LineFilter filter;
+	
+	// Skip mode: malformed lines within the error budget are skipped instead of failing the run. 
+	// logPath names the log of a partial in the quarantine file when several logs are read.
+	private MalformedLines malformedLines;
+	private String logPath;
+	
+	// Reports with more entries than fit in the sort memory are sorted externally in sortDirectory. 
+	// The sizes per entry estimate the arrays and texts of sorting in memory.
+	private long sortMemoryBytes = Runtime.getRuntime().maxMemory() / 4;
+	private Path sortDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+	private static final int USER_SORT_BYTES = 64;
+	private static final int DOMAIN_SORT_BYTES = 8;
+	
+	// Day of the domains in the top-K heap while the domain report is created
+	private long heapDay;
+	private static final long NO_DAY = Long.MIN_VALUE;
+	
+	public LogUsageData(LargeFile logFile) {
 		this.logDataFile = logFile;
-		userDataHashMap = new HashMap<String, Integer>();
-		domainHashMap = new HashMap<String, PopularDomain>();
-		// Heap ordering Comparator is set to increasing order the "count" field in the stored objects
-		popularDomainsMinHeap = new PriorityQueue<PopularDomain>((a, b) -> a.count - b.count);
-		allSecondPopularDomains = new ArrayList<PopularDomain>();
+		userDataTable = new HourlyIpCounterTable();
+		domains = new ByteDictionary(MAX_DOMAINS);
+		domainCounts = new DailyDomainCounterTable();
+		// Heap is ordered by increasing "count" of the stored objects
+		topDomains = new TopK<PopularDomain>(DEFAULT_DOMAIN_RANK);
+		allSelectedDomains = new ArrayList<PopularDomain>();
+	}
+	
+	/**
+	 * Parallel mode: the mapped log file is split into chunks that are parsed on threadCount fork-join workers.
+	 * The report is the same as the one produced by reading the file on a single thread.
+	 */
+	public LogUsageData(String filePath, int threadCount) {
+		this((LargeFile) null);
+		this.parallelIngester = new ParallelLogIngester(filePath, threadCount);
+	}
+	
+	/**
+	 * Multi-file mode: the log files (plain or gzip compressed) are read and decompressed concurrently on a pool 
+	 * of threadCount threads, and their counts are combined into one report.
+	 */
+	public LogUsageData(List<String> filePaths, int threadCount) {
+		this((LargeFile) null);
+		this.multiFileIngester = new MultiFileIngester(filePaths, threadCount);
+	}
+	
+	/**
+	 * Used by parallel workers for their partial counts, and for merging partial results.
+	 */
+	LogUsageData() {
+		this((LargeFile) null);
+	}
+	
+	/**
+	 * Streaming mode for logs that are ordered by time. Each day's second most popular domain is displayed as soon 
+	 * as the first entry of the next day is read, and that day's domain counts are dropped. Memory used for domains 
+	 * then depends on the number of domains in one day instead of the whole log.
+	 * 
+	 * If an earlier day appears again later in the log, it is reported again as a separate day.
+	 * Not supported in parallel mode, since the log has to be read in order.
+	 */
+	public void enableDomainStreaming() {
+		if (parallelIngester != null || multiFileIngester != null) {
+			throw new IllegalStateException("Domain streaming requires reading the log in order on a single thread.");
+		}
+		if (checkpoint != null || logIndex != null) {
+			throw new IllegalStateException("Domain streaming can't be used with checkpoints or an index.");
+		}
+		streamDomainsByDay = true;
+	}
+	
+	/**
+	 * Pipeline mode: the log is read on one thread, parsed on parserCount threads and counted on the calling 
+	 * thread, all at the same time. The report is the same as the one produced by reading the log on a single thread.
+	 */
+	public void enablePipeline(int parserCount) {
+		if (logDataFile == null || logDataFile instanceof FollowingLogFile) {
+			throw new IllegalStateException("Pipeline mode requires a single log that is read once.");
+		}
+		if (checkpoint != null || logIndex != null) {
+			throw new IllegalStateException("Pipeline mode can't be used with checkpoints or an index.");
+		}
+		pipeline = new LogPipeline(parserCount);
+	}
+	
+	/**
+	 * @return the counters of the pipeline stages, or null if pipeline mode is not enabled
+	 */
+	public String pipelineStatistics() {
+		if (pipeline == null) {
+			return null;
+		}
+		StringBuilder text = new StringBuilder("Pipeline stages:");
+		for (LogPipeline.PipelineStatistics.Stage stage : pipeline.statistics().stages()) {
+			text.append(System.lineSeparator()).append("  ").append(stage);
+		}
+		return text.toString();
+	}
+	
+	/**
+	 * Approximate mode for logs with too many distinct domains per day to count them exactly. Domain counts 
+	 * are tracked per day with a Count-Min Sketch and a Space-Saving summary of fixed size, and each reported 
+	 * count is followed by its error bound.
+	 */
+	public void enableApproximateDomains() {
+		if (logIndex != null) {
+			throw new IllegalStateException("Approximate domain counts can't be used with an index, whose counts are exact anyway.");
+		}
+		approximateDomains = new ApproximateDomainCounts();
+	}
+	
+	/**
+	 * Distinct user mode: besides the request counts, the distinct IPs of each domain and day are estimated 
+	 * with a HyperLogLog sketch of fixed size (see DistinctUserSketches), and the report has a second ranking 
+	 * of the domains of each day by distinct users, with the same rank or top list as the request ranking.
+	 * 
+	 * Not supported with approximate domain counts or an index, which don't keep the domain of each entry.
+	 */
+	public void enableDistinctUsers() {
+		if (approximateDomains != null || logIndex != null) {
+			throw new IllegalStateException("Distinct users can't be counted with approximate domain counts or an index.");
+		}
+		distinctUsers = new DistinctUserSketches();
+		allDistinctDomains = new ArrayList<PopularDomain>();
+	}
+	
+	/**
+	 * Shared counter mode for parallel reading: the workers add their counts to shared lock-free tables 
+	 * (see ConcurrentCounterTable) instead of counting into tables of their own that are merged at the end, 
+	 * so the memory holds each key once instead of once per worker. The report is the same.
+	 * 
+	 * With approximate domain counts, only the user counts are shared.
+	 */
+	public void enableSharedCounters() {
+		if (parallelIngester == null && multiFileIngester == null) {
+			throw new IllegalStateException("Shared counters are only used when reading in parallel.");
+		}
+		sharedCounts = new SharedUsageCounts();
+	}
+	
+	/**
+	 * Checkpoint mode for long runs over a MappedLogFile: while reading, the counts and the offset reached in the 
+	 * log are saved to checkpointPath every intervalMillis, and once more at the end. If checkpointPath already holds 
+	 * a checkpoint of the same log, its counts are loaded and reading continues from its offset, so a restarted run 
+	 * (or a run over a log that has grown since) doesn't parse those lines again.
+	 * 
+	 * Not supported in parallel mode or with domain streaming, whose days displayed before a restart would be lost.
+	 */
+	public void enableCheckpoints(String checkpointPath, long intervalMillis) {
+		if (!(logDataFile instanceof MappedLogFile)) {
+			throw new IllegalStateException("Checkpoints require the log to be read as a MappedLogFile on a single thread.");
+		}
+		if (streamDomainsByDay || pipeline != null || filter != null) {
+			throw new IllegalStateException("Domain streaming, pipeline mode and filters can't be used with checkpoints.");
+		}
+		checkpoint = new UsageCheckpoint(checkpointPath, ((MappedLogFile) logDataFile).path(), intervalMillis);
+	}
+	
+	/**
+	 * Index mode for creating several reports of one big log: the reports are created from the LogIndex 
+	 * built for the MappedLogFile of this instance, without reading the log text again.
+	 * 
+	 * @throws IOException if the index can't be read or was built from another version of the log
+	 */
+	public void readFromIndex(String indexPath) throws IOException {
+		if (!(logDataFile instanceof MappedLogFile)) {
+			throw new IllegalStateException("An index can only be used for a log opened as a MappedLogFile.");
+		}
+		if (streamDomainsByDay || approximateDomains != null || checkpoint != null || pipeline != null || filter != null) {
+			throw new IllegalStateException("An index can't be used with domain streaming, approximate counts, checkpoints, " 
+					+ "pipeline mode or filters.");
+		}
+		logIndex = new LogIndex(indexPath, ((MappedLogFile) logDataFile).path());
+	}
+	
+	/**
+	 * Merge mode: the reports are created from the counts of the partial results written by writePartialResult(), 
+	 * e.g. by one process per shard of the logs. Counts are added up before the popular domains are selected, 
+	 * so the reports are the same as reading all the logs of the shards in one run.
+	 * 
+	 * Only for an instance without a log. Use enableApproximateDomains() if the partials were written with it.
+	 */
+	void readFromPartials(List<String> partialPaths) {
+		if (logDataFile != null || parallelIngester != null || multiFileIngester != null) {
+			throw new IllegalStateException("Partial results are merged by an instance without a log.");
+		}
+		if (streamDomainsByDay || filter != null) {
+			throw new IllegalStateException("Partial results can't be merged with domain streaming or filters.");
+		}
+		this.partialPaths = partialPaths;
+	}
+	
+	/**
+	 * Off-heap mode for logs with hundreds of millions of distinct (IP, hour, action) keys: the slots of the 
+	 * user counts are kept in direct memory, up to memoryBytes for all tables of the run, and beyond that 
+	 * in a memory mapped file in spillDirectory. The heap then stays small however many keys are counted, 
+	 * and garbage collections don't have to scan the counts.
+	 * 
+	 * Must be called before anything is counted.
+	 */
+	public void enableOffHeapCounters(long memoryBytes, String spillDirectory) {
+		if (userDataTable.size() > 0) {
+			throw new IllegalStateException("Off-heap counters must be enabled before counting.");
+		}
+		userDataTable = HourlyIpCounterTable.offHeap(new OffHeapCounterSlots.Budget(memoryBytes, Paths.get(spillDirectory)));
+	}
+	
+	/**
+	 * Reports the user counts in each of the given time buckets instead of hours, e.g. per minute and per day. 
+	 * Only the finest buckets are counted, and each coarser report is summed from their counts.
+	 * 
+	 * Must be called before anything is counted.
+	 */
+	void setTimeBuckets(TimeBuckets timeBuckets) {
+		if (userDataTable.size() > 0) {
+			throw new IllegalStateException("Time buckets must be set before counting.");
+		}
+		this.timeBuckets = timeBuckets;
+	}
+	
+	/**
+	 * Sets the memory for sorting the report entries, by default a quarter of the maximum heap. Reports with 
+	 * more entries are sorted in runs that are written to temporary files in sortDirectory and merged.
+	 */
+	public void setSortMemory(long memoryBytes, String sortDirectory) {
+		this.sortMemoryBytes = memoryBytes;
+		this.sortDirectory = Paths.get(sortDirectory);
+	}
+	
+	/**
+	 * Creates an empty instance with the same counting modes, for the partial counts of a parallel worker.
+	 */
+	LogUsageData newPartial() {
+		LogUsageData partial = new LogUsageData();
+		partial.userDataTable = userDataTable.newTable();
+		partial.timeBuckets = timeBuckets;
+		if (sharedCounts != null) {
+			partial.sharedWriter = sharedCounts.writer();
+		}
+		if (approximateDomains != null) {
+			partial.enableApproximateDomains();
+		}
+		if (distinctUsers != null) {
+			partial.enableDistinctUsers();
+		}
+		partial.metrics = metrics;
+		partial.filter = filter;
+		partial.malformedLines = malformedLines;
+		return partial;
+	}
+	
+	/**
+	 * Only counts the lines accepted by the given filter. Lines it rejects are skipped before they are parsed, 
+	 * and for a log sorted by time, reading starts at the time window and stops after it.
+	 * 
+	 * Not supported with checkpoints or an index, whose counts are those of the whole log.
+	 */
+	public void setFilter(LineFilter filter) {
+		if (checkpoint != null || logIndex != null) {
+			throw new IllegalStateException("Filters can't be used with checkpoints or an index.");
+		}
+		this.filter = filter;
+	}
+	
+	/**
+	 * @return the offset of the first line to read in the given uncompressed log: the start of the time window 
+	 * if the filter allows seeking to it, otherwise 0
+	 */
+	long windowStart(String filePath) throws IOException {
+		if (filter == null || !filter.seeksWindow()) {
+			return 0;
+		}
+		return SortedLogSearch.firstLineAtOrAfter(filePath, filter.fromSecond());
+	}
+	
+	/**
+	 * Counts lines, bytes and parse failures into the given metrics while reading. Without metrics, 
+	 * reading doesn't spend any time on them.
+	 */
+	public void setMetrics(AnalyzerMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	AnalyzerMetrics metrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Skip mode: lines that can't be parsed are skipped and counted against the error budget of malformedLines 
+	 * (and quarantined) instead of failing the run, until the budget is spent. Blank lines are skipped as well, 
+	 * instead of ending the log. Without skip mode, reading stops at the first blank line and fails at the first 
+	 * malformed one.
+	 * 
+	 * The budget is that of one run, so skip mode isn't combined with checkpoints.
+	 */
+	void skipMalformedLines(MalformedLines malformedLines) {
+		this.malformedLines = malformedLines;
+	}
+	
+	MalformedLines malformedLines() {
+		return malformedLines;
+	}
+	
+	/**
+	 * Names the log that this partial reads in the quarantine file, when several logs are read.
+	 */
+	void setLogPath(String logPath) {
+		this.logPath = logPath;
+	}
+	
+	LineFilter filter() {
+		return filter;
+	}
+	
+	/**
+	 * @return the time the last call of displayAllData() spent creating and writing the final reports, 
+	 * after the log was read
+	 */
+	public long reportMillis() {
+		return reportMillis;
+	}
+	
+	/**
+	 * Writes the reports to the given sink instead of System.out. The sink is flushed after each report 
+	 * but never closed.
+	 */
+	public void setReportSink(ReportSink sink) {
+		this.reportSink = sink;
 	}
 	
 	public void displayAllData(){
+		activeSink = reportSink != null ? reportSink : new TextReportSink(System.out);
 		try {
-			String currentLine = logDataFile.readLine();
-			LogDataEntry logEntry = new LogDataEntry(currentLine);
+			readAllData();
 			
-			while (! currentLine.equals("")) {
-				// Update current entry info
-				logEntry = new LogDataEntry(currentLine);
-
-				// Update counts in hash structures
-				updateUserDataHashMap(logEntry);
-				updateDomainHashMap(logEntry);
-				
-				currentLine = logDataFile.readLine();
+			long reportStart = System.nanoTime();
+			if (streamDomainsByDay) {
+				// Days before the last one have already been displayed while reading
+				displayDomainDay();
+				displayUserLogData();
+			} else {
+				// As per requirements, first show all usage counts for IPs based on Timestamp using hourly buckets
+				displayUserLogData();
+				displayDomainData();
+			}
+			activeSink.flush();
+			reportMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - reportStart);
+		} catch (Exception e) {
+			flushReport();
+			e.printStackTrace(System.out);
+		}
+	}
+	
+	/**
+	 * Reads the counts of the whole log, or of the partial results in merge mode, in the configured mode.
+	 */
+	private void readAllData() throws Exception {
+		if (parallelIngester != null) {
+			merge(parallelIngester.readAllEntries(this));
+			addSharedCounts();
+		} else if (multiFileIngester != null) {
+			merge(multiFileIngester.readAllEntries(this));
+			addSharedCounts();
+		} else if (partialPaths != null) {
+			for (String partialPath : partialPaths) {
+				PartialResult.read(this, partialPath);
+			}
+		} else if (logIndex != null) {
+			readEntriesFromIndex();
+		} else if (checkpoint != null) {
+			readEntriesFromCheckpoint();
+		} else {
+			long offset = seekToTimeWindow();
+			if (pipeline != null) {
+				pipeline.readAllEntries(this, logDataFile, offset == 0);
+			} else {
+				readEntries(logDataFile, offset == 0);
 			}
+		}
+		recordTableSizes();
+	}
+	
+	/**
+	 * Partial mode: reads the log like displayAllData(), but writes the counts to partialPath instead of 
+	 * the reports, for merging them with the counts of other shards later (see readFromPartials()). 
+	 * Nothing is written if reading fails.
+	 * 
+	 * @return true if the partial result was written
+	 */
+	public boolean writePartialResult(String partialPath) {
+		if (streamDomainsByDay) {
+			throw new IllegalStateException("Domain streaming reports the days while reading, so it has no partial result.");
+		}
+		try {
+			readAllData();
+			long writeStart = System.nanoTime();
+			PartialResult.write(this, partialPath);
+			reportMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - writeStart);
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace(System.out);
+			return false;
+		}
+	}
+	
+	/**
+	 * Writes out what has been reported so far, e.g. before an error message.
+	 */
+	private void flushReport() {
+		try {
+			activeSink.flush();
+		} catch (IOException e) {
+			e.printStackTrace(System.out);
+		}
+	}
+	
+	/**
+	 * Follow mode, like "tail -F": counts the lines already in the log, then keeps counting lines as they are 
+	 * appended and displays the IP and domain reports every refreshIntervalMillis. The counts are kept between 
+	 * refreshes, so only new lines are read. Empty lines are skipped. Runs until stopFollowing() is called or 
+	 * the thread is interrupted.
+	 * 
+	 * The log must have been opened as a FollowingLogFile. Domain streaming is not supported in this mode.
+	 */
+	public void followAllData(long refreshIntervalMillis) {
+		if (!(logDataFile instanceof FollowingLogFile)) {
+			throw new IllegalStateException("Follow mode requires the log to be opened as a FollowingLogFile.");
+		}
+		if (streamDomainsByDay) {
+			throw new IllegalStateException("Domain streaming can't be used in follow mode.");
+		}
+		FollowingLogFile logFile = (FollowingLogFile) logDataFile;
+		activeSink = reportSink != null ? reportSink : new TextReportSink(System.out);
+		
+		try {
+			LineSlice currentLine = new LineSlice();
+			LogDataEntry logEntry = new LogDataEntry();
+			long nextRefresh = System.currentTimeMillis();
 			
-			// As per requirements, first show all usage counts for IPs based on Timestamp using hourly buckets
-			displayUserLogData();
-			// Find all second most popular domains and store them in ordered list sorted by date
-			createPopularDomainsList();
-			// Display second most popular domain
-			displaySecondPopularDomainData();
+			while (!followStopped) {
+				long lines = 0;
+				long bytes = 0;
+				long entries = 0;
+				while (logFile.nextLine(currentLine)) {
+					if (currentLine.isEmpty()) {
+						continue;
+					}
+					// New lines may still be in the window, so a filter never ends following
+					if (filter == null || filter.test(currentLine) == LineFilter.Result.MATCH) {
+						if (logEntry.tryParse(currentLine)) {
+							entries++;
+							if (filter == null || filter.acceptsTime(logEntry)) {
+								updateUserDataTable(logEntry);
+								updateDomainHashMap(logEntry);
+							}
+						} 
+						else {
+							rejectLine(logEntry, currentLine, lines, bytes, entries);
+						}
+					}
+					lines++;
+					bytes += currentLine.length() + 1;
+				}
+				addMetrics(lines, bytes, entries);
+				
+				long now = System.currentTimeMillis();
+				if (now >= nextRefresh) {
+					displayUserLogData();
+					displayDomainData();
+					activeSink.flush();
+					if (malformedLines != null) {
+						malformedLines.flush();
+					}
+					nextRefresh = now + refreshIntervalMillis;
+				}
+				logFile.awaitChanges(Math.max(1, nextRefresh - System.currentTimeMillis()));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		} catch (Exception e) {
+			flushReport();
 			e.printStackTrace(System.out);
 		}
 	}
 	
-
+	/**
+	 * Makes followAllData() return once it wakes up next.
+	 */
+	public void stopFollowing() {
+		followStopped = true;
+	}
+	
+	/**
+	 * Reads and counts log entries until the end of the file or the first empty line, or with a filter on 
+	 * a sorted log, the first line after its time window. In skip mode, empty lines are skipped instead.
+	 * 
+	 * @param firstLineRequired when set, an empty first line (or empty file) is rejected as a malformed entry, 
+	 * except in skip mode. Only the chunk at the start of the file sets this in parallel mode. 
+	 * @return true if the end of the file was reached, false if an empty line or the end of the time window 
+	 * stopped the reading
+	 */
+	boolean readEntries(LargeFile logFile, boolean firstLineRequired) throws IOException, ParseException {
+		LineSlice currentLine = new LineSlice();
+		LogDataEntry logEntry = new LogDataEntry();
+		boolean hasLine = logFile.nextLine(currentLine);
+		
+		if (firstLineRequired && malformedLines == null && (!hasLine || currentLine.isEmpty())) {
+			throw new IllegalArgumentException("Incorrect log format. Entry must contain 4 columns.");
+		}
+		
+		// Lines, bytes and parsed entries not added to the metrics yet
+		int unreportedLines = 0;
+		long unreportedBytes = 0;
+		int unreportedEntries = 0;
+		while (hasLine && (malformedLines != null || !currentLine.isEmpty())) {
+			LineFilter.Result filterResult = currentLine.isEmpty() ? LineFilter.Result.SKIP 
+					: filter == null ? LineFilter.Result.MATCH : filter.test(currentLine);
+			if (filterResult == LineFilter.Result.PAST_WINDOW) {
+				break;
+			}
+			
+			if (filterResult == LineFilter.Result.MATCH) {
+				// Update current entry info. The entry is reused for every line.
+				if (logEntry.tryParse(currentLine)) {
+					unreportedEntries++;
+					
+					// Update counts in hash structures
+					if (filter == null || filter.acceptsTime(logEntry)) {
+						updateUserDataTable(logEntry);
+						updateDomainHashMap(logEntry);
+					}
+				} 
+				else {
+					rejectLine(logEntry, currentLine, unreportedLines, unreportedBytes, unreportedEntries);
+				}
+			}
+			if (metrics != null) {
+				unreportedBytes += currentLine.length() + 1;
+				if (++unreportedLines == AnalyzerMetrics.FLUSH_LINES) {
+					addMetrics(unreportedLines, unreportedBytes, unreportedEntries);
+					unreportedLines = 0;
+					unreportedBytes = 0;
+					unreportedEntries = 0;
+				}
+			}
+			
+			if (checkpoint != null && ++linesSinceCheckpointCheck == CHECKPOINT_CHECK_LINES) {
+				linesSinceCheckpointCheck = 0;
+				checkpoint.saveIfDue(this, ((MappedLogFile) logFile).position());
+			}
+			
+			hasLine = logFile.nextLine(currentLine);
+		}
+		addMetrics(unreportedLines, unreportedBytes, unreportedEntries);
+		
+		if (checkpoint != null) {
+			// A resumed run has to stop at the same empty line, so it isn't included in the checkpoint
+			checkpoint.save(this, hasLine ? currentLine.fileOffset() : ((MappedLogFile) logFile).position());
+		}
+		return !hasLine;
+	}
+	
+	/**
+	 * Handles a line that tryParse() rejected. In skip mode, the line is skipped while the error budget lasts. 
+	 * Otherwise its parse error is thrown, after the line and the lines before it are added to the metrics.
+	 */
+	private void rejectLine(LogDataEntry logEntry, LineSlice line, long unreportedLines, long unreportedBytes, 
+			long unreportedEntries) throws ParseException, IOException {
+		if (metrics != null) {
+			metrics.addParseFailure();
+		}
+		if (malformedLines != null && malformedLines.skip(line, logPath)) {
+			return;
+		}
+		if (metrics != null) {
+			metrics.addLines(unreportedLines + 1, unreportedBytes + line.length() + 1, unreportedEntries);
+		}
+		logEntry.throwParseError(line);
+	}
+	
+	/**
+	 * Adds lines read and parsed since the last call to the metrics, with the current table sizes.
+	 */
+	private void addMetrics(long lines, long bytes, long entries) {
+		if (metrics != null) {
+			metrics.addLines(lines, bytes, entries);
+			recordTableSizes();
+		}
+	}
+	
+	void recordTableSizes() {
+		if (metrics != null) {
+			metrics.setTableSizes(userDataTable.size(), domainCounts.size());
+		}
+	}
+	
+	/**
+	 * With a filter that can seek in a sorted log, reopens the MappedLogFile at the start of the time window.
+	 * 
+	 * @return the offset reading starts at
+	 */
+	private long seekToTimeWindow() throws IOException {
+		if (!(logDataFile instanceof MappedLogFile)) {
+			return 0;
+		}
+		MappedLogFile logFile = (MappedLogFile) logDataFile;
+		long offset = windowStart(logFile.path());
+		if (offset > 0) {
+			logFile.close();
+			logDataFile = new MappedLogFile(logFile.path(), offset, -1);
+		}
+		return offset;
+	}
+	
+	/**
+	 * Checkpoint mode: loads the counts of an existing checkpoint and reads the rest of the log from its offset.
+	 */
+	private void readEntriesFromCheckpoint() throws IOException, ParseException {
+		long offset = checkpoint.restore(this);
+		if (offset > 0) {
+			MappedLogFile logFile = (MappedLogFile) logDataFile;
+			logFile.close();
+			logDataFile = new MappedLogFile(logFile.path(), offset, -1);
+		}
+		readEntries(logDataFile, offset == 0);
+	}
+	
+	/**
+	 * Index mode: counts the entries of the index by scanning its columns.
+	 */
+	private void readEntriesFromIndex() throws IOException {
+		try (LogIndex index = logIndex) {
+			HourlyIpCounterTable.DictionaryCounter userCounter = userDataTable.dictionaryCounter(index.ips(), index.actions());
+			index.forEachUserRow((ipId, epochSecond, actionId) -> 
+					userCounter.increment(ipId, timeBuckets.bucketOfSecond(epochSecond), actionId));
+			index.forEachDomainCount(this::addDomainCount);
+		}
+		recordTableSizes();
+	}
+	
+	/**
+	 * Writes all counts in a compact binary form, for checkpoints.
+	 */
+	void writeCounts(DataOutput output) throws IOException {
+		output.writeBoolean(approximateDomains != null);
+		output.writeInt(timeBuckets.finest());
+		output.writeBoolean(distinctUsers != null);
+		userDataTable.writeTo(output);
+		if (approximateDomains != null) {
+			approximateDomains.writeTo(output);
+			return;
+		}
+		
+		output.writeInt(domainCounts.size());
+		for (int slot : domainCounts.slots()) {
+			output.writeLong(domainCounts.epochDay(slot));
+			output.writeUTF(domains.text(domainCounts.domainId(slot)));
+			output.writeInt(domainCounts.count(slot));
+		}
+		if (distinctUsers != null) {
+			distinctUsers.writeTo(output, domains);
+		}
+	}
+	
+	/**
+	 * Adds counts written by writeCounts() to this instance.
+	 * 
+	 * @return false if the counts were written in another counting mode (approximate domains, finest time bucket 
+	 * or distinct users), in which case nothing is read
+	 */
+	boolean readCounts(DataInput input) throws IOException {
+		if (input.readBoolean() != (approximateDomains != null) || input.readInt() != timeBuckets.finest() 
+				|| input.readBoolean() != (distinctUsers != null)) {
+			return false;
+		}
+		
+		userDataTable.readFrom(input);
+		if (approximateDomains != null) {
+			approximateDomains.readFrom(input);
+			return true;
+		}
+		
+		int domainCount = input.readInt();
+		for (int i = 0; i < domainCount; i++) {
+			long epochDay = input.readLong();
+			String domain = input.readUTF();
+			addDomainCount(epochDay, domain, input.readInt());
+		}
+		if (distinctUsers != null) {
+			distinctUsers.readFrom(input, domains);
+		}
+		return true;
+	}
+	
+	private void addDomainCount(long epochDay, String domain, int count) {
+		domainCounts.add(epochDay, domains.id(domain), count);
+	}
+	
+	/**
+	 * Adds the counts collected by another instance (e.g. a parallel worker) to this one. The partial 
+	 * must not be used anymore, since the memory of its user counts is given back.
+	 */
+	void merge(LogUsageData partial) {
+		sharedEntries += partial.sharedEntries;
+		userDataTable.addAll(partial.userDataTable);
+		partial.userDataTable.release();
+		if (approximateDomains != null) {
+			approximateDomains.merge(partial.approximateDomains);
+		}
+		// The partial has its own dictionary, so its domain ids are translated
+		for (int slot : partial.domainCounts.slots()) {
+			int domainId = domains.id(partial.domains, partial.domainCounts.domainId(slot));
+			domainCounts.add(partial.domainCounts.epochDay(slot), domainId, partial.domainCounts.count(slot));
+		}
+		if (distinctUsers != null) {
+			distinctUsers.addAll(partial.distinctUsers, id -> domains.id(partial.domains, id));
+		}
+	}
+	
+	/**
+	 * Shared counter mode: adds the shared counts of the workers, which are done, to the tables of this instance.
+	 */
+	private void addSharedCounts() {
+		if (sharedCounts == null) {
+			return;
+		}
+		sharedCounts.addUserCounts(userDataTable);
+		// The shared dictionary has its own ids, so they are translated like those of a partial
+		sharedCounts.domainCounts().forEach((epochDay, sharedDomainId, unused, count) -> 
+				domainCounts.add(epochDay, domains.id(sharedCounts.domains(), (int) sharedDomainId), (int) count));
+		// Reading again (e.g. a later report) counts into new shared tables
+		sharedCounts = new SharedUsageCounts();
+	}
+	
+	/**
+	 * @return the number of entries this partial counted into shared counters, 0 if counters aren't shared
+	 */
+	long sharedEntries() {
+		return sharedEntries;
+	}
+	
+	boolean usesSharedCounters() {
+		return sharedCounts != null;
+	}
+	
+	/**
+	 * Number of distinct user keys, used when merging partial results into the bigger one.
+	 */
+	int size() {
+		return userDataTable.size() + domainCounts.size();
+	}
+	
 	/**
 	 * Method for creating list of second most popular daily domains.
 	 * 
-	 * Sort domain entries from hashmap using natural ordering of String keys which start by Date. 
-	 * This means that the entries will be listed as {day1 day1 day1 day2 day2 day3 ...}
+	 * Sort domain counts by date, then by domain text, which is the natural ordering of "Date Domain" keys. 
+	 * This means that the entries will be listed as {day1 day1 day1 day2 day2 day3 ...} 
 	 * I.e. whenever the day changes, this is an inflection point. 
 	 * 
-	 * For each day, a min heap of size 2 of popular domains is maintained. At the end of the day when inflection
-	 * point is detected), the first item of the min heap will be what we're looking for: the second most popular 
-	 * domain of that day. 
+	 * For each day, a top-K min heap of popular domains is maintained, with K being the requested rank (2 by default). 
+	 * At the end of the day when inflection point is detected, the first item of the min heap will be what we're 
+	 * looking for: the second most popular domain of that day. In top list mode, the whole heap is taken instead.
 	 * 
-	 * This item is them stored in the ArrayList to be displayed later. 
+	 * The selected items are stored in the ArrayList to be displayed later. 
 	 * 
 	 * The MinHeap data structure is reset for the next day.
 	 */
-	private void createPopularDomainsList() {
-
-		// Sort domain hash keys according to their natural ordering
-		List<String> sortedKeys = new ArrayList<String>(domainHashMap.keySet());
-		Collections.sort(sortedKeys);
-				
-		// Get the first item first just to set the currentDate
-		String currentDate = "";
-		if (sortedKeys.size() > 0) {
-			currentDate = domainHashMap.get(sortedKeys.get(0)).date;
-			updateDomainHeapIfApplicable(sortedKeys.get(0));
+	void createPopularDomainsList() throws IOException {
+		topDomains.clear();
+		allSelectedDomains.clear();
+		if (distinctUsers != null) {
+			topDistinctDomains = new TopK<PopularDomain>(topDomains.capacity());
+			allDistinctDomains.clear();
 		}
 		
-		String nextDate = "";
-		for (int i = 1; i < sortedKeys.size(); i++) {
-			
-			String key = sortedKeys.get(i);
-			nextDate = domainHashMap.get(key).date;
-			
-			// For each domain used this day, see if its count is higher than the 
-			// first element of the min heap and replace if that's the case.
-			if(nextDate.equals(currentDate)) {
-				updateDomainHeapIfApplicable(key);
-			} 
-			else {
-				// Inflection point detected: New day is foud so must find 2nd most popular domain for current date
-				allSecondPopularDomains.add(popularDomainsMinHeap.peek());
-				//reset heap
-				popularDomainsMinHeap = new PriorityQueue<PopularDomain>((a, b) -> a.count - b.count);
-				
-				currentDate = nextDate;
-				updateDomainHeapIfApplicable(key);
-			}
+		// With more counts than fit in the sort memory, the counts arrive from the merge of sorted runs
+		heapDay = NO_DAY;
+		domainCounts.forEachSorted(rankDomains(), this::offerDomain, runEntries(DOMAIN_SORT_BYTES), sortDirectory);
+		if (heapDay != NO_DAY) {
+			selectDayDomains();
 		}
+	}
+	
+	private void offerDomain(long epochDay, int domainId, int count) {
+		// Inflection point detected: New day is found so must select the popular domains for current date
+		if (heapDay != NO_DAY && epochDay != heapDay) {
+			selectDayDomains();
+		}
+		heapDay = epochDay;
 		
-		allSecondPopularDomains.add(popularDomainsMinHeap.peek());
+		// For each domain used this day, see if its count is higher than the 
+		// first element of the min heap and replace if that's the case. 
+		// Domain texts are only created here, once per distinct domain.
+		String domain = domains.text(domainId);
+		topDomains.offer(new PopularDomain(domain, epochDay, count), count);
+		if (distinctUsers != null) {
+			int users = (int) distinctUsers.estimate(epochDay, domainId);
+			topDistinctDomains.offer(new PopularDomain(domain, epochDay, users), users);
+		}
 	}
-
+	
 	/**
-	 * Increment user IP count
+	 * @return the number of report entries that are sorted in memory at once
 	 */
-	private void updateUserDataHashMap(LogDataEntry logEntry) {
-		String userDataKey = logEntry.userData();
-		Integer currentItemCount = userDataHashMap.get(userDataKey);
-		
-		if (currentItemCount == null) {
-			userDataHashMap.put(userDataKey, 1);
+	private int runEntries(int bytesPerEntry) {
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(1, sortMemoryBytes / bytesPerEntry));
+	}
+	
+	/**
+	 * @return the rank of each domain id in the String ordering of the domains
+	 */
+	private int[] rankDomains() {
+		String[] sorted = new String[domains.size()];
+		for (int id = 0; id < sorted.length; id++) {
+			sorted[id] = domains.text(id);
+		}
+		Arrays.sort(sorted);
+		int[] rank = new int[sorted.length];
+		for (int id = 0; id < rank.length; id++) {
+			rank[id] = Arrays.binarySearch(sorted, domains.text(id));
+		}
+		return rank;
+	}
+	
+	/**
+	 * Moves the result for the day in the top-K heap to the display list and resets the heap.
+	 */
+	private void selectDayDomains() {
+		selectDayDomains(topDomains, allSelectedDomains);
+		if (distinctUsers != null) {
+			selectDayDomains(topDistinctDomains, allDistinctDomains);
+		}
+	}
+	
+	private void selectDayDomains(TopK<PopularDomain> dayDomains, List<PopularDomain> selected) {
+		if (listTopDomains) {
+			selected.addAll(dayDomains.keysDescending());
 		} 
 		else {
-			userDataHashMap.put(userDataKey, currentItemCount+1);
+			selected.add(dayDomains.minKey());
 		}
+		dayDomains.clear();
+	}
+	
+	/**
+	 * Report the domain with the given popularity rank of each day instead of the second most popular one.
+	 * Days with fewer domains report their least popular domain.
+	 */
+	public void setDomainRank(int rank) {
+		topDomains = new TopK<PopularDomain>(rank);
+		listTopDomains = false;
+	}
+	
+	/**
+	 * Report the given number of most popular domains of each day, most popular first.
+	 */
+	public void setTopDomainCount(int count) {
+		topDomains = new TopK<PopularDomain>(count);
+		listTopDomains = true;
+	}
+	
+	/**
+	 * Increment user IP count
+	 */
+	void updateUserDataTable(LogDataEntry logEntry) {
+		if (sharedWriter != null) {
+			sharedWriter.addUser(logEntry, timeBuckets.bucket(logEntry));
+			sharedEntries++;
+			return;
+		}
+		userDataTable.increment(logEntry, timeBuckets.bucket(logEntry));
 	}
 	
 	/**
 	 * Increment domain counts. 
 	 */
-	public void updateDomainHashMap(LogDataEntry logEntry){
-		String domainDataKey = logEntry.domainData();
-		PopularDomain domain = domainHashMap.get(domainDataKey);
+	public void updateDomainHashMap(LogDataEntry logEntry) throws IOException {
+		if (streamDomainsByDay) {
+			if (logEntry.epochDay() != currentDomainDay) {
+				displayDomainDay();
+			}
+			currentDomainDay = logEntry.epochDay();
+		}
 		
-		// If Domain object already in hash map, increment count. Otherwise, add with count set to 1.
-		if (domain == null) {
-			domainHashMap.put(domainDataKey, new PopularDomain(logEntry.domain(), logEntry.entryDate(), 1));
+		if (approximateDomains != null) {
+			approximateDomains.add(logEntry);
+			return;
 		}
-		else {
-			//increment count since it's a private class and have access to internal members
-			domainHashMap.get(domainDataKey).count +=1;
+		// The domain bytes are looked up where they are in the line, so a known domain isn't copied. Shared counters 
+		// look domains up in a dictionary of their own, so there the id is only needed for the distinct users.
+		int domainId = sharedWriter == null || distinctUsers != null 
+				? domains.id(logEntry.source(), logEntry.domainStart(), logEntry.domainEnd()) : -1;
+		if (distinctUsers != null) {
+			// Also with shared counters: the sketches stay with the worker and are merged like partial counts
+			distinctUsers.add(logEntry.epochDay(), domainId, logEntry);
+		}
+		if (sharedWriter != null) {
+			sharedWriter.addDomain(logEntry);
+			return;
 		}
+		domainCounts.add(logEntry.epochDay(), domainId, 1);
 	}
 	
 	/**
-	 * Method that maintains a min heap of limited size (in this case 2). 
-	 * 
-	 * If time permits, this should be extracted into its own data structure class that implements
-	 * the PriorityQueue interface but provides more APIs for functions needed here, such as 
-	 * updating a heap element with automatic rebalancing without needing to pop() first.
+	 * Streaming mode: display the second most popular domain of the day counted so far, then forget that day.
 	 */
-	public void updateDomainHeapIfApplicable(String domainDataKey){
-		//check min heap. If first two entries of the day, add them to heap automatically
-		if (popularDomainsMinHeap.size() < HEAP_LIMIT) {
-			PopularDomain addToHeap = domainHashMap.get(domainDataKey);
-			PopularDomain popularDomain = new PopularDomain(addToHeap.domain, addToHeap.date, addToHeap.count);
-			
-			// If item with this key has already been added, remove it and add it again. Otherwise, just add new item.
-			if(popularDomainsMinHeap.peek() != null && popularDomain.getKey().equals(popularDomainsMinHeap.peek().getKey()) ) {
-				// Note that it must be removed first before the update since the Java PriorityQueue implementation
-				// doesn't automatically rebalance heap after an update. 
-				popularDomainsMinHeap.poll();
-				popularDomainsMinHeap.add(popularDomain);
-			} 
-			else {
-				popularDomainsMinHeap.add(popularDomain);
-			}
+	private void displayDomainDay() throws IOException {
+		if (domainCounts.isEmpty() && (approximateDomains == null || approximateDomains.isEmpty())) {
 			return;
 		}
-		
-		// If heap already contains 2 items, check to see if one of them needs updating and do so.
-		PopularDomain toUpdate = null;
-		//Check if this item is already in queue. If so, update count.
-		for (PopularDomain p : popularDomainsMinHeap) {
-			if (domainDataKey.equals((p.getKey()))) {
-				toUpdate = p;
-				break;
-			}
+		displayDomainData();
+		domainCounts.clear();
+		domains.clear();
+		if (approximateDomains != null) {
+			approximateDomains.clear();
 		}
-		
-		if (toUpdate != null) {
-			popularDomainsMinHeap.remove(toUpdate);
-			popularDomainsMinHeap.add(new PopularDomain(toUpdate.domain, toUpdate.date, toUpdate.count));
+		if (distinctUsers != null) {
+			distinctUsers.clear();
+		}
+	}
+	
+	private void displayDomainData() throws IOException {
+		if (approximateDomains != null) {
+			displayApproximateDomainData();
 			return;
 		}
-
-		// For any update to the Domain Hash Map, check if it's bigger than the first heap entry and that keys are different.
-		// If so, this would mean a new domain that's either the most popular or second most popular.
-		// Remove old entry and and add the new one. 
-		if (domainHashMap.get(domainDataKey).count > popularDomainsMinHeap.peek().count && 
-				!domainDataKey.equals(popularDomainsMinHeap.peek().getKey())) {
-			
-			PopularDomain newPopularDomain = new PopularDomain(domainHashMap.get(domainDataKey).domain, 
-					domainHashMap.get(domainDataKey).date, 
-					domainHashMap.get(domainDataKey).count);
-			
-			popularDomainsMinHeap.poll();
-			popularDomainsMinHeap.add(newPopularDomain);
+		// Find all second most popular domains and store them in ordered list sorted by date
+		createPopularDomainsList();
+		// Display second most popular domain
+		displaySecondPopularDomainData();
+	}
+	
+	/**
+	 * Displaying all data in user IP hash table using the natural String ordering of the "IP Timestamp Action" keys, 
+	 * once per time bucket size, finest first.
+	 */
+	private void displayUserLogData() throws IOException {
+		int finest = timeBuckets.finest();
+		for (int size : timeBuckets.sizes()) {
+			HourlyIpCounterTable.Visitor visitor;
+			if (size == LogTime.SECONDS_PER_HOUR) {
+				visitor = activeSink()::userCount;
+			} 
+			else {
+				visitor = (userIp, bucket, action, count) -> activeSink().bucketCount(userIp, bucket * size, size, action, count);
+			}
+			if (size == finest) {
+				userDataTable.forEachSorted(visitor, runEntries(USER_SORT_BYTES), sortDirectory);
+				continue;
+			}
+			HourlyIpCounterTable coarser = userDataTable.rollUp(size / finest);
+			try {
+				coarser.forEachSorted(visitor, runEntries(USER_SORT_BYTES), sortDirectory);
+			} finally {
+				coarser.release();
+			}
 		}
 	}
-
+	
 	/**
-	 * Displaying all data in user IP hash map using the natural String ordering of the keys.
+	 * Display the second most popular domain (or the selected rank or top list) for each day. 
+	 * Entries should already be sorted in increasing order by Date.
 	 */
-	private void displayUserLogData() {
-		List<String> sortedKeys = new ArrayList<String>(userDataHashMap.keySet());
-		Collections.sort(sortedKeys);
-		sortedKeys.forEach(key -> System.out.println(key + " " + userDataHashMap.get(key)));
+	private void displaySecondPopularDomainData() throws IOException {
+		int distinctIndex = 0;
+		for (int i = 0; i < allSelectedDomains.size(); i++) {
+			PopularDomain popDomainItem = allSelectedDomains.get(i);
+			activeSink().domainCount(popDomainItem.epochDay, popDomainItem.domain, popDomainItem.count);
+			boolean lastOfDay = i + 1 == allSelectedDomains.size() || allSelectedDomains.get(i + 1).epochDay != popDomainItem.epochDay;
+			if (distinctUsers == null || !lastOfDay) {
+				continue;
+			}
+			// The ranking by distinct users follows the one by requests of the same day
+			for (; distinctIndex < allDistinctDomains.size() && allDistinctDomains.get(distinctIndex).epochDay == popDomainItem.epochDay; distinctIndex++) {
+				PopularDomain distinctItem = allDistinctDomains.get(distinctIndex);
+				activeSink().domainUsers(distinctItem.epochDay, distinctItem.domain, distinctItem.count);
+			}
+		}
 	}
-
+	
 	/**
-	 * Display the second most popular domain for each day. Entries should already be sorted in increasing order by Date.
+	 * Approximate mode: display the selected domains of each day with their error bounds.
 	 */
-	private void displaySecondPopularDomainData() {
-		allSecondPopularDomains.forEach(popDomainItem -> System.out.println(popDomainItem.date + " " + popDomainItem.domain + " " + popDomainItem.count));
+	private void displayApproximateDomainData() throws IOException {
+		approximateDomains.forEachSelected(topDomains.capacity(), listTopDomains, activeSink()::approximateDomainCount);
+	}
+	
+	/**
+	 * The sink of the current report. Rows reported outside of displayAllData() go to System.out.
+	 */
+	private ReportSink activeSink() {
+		if (activeSink == null) {
+			activeSink = new TextReportSink(System.out);
+		}
+		return activeSink;
 	}
 	
-
 	/**
 	 * Internal helper class to LogUsageData for storing Domain data.
 	 */
 	private final class PopularDomain  {
 		private String domain;
-		private String date;
+		private long epochDay;
 		private Integer count;
 		
-		public PopularDomain(String domain, String date, Integer count){
+		public PopularDomain(String domain, long epochDay, Integer count){
 			this.domain = domain;
-			this.date = date;
+			this.epochDay = epochDay;
 			this.count = count;
 		}
-		
-		public String getKey() {
-			return date + " " + domain;
-		}
 	}
 }
 
@@ -0,0 +1,94 @@
+package loganalyzer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The error budget of a run that skips malformed lines: instead of the first line that can't be parsed failing 
+ * the whole run, up to maxErrors lines are skipped and counted, and the line after that still fails it.
+ * One corrupt line in a huge log then doesn't throw away the counts of all the other lines.
+ * 
+ * The skipped lines can be written to a quarantine file, one per line as "<byte offset>\t<line>", or 
+ * "<log path>:<byte offset>\t<line>" when several logs are read, so they can be looked at or fixed and 
+ * counted later. The offset is -1 where the reader doesn't know it.
+ * 
+ * Shared by all the reading threads of a run. Lines are only counted here once they failed to parse, 
+ * so the lines that parse don't pay anything for it. A single reader and the pipeline count lines in file 
+ * order, so a run skips and quarantines the same lines every time. The chunk workers of --threads and the 
+ * file workers of a multi-file run count them as they get to them: a run that stays within the budget skips 
+ * the same lines but may quarantine them in another order, and a run that spends the budget may fail at 
+ * another line, having quarantined other lines before it.
+ */
+final class MalformedLines implements Closeable {
+	private final long maxErrors;
+	private final AtomicLong errors = new AtomicLong();
+	// null without a quarantine file
+	private final OutputStream quarantine;
+	
+	/**
+	 * @param quarantinePath the file to write the skipped lines to, or null
+	 */
+	MalformedLines(long maxErrors, String quarantinePath) throws IOException {
+		if (maxErrors < 0) {
+			throw new IllegalArgumentException("The error budget can't be negative.");
+		}
+		this.maxErrors = maxErrors;
+		this.quarantine = quarantinePath == null ? null : new BufferedOutputStream(new FileOutputStream(quarantinePath));
+	}
+	
+	/**
+	 * Counts a line that failed to parse against the budget, and quarantines it if it is within the budget.
+	 * 
+	 * @param logPath the log of the line when several logs are read, otherwise null
+	 * @return true if the line is to be skipped, false if the budget is spent and the run must fail
+	 */
+	boolean skip(LineSlice line, String logPath) throws IOException {
+		if (errors.incrementAndGet() > maxErrors) {
+			return false;
+		}
+		if (quarantine != null) {
+			byte[] prefix = ((logPath != null ? logPath + ":" : "") + line.fileOffset() + "\t").getBytes(StandardCharsets.UTF_8);
+			// Lines of concurrent readers must not interleave
+			synchronized (quarantine) {
+				quarantine.write(prefix);
+				for (int i = 0; i < line.length(); i++) {
+					quarantine.write(line.byteAt(i));
+				}
+				quarantine.write('\n');
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the number of lines skipped so far
+	 */
+	long skipped() {
+		return Math.min(errors.get(), maxErrors);
+	}
+	
+	/**
+	 * Writes out the quarantined lines, e.g. before a report that refers to them.
+	 */
+	void flush() throws IOException {
+		if (quarantine != null) {
+			synchronized (quarantine) {
+				quarantine.flush();
+			}
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (quarantine != null) {
+			synchronized (quarantine) {
+				quarantine.close();
+			}
+		}
+	}
+}
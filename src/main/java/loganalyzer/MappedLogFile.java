@@ -0,0 +1,159 @@
+package loganalyzer;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a large file line by line by memory mapping it one window at a time and scanning the raw bytes 
+ * for newlines. Lines are handed out as slices of the mapped window, so nothing is copied or decoded 
+ * unless readLine() is used.
+ * 
+ * Both "\n" and "\r\n" line endings are supported.
+ */
+public final class MappedLogFile implements LargeFile, Closeable {
+	static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+	
+	private final String filePath;
+	private FileChannel fileChannel;
+	private final long fileSize;
+	private final long endOffset;
+	private int windowSize;
+	
+	private MappedByteBuffer window;
+	private long windowStart;
+	private int position;
+	private boolean endOfFile;
+	
+	// Only used by readLine(), which has to copy the line into a String anyway
+	private final LineSlice currentLine = new LineSlice();
+	
+	public MappedLogFile(String filePath) throws FileNotFoundException, IOException {
+		this(filePath, DEFAULT_WINDOW_SIZE);
+	}
+	
+	MappedLogFile(String filePath, int windowSize) throws FileNotFoundException, IOException {
+		this(filePath, 0, -1, windowSize);
+	}
+	
+	/**
+	 * Reads only the lines in the byte range [startOffset, endOffset) of the file. The start offset 
+	 * must be the beginning of a line, and the last line is the one that starts before endOffset.
+	 * An endOffset of -1 means the end of the file.
+	 */
+	public MappedLogFile(String filePath, long startOffset, long endOffset) throws FileNotFoundException, IOException {
+		this(filePath, startOffset, endOffset, DEFAULT_WINDOW_SIZE);
+	}
+	
+	private MappedLogFile(String filePath, long startOffset, long endOffset, int windowSize) 
+			throws FileNotFoundException, IOException {
+		this.filePath = filePath;
+		fileChannel = new FileInputStream(filePath).getChannel();
+		fileSize = fileChannel.size();
+		this.endOffset = endOffset < 0 ? fileSize : Math.min(endOffset, fileSize);
+		this.windowSize = windowSize;
+		windowStart = Math.min(startOffset, fileSize);
+		position = 0;
+	}
+
+	@Override
+	/**
+	 * Same contract as LargeLogFile: an empty string is returned for empty lines and once the end of file is reached.
+	 */
+	public String readLine() throws IOException {
+		if (nextLine(currentLine)) {
+			return currentLine.toString();
+		}
+		return "";
+	}
+
+	@Override
+	public boolean nextLine(LineSlice line) throws IOException {
+		while (!endOfFile) {
+			long lineStart = windowStart + position;
+			if (lineStart >= endOffset) {
+				closeChannel();
+				break;
+			}
+			
+			if (window == null || position >= window.limit()) {
+				mapWindow(lineStart);
+			}
+			
+			int limit = window.limit();
+			int newline = position;
+			while (newline < limit && window.get(newline) != '\n') {
+				newline++;
+			}
+			
+			if (newline < limit) {
+				setLine(line, newline);
+				position = newline + 1;
+				return true;
+			} 
+			
+			if (windowStart + limit >= fileSize) {
+				// Last line of the file has no line terminator
+				setLine(line, limit);
+				position = limit;
+				return true;
+			}
+			
+			// Line crosses the end of the window. Map a new window starting at this line, 
+			// growing the window if a single line doesn't fit into it.
+			if (position == 0) {
+				windowSize = (int) Math.min((long) windowSize * 2, Integer.MAX_VALUE);
+			}
+			mapWindow(lineStart);
+		}
+		
+		return false;
+	}
+	
+	String path() {
+		return filePath;
+	}
+	
+	/**
+	 * @return file offset of the next line nextLine() will return, i.e. how far the file has been read
+	 */
+	long position() {
+		return windowStart + position;
+	}
+	
+	private void setLine(LineSlice line, int lineEnd) {
+		int length = lineEnd - position;
+		if (length > 0 && window.get(lineEnd - 1) == '\r') {
+			length--;
+		}
+		line.set(window, position, length, windowStart + position);
+	}
+	
+	private void mapWindow(long start) throws IOException {
+		long size = Math.min(windowSize, fileSize - start);
+		window = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		windowStart = start;
+		position = 0;
+	}
+	
+	/**
+	 * Only needed when reading stops before the end of the file, otherwise the file is closed automatically.
+	 */
+	@Override
+	public void close() throws IOException {
+		closeChannel();
+	}
+	
+	/**
+	 * Mapped windows stay valid after the channel is closed, so slices handed out remain readable.
+	 */
+	private void closeChannel() throws IOException {
+		endOfFile = true;
+		if (fileChannel != null) {
+			fileChannel.close();
+		}
+	}
+}
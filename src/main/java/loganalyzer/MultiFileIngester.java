@@ -0,0 +1,150 @@
+package loganalyzer;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads several log files (e.g. hourly rotated, gzip compressed logs) on a fixed size thread pool. Each file is
+ * read and, if needed, decompressed by one worker into its own partial LogUsageData, and the partial counts are
+ * merged in file order.
+ * 
+ * Each file is counted like a log read on its own, up to its first empty line, except that empty files are skipped.
+ */
+final class MultiFileIngester {
+	private static final String GZIP_SUFFIX = ".gz";
+	private static final String LOG_SUFFIX = ".log";
+	// Files read or waiting to be merged per thread, so threads have work while an earlier file is still read
+	private static final int FILES_IN_FLIGHT_PER_THREAD = 2;
+	
+	private final List<String> filePaths;
+	private final int threadCount;
+	
+	MultiFileIngester(List<String> filePaths, int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("Thread count must be at least 1.");
+		}
+		this.filePaths = filePaths;
+		this.threadCount = threadCount;
+	}
+	
+	/**
+	 * @param owner the instance whose counting modes the partial counts use
+	 * @return the merged counts of all files
+	 */
+	LogUsageData readAllEntries(LogUsageData owner) throws Exception {
+		int poolSize = Math.min(threadCount, filePaths.size());
+		ExecutorService pool = Executors.newFixedThreadPool(poolSize);
+		try {
+			// Partials are merged in file order, and a file is only submitted once an earlier one is merged, 
+			// so a slow file holds back at most maxInFlight partials
+			int maxInFlight = poolSize * FILES_IN_FLIGHT_PER_THREAD;
+			Deque<Future<LogUsageData>> results = new ArrayDeque<Future<LogUsageData>>();
+			int nextFile = 0;
+			LogUsageData merged = owner.newPartial();
+			while (nextFile < filePaths.size() || !results.isEmpty()) {
+				while (nextFile < filePaths.size() && results.size() < maxInFlight) {
+					String filePath = filePaths.get(nextFile++);
+					results.add(pool.submit(() -> readFile(owner, filePath)));
+				}
+				try {
+					merged.merge(results.remove().get());
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+			return merged;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	private static LogUsageData readFile(LogUsageData owner, String filePath) throws Exception {
+		LogUsageData partial = owner.newPartial();
+		partial.setLogPath(filePath);
+		// Compressed files can't be searched, they stop at the end of a time window like any log
+		LargeFile logFile = isCompressed(filePath) ? open(filePath) : new MappedLogFile(filePath, owner.windowStart(filePath), -1);
+		try {
+			partial.readEntries(logFile, false);
+		} finally {
+			// Both readers returned by open() need to be closed if reading stops early
+			((Closeable) logFile).close();
+		}
+		return partial;
+	}
+	
+	/**
+	 * Opens a log file with the reader matching its type: gzip files are decompressed while reading,
+	 * other files are memory mapped.
+	 */
+	static LargeFile open(String filePath) throws FileNotFoundException, IOException {
+		if (isCompressed(filePath)) {
+			return new GzipLogFile(filePath);
+		}
+		return new MappedLogFile(filePath);
+	}
+	
+	static boolean isCompressed(String filePath) {
+		return filePath.endsWith(GZIP_SUFFIX);
+	}
+	
+	/**
+	 * Expands a log path given on the command line into the files to read, sorted by name:
+	 * a directory stands for its ".log" and ".gz" files, and a file name containing glob characters
+	 * (e.g. "logs/access-*.gz") for the matching files of its directory. Any other path is returned as is.
+	 */
+	static List<String> resolve(String logPath) throws IOException {
+		Path path = Paths.get(logPath);
+		if (Files.isDirectory(path)) {
+			return listFiles(path, "*{" + LOG_SUFFIX + "," + GZIP_SUFFIX + "}");
+		}
+		
+		String fileName = path.getFileName() == null ? "" : path.getFileName().toString();
+		if (!isGlob(fileName)) {
+			return Collections.singletonList(logPath);
+		}
+		Path directory = path.getParent() == null ? Paths.get(".") : path.getParent();
+		return listFiles(directory, fileName);
+	}
+	
+	private static boolean isGlob(String fileName) {
+		for (char c : "*?[{".toCharArray()) {
+			if (fileName.indexOf(c) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static List<String> listFiles(Path directory, String glob) throws IOException {
+		List<String> files = new ArrayList<String>();
+		if (!Files.isDirectory(directory)) {
+			return files;
+		}
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+			for (Path entry : entries) {
+				if (Files.isRegularFile(entry) && matcher.matches(entry.getFileName())) {
+					files.add(entry.toString());
+				}
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+}
@@ -0,0 +1,226 @@
+package loganalyzer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Slots outside the Java heap, for tables with hundreds of millions of keys whose arrays would make 
+ * garbage collections take seconds. The heap only holds the page references, whatever the table size.
+ * 
+ * Slots are fixed size records in pages of PAGE_SLOTS slots (smaller tables use a single smaller page). Pages 
+ * are direct ByteBuffers while the Budget allows, and after that regions of a memory mapped spill file, 
+ * so a table that outgrows the memory budget continues on disk with the OS page cache in front of it.
+ */
+final class OffHeapCounterSlots implements CounterSlots {
+	// Record layout: high, low, hour, count, and kind and action, padded to a multiple of 8 bytes
+	private static final int HIGH = 0;
+	private static final int LOW = 8;
+	private static final int HOUR = 16;
+	private static final int COUNT = 24;
+	private static final int META = 32;
+	static final int SLOT_BYTES = 40;
+	
+	private static final int PAGE_SHIFT = 20;
+	static final int PAGE_SLOTS = 1 << PAGE_SHIFT;
+	private static final int PAGE_MASK = PAGE_SLOTS - 1;
+	
+	private final Budget budget;
+	private final int capacity;
+	private final ByteBuffer[] pages;
+	// Spill file offset of each page, or -1 for a direct page
+	private final long[] spillOffsets;
+	
+	/**
+	 * Memory shared by all off-heap tables of a run, e.g. the partial tables of parallel workers: 
+	 * the bytes of direct memory left, and the spill file for the pages beyond that.
+	 */
+	static final class Budget {
+		private final Path spillDirectory;
+		private long directBytesLeft;
+		private FileChannel spillFile;
+		private long spillSize;
+		// Regions of released spilled pages, reused before the file grows
+		private final List<Long> freeRegions = new ArrayList<Long>();
+		
+		/**
+		 * @param spillDirectory the directory of the spill file, which is only created when the memory is used up
+		 */
+		Budget(long directBytes, Path spillDirectory) {
+			this.directBytesLeft = directBytes;
+			this.spillDirectory = spillDirectory;
+		}
+		
+		/**
+		 * @return a zeroed direct buffer, or null if the budget or the direct memory of the JVM is used up
+		 */
+		private synchronized ByteBuffer allocateDirect(int bytes) {
+			if (bytes > directBytesLeft) {
+				return null;
+			}
+			try {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+				directBytesLeft -= bytes;
+				return buffer;
+			} catch (OutOfMemoryError e) {
+				// -XX:MaxDirectMemorySize is below the budget, spill from now on
+				directBytesLeft = 0;
+				return null;
+			}
+		}
+		
+		private synchronized void releaseDirect(int bytes) {
+			directBytesLeft += bytes;
+		}
+		
+		/**
+		 * @return the spill file offset of a zeroed region of one full page. Regions are zeroed when released.
+		 */
+		private synchronized long allocateRegion() throws IOException {
+			if (!freeRegions.isEmpty()) {
+				return freeRegions.remove(freeRegions.size() - 1);
+			}
+			if (spillFile == null) {
+				// Deleted when closed or when the JVM exits, on Unix right away
+				Path path = Files.createTempFile(spillDirectory, "loganalyzer-counters", ".tmp");
+				spillFile = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, 
+						StandardOpenOption.DELETE_ON_CLOSE);
+			}
+			long offset = spillSize;
+			spillSize += (long) PAGE_SLOTS * SLOT_BYTES;
+			return offset;
+		}
+		
+		private synchronized ByteBuffer map(long offset) throws IOException {
+			return spillFile.map(FileChannel.MapMode.READ_WRITE, offset, (long) PAGE_SLOTS * SLOT_BYTES).order(ByteOrder.nativeOrder());
+		}
+		
+		private synchronized void releaseRegion(long offset) {
+			freeRegions.add(offset);
+		}
+	}
+	
+	/**
+	 * @throws UncheckedIOException if the spill file can't be created or extended
+	 */
+	OffHeapCounterSlots(int capacity, Budget budget) {
+		this.budget = budget;
+		this.capacity = capacity;
+		int pageCount = (int) (((long) capacity + PAGE_SLOTS - 1) >>> PAGE_SHIFT);
+		pages = new ByteBuffer[pageCount];
+		spillOffsets = new long[pageCount];
+		int pageBytes = Math.min(capacity, PAGE_SLOTS) * SLOT_BYTES;
+		try {
+			for (int page = 0; page < pageCount; page++) {
+				pages[page] = budget.allocateDirect(pageBytes);
+				spillOffsets[page] = -1;
+				if (pages[page] == null) {
+					// Spilled pages always take a region of a full page, so that regions can be reused by any table
+					spillOffsets[page] = budget.allocateRegion();
+					pages[page] = budget.map(spillOffsets[page]);
+				}
+			}
+		} catch (IOException e) {
+			release();
+			throw new UncheckedIOException("Can't spill counters to " + budget.spillDirectory, e);
+		}
+	}
+	
+	/**
+	 * Zeroes a page, so that its region can be handed out again without reading it back.
+	 */
+	private static void clear(ByteBuffer page) {
+		for (int i = 0; i < page.capacity(); i += 8) {
+			page.putLong(i, 0);
+		}
+	}
+	
+	private ByteBuffer page(int slot) {
+		return pages[slot >>> PAGE_SHIFT];
+	}
+	
+	private static int offset(int slot) {
+		return (slot & PAGE_MASK) * SLOT_BYTES;
+	}
+	
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+	
+	@Override
+	public long high(int slot) {
+		return page(slot).getLong(offset(slot) + HIGH);
+	}
+	
+	@Override
+	public long low(int slot) {
+		return page(slot).getLong(offset(slot) + LOW);
+	}
+	
+	@Override
+	public long hour(int slot) {
+		return page(slot).getLong(offset(slot) + HOUR);
+	}
+	
+	@Override
+	public int meta(int slot) {
+		return page(slot).getInt(offset(slot) + META);
+	}
+	
+	@Override
+	public long count(int slot) {
+		return page(slot).getLong(offset(slot) + COUNT);
+	}
+	
+	@Override
+	public void set(int slot, long high, long low, long hour, int meta, long count) {
+		ByteBuffer page = page(slot);
+		int offset = offset(slot);
+		page.putLong(offset + HIGH, high);
+		page.putLong(offset + LOW, low);
+		page.putLong(offset + HOUR, hour);
+		page.putInt(offset + META, meta);
+		page.putLong(offset + COUNT, count);
+	}
+	
+	@Override
+	public void addCount(int slot, long count) {
+		ByteBuffer page = page(slot);
+		int offset = offset(slot) + COUNT;
+		page.putLong(offset, page.getLong(offset) + count);
+	}
+	
+	@Override
+	public CounterSlots allocate(int capacity) {
+		return new OffHeapCounterSlots(capacity, budget);
+	}
+	
+	/**
+	 * Direct memory is only freed once the garbage collector finds the buffers unreachable, but it is 
+	 * returned to the budget right away.
+	 */
+	@Override
+	public void release() {
+		for (int page = 0; page < pages.length; page++) {
+			if (pages[page] == null) {
+				continue;
+			}
+			if (spillOffsets[page] >= 0) {
+				clear(pages[page]);
+				budget.releaseRegion(spillOffsets[page]);
+			}
+			else {
+				budget.releaseDirect(pages[page].capacity());
+			}
+			pages[page] = null;
+		}
+	}
+}
@@ -0,0 +1,242 @@
+package loganalyzer;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads a log file on several threads. The file is split into byte ranges that start at line boundaries,
+ * each range is parsed on a fork-join worker into its own partial LogUsageData, and the partial counts 
+ * are merged once the workers are done.
+ * 
+ * The result is the same as reading the file on one thread: chunks are combined in file order, and 
+ * everything after the first empty line or malformed entry of the file is discarded. With shared counters, 
+ * counts can't be discarded once they are added, so the chunks are first scanned for the first empty line 
+ * and end there.
+ */
+final class ParallelLogIngester {
+	// More chunks than threads so that a slow chunk doesn't leave the other workers idle
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+	private static final int SCAN_BUFFER_SIZE = 256 * 1024;
+	
+	private final String filePath;
+	private final int threadCount;
+	
+	ParallelLogIngester(String filePath, int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("Thread count must be at least 1.");
+		}
+		this.filePath = filePath;
+		this.threadCount = threadCount;
+	}
+	
+	/**
+	 * @param owner the instance whose counting modes the partial counts use
+	 * @return the merged counts of the whole file
+	 */
+	LogUsageData readAllEntries(LogUsageData owner) throws Exception {
+		List<Long> chunkOffsets = splitIntoChunks(owner.windowStart(filePath));
+		ForkJoinPool pool = new ForkJoinPool(threadCount);
+		try {
+			// In skip mode, empty lines don't end the log
+			if (owner.usesSharedCounters() && owner.malformedLines() == null) {
+				chunkOffsets = endAtFirstEmptyLine(chunkOffsets, pool);
+			}
+			ChunkResult result = pool.invoke(new ChunkTask(owner, chunkOffsets, 0, chunkOffsets.size() - 1));
+			if (result.failure != null) {
+				throw result.failure;
+			}
+			return result.usageData;
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * @param startOffset the line start to read from, 0 unless a filter skips to its time window
+	 * @return chunk start offsets, always starting with startOffset and ending with the file size
+	 */
+	private List<Long> splitIntoChunks(long startOffset) throws IOException {
+		List<Long> offsets = new ArrayList<Long>();
+		try (FileChannel channel = new FileInputStream(filePath).getChannel()) {
+			long fileSize = channel.size();
+			long readSize = fileSize - startOffset;
+			long chunkCount = Math.max(1, Math.min((long) threadCount * CHUNKS_PER_THREAD, readSize / MIN_CHUNK_SIZE));
+			
+			offsets.add(startOffset);
+			for (long i = 1; i < chunkCount; i++) {
+				long offset = nextLineStart(channel, startOffset + readSize * i / chunkCount);
+				if (offset > offsets.get(offsets.size() - 1) && offset < fileSize) {
+					offsets.add(offset);
+				}
+			}
+			offsets.add(fileSize);
+		}
+		return offsets;
+	}
+	
+	/**
+	 * Scans the chunks on the pool for empty lines, and ends the chunks at the first one.
+	 * 
+	 * @return the chunk offsets, with the last one moved to the first empty line if there is one
+	 */
+	private List<Long> endAtFirstEmptyLine(List<Long> chunkOffsets, ForkJoinPool pool) throws Exception {
+		List<Callable<Long>> scans = new ArrayList<Callable<Long>>();
+		for (int i = 0; i < chunkOffsets.size() - 1; i++) {
+			long start = chunkOffsets.get(i);
+			long end = chunkOffsets.get(i + 1);
+			scans.add(() -> findEmptyLine(start, end));
+		}
+		List<Future<Long>> emptyLines = pool.invokeAll(scans);
+		for (int i = 0; i < emptyLines.size(); i++) {
+			long emptyLine = emptyLines.get(i).get();
+			if (emptyLine >= 0) {
+				// The last chunk can be empty, e.g. if the file starts with an empty line, which is then rejected
+				List<Long> offsets = new ArrayList<Long>(chunkOffsets.subList(0, i + 1));
+				offsets.add(emptyLine);
+				return offsets;
+			}
+		}
+		return chunkOffsets;
+	}
+	
+	/**
+	 * @param start a line start
+	 * @return the offset of the first empty line in [start, end), or -1 if there is none. Like MappedLogFile, 
+	 * a line holding only '\r' is empty.
+	 */
+	private long findEmptyLine(long start, long end) throws IOException {
+		try (FileChannel channel = new FileInputStream(filePath).getChannel()) {
+			byte[] bytes = new byte[SCAN_BUFFER_SIZE];
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			long lineStart = start;
+			// Bytes of the current line: 0 so far, 1 if only a '\r', 2 if more
+			int lineBytes = 0;
+			long position = start;
+			while (position < end) {
+				buffer.clear();
+				buffer.limit((int) Math.min(bytes.length, end - position));
+				int read = channel.read(buffer, position);
+				if (read <= 0) {
+					break;
+				}
+				for (int i = 0; i < read; i++) {
+					byte b = bytes[i];
+					if (b == '\n') {
+						if (lineBytes < 2) {
+							return lineStart;
+						}
+						lineStart = position + i + 1;
+						lineBytes = 0;
+					} 
+					else {
+						lineBytes = lineBytes == 0 && b == '\r' ? 1 : 2;
+					}
+				}
+				position += read;
+			}
+			// An unterminated last line of only '\r'
+			return lineBytes == 1 && end == channel.size() ? lineStart : -1;
+		}
+	}
+	
+	/**
+	 * Finds the first line start at or after the given offset.
+	 */
+	static long nextLineStart(FileChannel channel, long offset) throws IOException {
+		if (offset == 0) {
+			return 0;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long position = offset - 1;
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				return channel.size();
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+	}
+	
+	/**
+	 * Counts of a run of consecutive chunks. Once a chunk stops early (empty line or failure), 
+	 * the chunks after it must not be counted.
+	 */
+	private static final class ChunkResult {
+		private LogUsageData usageData;
+		private boolean stoppedEarly;
+		private Exception failure;
+	}
+	
+	private final class ChunkTask extends RecursiveTask<ChunkResult> {
+		private static final long serialVersionUID = 1L;
+		private final LogUsageData owner;
+		private final List<Long> chunkOffsets;
+		private final int firstChunk;
+		private final int endChunk;
+		
+		ChunkTask(LogUsageData owner, List<Long> chunkOffsets, int firstChunk, int endChunk) {
+			this.owner = owner;
+			this.chunkOffsets = chunkOffsets;
+			this.firstChunk = firstChunk;
+			this.endChunk = endChunk;
+		}
+
+		@Override
+		protected ChunkResult compute() {
+			if (endChunk - firstChunk == 1) {
+				return readChunk();
+			}
+			
+			int middle = (firstChunk + endChunk) >>> 1;
+			ChunkTask right = new ChunkTask(owner, chunkOffsets, middle, endChunk);
+			right.fork();
+			ChunkResult leftResult = new ChunkTask(owner, chunkOffsets, firstChunk, middle).compute();
+			ChunkResult rightResult = right.join();
+			
+			if (leftResult.stoppedEarly) {
+				// Counts in shared counters can't be left out like the partials of the following chunks
+				if (leftResult.failure == null && rightResult.usageData.sharedEntries() > 0) {
+					leftResult.failure = new IllegalStateException("Reading stopped at an empty line, but the lines after it " 
+							+ "were already counted into the shared counters. Read the log without shared counters.");
+				}
+				return leftResult;
+			}
+			// Merge the smaller partial into the bigger one
+			if (leftResult.usageData.size() >= rightResult.usageData.size()) {
+				leftResult.usageData.merge(rightResult.usageData);
+				rightResult.usageData = leftResult.usageData;
+			} else {
+				rightResult.usageData.merge(leftResult.usageData);
+			}
+			return rightResult;
+		}
+		
+		private ChunkResult readChunk() {
+			ChunkResult result = new ChunkResult();
+			result.usageData = owner.newPartial();
+			try (MappedLogFile chunk = new MappedLogFile(filePath, chunkOffsets.get(firstChunk), chunkOffsets.get(endChunk))) {
+				// Only the start of the file must not be empty
+				result.stoppedEarly = !result.usageData.readEntries(chunk, chunkOffsets.get(firstChunk) == 0);
+			} catch (Exception e) {
+				result.stoppedEarly = true;
+				result.failure = e;
+			}
+			return result;
+		}
+	}
+}
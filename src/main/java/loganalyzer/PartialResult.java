@@ -0,0 +1,64 @@
+package loganalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Binary file with the counts of one shard of the logs, for aggregating logs that are too big for one process.
+ * 
+ * Each process (or machine) reads its own log files and writes their hourly IP counts and daily domain counts 
+ * as a partial result, and a final merge adds up all partials and creates the reports. Only the counts are 
+ * written, not the report: the most popular domains of a day can only be selected once the counts of all shards 
+ * are combined, since a domain that is second in no shard may still be second overall.
+ * 
+ * A partial is written to a temporary file first and then moved into place, so a merge never sees a partial 
+ * that is only half written.
+ */
+final class PartialResult {
+	private static final int MAGIC = 0x4C415052;
+	private static final int VERSION = 3;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private PartialResult() {
+	}
+	
+	static void write(LogUsageData usageData, String partialPath) throws IOException {
+		Path path = Paths.get(partialPath);
+		Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temporaryPath), BUFFER_SIZE))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			usageData.writeCounts(output);
+		}
+		Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Adds the counts of a partial result to usageData.
+	 * 
+	 * @throws IOException if the file is not a partial result, or was written in another counting mode
+	 */
+	static void read(LogUsageData usageData, String partialPath) throws IOException {
+		// Counts are read into an empty instance first, so a damaged partial doesn't leave some of its counts behind
+		LogUsageData partial = usageData.newPartial();
+		try (DataInputStream input = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(Paths.get(partialPath)), BUFFER_SIZE))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				throw new IOException("Not a partial result: " + partialPath);
+			}
+			if (!partial.readCounts(input)) {
+				throw new IOException("Partial result " + partialPath + " was written in another counting mode, " 
+						+ "all partials must be written and merged with the same --approximate, --buckets and --distinct-users options.");
+			}
+		}
+		usageData.merge(partial);
+	}
+}
@@ -0,0 +1,37 @@
+package loganalyzer;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Receives the rows of a usage report. Implementations may buffer the rows, so flush() has to be called 
+ * once a report is complete.
+ */
+public interface ReportSink extends Flushable, Closeable {
+	/**
+	 * Number of requests of an IP with the given action during one hour.
+	 */
+	public void userCount(String userIp, long epochHour, String action, long count) throws IOException;
+	
+	/**
+	 * Number of requests of an IP with the given action during a time bucket of another size than an hour, 
+	 * see TimeBuckets. The bucket is bucketSeconds long and starts at epochSecond.
+	 */
+	public void bucketCount(String userIp, long epochSecond, int bucketSeconds, String action, long count) throws IOException;
+	
+	/**
+	 * A selected domain of a day with its exact count.
+	 */
+	public void domainCount(long epochDay, String domain, long count) throws IOException;
+	
+	/**
+	 * A selected domain of a day with an approximate count, whose true value lies in [count - error, count].
+	 */
+	public void approximateDomainCount(long epochDay, String domain, long count, long error) throws IOException;
+	
+	/**
+	 * A domain of a day selected by its estimated number of distinct IPs, see DistinctUserSketches.
+	 */
+	public void domainUsers(long epochDay, String domain, long distinctUsers) throws IOException;
+}
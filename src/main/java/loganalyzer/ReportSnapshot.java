@@ -0,0 +1,203 @@
+package loganalyzer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Immutable copy of one complete report, grouped by IP and by day for answering queries, e.g. of a UsageServer.
+ * The rows of an IP or a day keep their report order. User counts in time buckets that the report doesn't 
+ * have are summed from finer buckets when queried, see users().
+ * 
+ * A snapshot is collected by a Builder, which is the report sink while the report is written, so it is created 
+ * by the same code that writes the report as text. Once published, a snapshot is safe to read from any thread.
+ */
+final class ReportSnapshot {
+	
+	/**
+	 * Number of requests of an IP with an action during one time bucket, e.g. an hour.
+	 */
+	static final class UserRow {
+		final long epochSecond;
+		final int bucketSeconds;
+		final String action;
+		final long count;
+		
+		private UserRow(long epochSecond, int bucketSeconds, String action, long count) {
+			this.epochSecond = epochSecond;
+			this.bucketSeconds = bucketSeconds;
+			this.action = action;
+			this.count = count;
+		}
+	}
+	
+	/**
+	 * A selected domain of a day. Approximate counts have an error bound, exact ones an error of 0.
+	 */
+	static final class DomainRow {
+		final String domain;
+		final long count;
+		final long error;
+		final boolean approximate;
+		
+		private DomainRow(String domain, long count, long error, boolean approximate) {
+			this.domain = domain;
+			this.count = count;
+			this.error = error;
+			this.approximate = approximate;
+		}
+	}
+	
+	private final Map<String, List<UserRow>> usersByIp;
+	private final Map<Long, List<DomainRow>> domainsByDay;
+	// Domains selected by distinct users, whose count is the estimated number of users
+	private final Map<Long, List<DomainRow>> userDomainsByDay;
+	// The bucket sizes of the user rows, ascending
+	private final int[] bucketSizes;
+	private final long createdMillis;
+	
+	private ReportSnapshot(Map<String, List<UserRow>> usersByIp, Map<Long, List<DomainRow>> domainsByDay, 
+			Map<Long, List<DomainRow>> userDomainsByDay, int[] bucketSizes) {
+		this.usersByIp = usersByIp;
+		this.domainsByDay = domainsByDay;
+		this.userDomainsByDay = userDomainsByDay;
+		this.bucketSizes = bucketSizes;
+		this.createdMillis = System.currentTimeMillis();
+	}
+	
+	/**
+	 * @return the counts of an IP in buckets of the given size ordered by time and action, empty for an unknown IP. 
+	 * If the report has no buckets of that size, they are summed from the coarsest reported buckets that fit into them.
+	 * @throws IllegalArgumentException if the size is not a multiple of any reported bucket size
+	 */
+	List<UserRow> users(String userIp, int bucketSeconds) {
+		int sourceSeconds = 0;
+		for (int size : bucketSizes) {
+			if (bucketSeconds % size == 0) {
+				sourceSeconds = size;
+			}
+		}
+		if (sourceSeconds == 0 && bucketSizes.length > 0) {
+			throw new IllegalArgumentException("Counts per " + TimeBuckets.format(bucketSeconds) 
+					+ " can't be summed from the reported buckets.");
+		}
+		List<UserRow> rows = usersByIp.get(userIp);
+		if (rows == null) {
+			return Collections.<UserRow>emptyList();
+		}
+		
+		// Sums per bucket start and action, which orders them like the report
+		Map<Long, Map<String, Long>> sums = new TreeMap<Long, Map<String, Long>>();
+		List<UserRow> selected = new ArrayList<UserRow>();
+		for (UserRow row : rows) {
+			if (row.bucketSeconds != sourceSeconds) {
+				continue;
+			}
+			if (sourceSeconds == bucketSeconds) {
+				selected.add(row);
+			} 
+			else {
+				long start = Math.floorDiv(row.epochSecond, bucketSeconds) * bucketSeconds;
+				sums.computeIfAbsent(start, key -> new TreeMap<String, Long>()).merge(row.action, row.count, Long::sum);
+			}
+		}
+		for (Map.Entry<Long, Map<String, Long>> bucket : sums.entrySet()) {
+			for (Map.Entry<String, Long> action : bucket.getValue().entrySet()) {
+				selected.add(new UserRow(bucket.getKey(), bucketSeconds, action.getKey(), action.getValue()));
+			}
+		}
+		return selected;
+	}
+	
+	/**
+	 * @return the selected domains of a day in report order, empty for a day without entries
+	 */
+	List<DomainRow> domains(long epochDay) {
+		List<DomainRow> rows = domainsByDay.get(epochDay);
+		return rows != null ? rows : Collections.<DomainRow>emptyList();
+	}
+	
+	/**
+	 * @return the domains of a day selected by distinct users in report order, empty for a day without entries 
+	 * or a report without distinct users
+	 */
+	List<DomainRow> domainsByUsers(long epochDay) {
+		List<DomainRow> rows = userDomainsByDay.get(epochDay);
+		return rows != null ? rows : Collections.<DomainRow>emptyList();
+	}
+	
+	int ipCount() {
+		return usersByIp.size();
+	}
+	
+	int dayCount() {
+		return domainsByDay.size();
+	}
+	
+	long createdMillis() {
+		return createdMillis;
+	}
+	
+	/**
+	 * Collects the rows of a report. Each flush() completes a report: the rows since the last flush become 
+	 * a snapshot, which is handed to the publisher.
+	 */
+	static final class Builder implements ReportSink {
+		private final Consumer<ReportSnapshot> publisher;
+		private Map<String, List<UserRow>> usersByIp = new HashMap<String, List<UserRow>>();
+		private Map<Long, List<DomainRow>> domainsByDay = new HashMap<Long, List<DomainRow>>();
+		private Map<Long, List<DomainRow>> userDomainsByDay = new HashMap<Long, List<DomainRow>>();
+		private TreeSet<Integer> bucketSizes = new TreeSet<Integer>();
+		
+		Builder(Consumer<ReportSnapshot> publisher) {
+			this.publisher = publisher;
+		}
+		
+		@Override
+		public void userCount(String userIp, long epochHour, String action, long count) {
+			bucketCount(userIp, epochHour * LogTime.SECONDS_PER_HOUR, LogTime.SECONDS_PER_HOUR, action, count);
+		}
+		
+		@Override
+		public void bucketCount(String userIp, long epochSecond, int bucketSeconds, String action, long count) {
+			bucketSizes.add(bucketSeconds);
+			usersByIp.computeIfAbsent(userIp, ip -> new ArrayList<UserRow>()).add(new UserRow(epochSecond, bucketSeconds, action, count));
+		}
+		
+		@Override
+		public void domainCount(long epochDay, String domain, long count) {
+			domainsByDay.computeIfAbsent(epochDay, day -> new ArrayList<DomainRow>()).add(new DomainRow(domain, count, 0, false));
+		}
+		
+		@Override
+		public void approximateDomainCount(long epochDay, String domain, long count, long error) {
+			domainsByDay.computeIfAbsent(epochDay, day -> new ArrayList<DomainRow>()).add(new DomainRow(domain, count, error, true));
+		}
+		
+		@Override
+		public void domainUsers(long epochDay, String domain, long distinctUsers) {
+			userDomainsByDay.computeIfAbsent(epochDay, day -> new ArrayList<DomainRow>()).add(new DomainRow(domain, distinctUsers, 0, true));
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			// The maps are handed over to the snapshot and not changed anymore
+			int[] sizes = bucketSizes.stream().mapToInt(Integer::intValue).toArray();
+			publisher.accept(new ReportSnapshot(usersByIp, domainsByDay, userDomainsByDay, sizes));
+			usersByIp = new HashMap<String, List<UserRow>>();
+			domainsByDay = new HashMap<Long, List<DomainRow>>();
+			userDomainsByDay = new HashMap<Long, List<DomainRow>>();
+			bucketSizes = new TreeSet<Integer>();
+		}
+		
+		@Override
+		public void close() {
+		}
+	}
+}
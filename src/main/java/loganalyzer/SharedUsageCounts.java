@@ -0,0 +1,118 @@
+package loganalyzer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Counts of all parallel workers in shared ConcurrentCounterTables, instead of a partial LogUsageData per worker 
+ * that is merged at the end. Memory then holds one copy of the keys however many workers there are.
+ * 
+ * User keys are the same as in HourlyIpCounterTable: (IP high bits, IP low bits, kind and action with the hour 
+ * or time bucket), and domain keys are (day, domain id). The ids of actions, other IPs and domains are numbered 
+ * by shared dictionaries. Each Writer keeps a dictionary of its own that maps the bytes of a column to the shared 
+ * id, so the shared dictionaries are only locked when a worker sees a value for the first time.
+ */
+final class SharedUsageCounts {
+	private static final int MAX_ACTIONS = 1 << 16;
+	private static final int MAX_OTHER_IPS = 1 << 24;
+	private static final int MAX_DOMAINS = 1 << 28;
+	
+	private final ConcurrentCounterTable userCounts = new ConcurrentCounterTable();
+	private final ConcurrentCounterTable domainCounts = new ConcurrentCounterTable();
+	private final ByteDictionary actions = new ByteDictionary(MAX_ACTIONS);
+	private final ByteDictionary otherIps = new ByteDictionary(MAX_OTHER_IPS);
+	private final ByteDictionary domains = new ByteDictionary(MAX_DOMAINS);
+	
+	/**
+	 * @return a writer for one worker thread
+	 */
+	Writer writer() {
+		return new Writer();
+	}
+	
+	/**
+	 * Adds the user counts to the given table. Only once all writers are done.
+	 */
+	void addUserCounts(HourlyIpCounterTable table) {
+		table.addAll(userCounts, actions, otherIps);
+	}
+	
+	ConcurrentCounterTable domainCounts() {
+		return domainCounts;
+	}
+	
+	/**
+	 * The dictionary of the domain ids of domainCounts().
+	 */
+	ByteDictionary domains() {
+		return domains;
+	}
+	
+	/**
+	 * Counts the entries of one worker. Must only be used by one thread at a time.
+	 */
+	final class Writer {
+		private final Ids actionIds = new Ids(actions, MAX_ACTIONS);
+		private final Ids otherIpIds = new Ids(otherIps, MAX_OTHER_IPS);
+		private final Ids domainIds = new Ids(domains, MAX_DOMAINS);
+		private final int[] ipv6Groups = new int[IpAddress.GROUPS];
+		
+		private Writer() {
+		}
+		
+		void addUser(LogDataEntry entry, long bucket) {
+			ByteBuffer source = entry.source();
+			int kind;
+			long high = 0;
+			long low = IpAddress.parseIpv4(source, entry.ipStart(), entry.ipEnd());
+			if (low >= 0) {
+				kind = HourlyIpCounterTable.IPV4;
+			} 
+			else if (IpAddress.parseIpv6(source, entry.ipStart(), entry.ipEnd(), ipv6Groups)) {
+				kind = HourlyIpCounterTable.IPV6;
+				high = IpAddress.high(ipv6Groups);
+				low = IpAddress.low(ipv6Groups);
+			} 
+			else {
+				kind = HourlyIpCounterTable.OTHER_IP;
+				low = otherIpIds.id(source, entry.ipStart(), entry.ipEnd());
+			}
+			
+			int meta = (kind << HourlyIpCounterTable.KIND_SHIFT) | actionIds.id(source, entry.actionStart(), entry.actionEnd());
+			userCounts.add(high, low, ((long) meta << 32) | (bucket & 0xFFFFFFFFL), 1);
+		}
+		
+		void addDomain(LogDataEntry entry) {
+			int domainId = domainIds.id(entry.source(), entry.domainStart(), entry.domainEnd());
+			domainCounts.add(entry.epochDay(), domainId, 0, 1);
+		}
+	}
+	
+	/**
+	 * The shared ids of the values a writer has seen.
+	 */
+	private static final class Ids {
+		private final ByteDictionary shared;
+		private final ByteDictionary local;
+		// Shared id + 1 per local id, 0 until the shared id is looked up
+		private int[] sharedIds = new int[64];
+		
+		private Ids(ByteDictionary shared, int maxSize) {
+			this.shared = shared;
+			this.local = new ByteDictionary(maxSize);
+		}
+		
+		private int id(ByteBuffer source, int start, int end) {
+			int localId = local.id(source, start, end);
+			if (localId >= sharedIds.length) {
+				sharedIds = Arrays.copyOf(sharedIds, Math.max(localId + 1, sharedIds.length * 2));
+			}
+			if (sharedIds[localId] == 0) {
+				synchronized (shared) {
+					sharedIds[localId] = shared.id(local, localId) + 1;
+				}
+			}
+			return sharedIds[localId] - 1;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package loganalyzer;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary search by byte offset in a log that is ordered by time, for the first line at or after a given time.
+ * 
+ * Each probe finds the next line start after an offset and decodes only its timestamp, so a window at the end 
+ * of a huge log is found after reading a few dozen small blocks. An empty line, the end of the file and a line 
+ * whose timestamp can't be decoded are treated as later than any time: reading from the found offset then 
+ * reaches them like reading from the start would, as long as they don't come before the window.
+ */
+final class SortedLogSearch {
+	// Enough for the date column of any valid line
+	private static final int PROBE_SIZE = 64;
+	
+	private SortedLogSearch() {
+	}
+	
+	/**
+	 * @return the offset of the first line with a time at or after fromSecond, or the file size if there is none
+	 */
+	static long firstLineAtOrAfter(String filePath, long fromSecond) throws IOException {
+		try (FileChannel channel = new FileInputStream(filePath).getChannel()) {
+			ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+			long low = 0;
+			long high = channel.size();
+			// The time of the line starting at or after an offset never decreases with the offset
+			while (low < high) {
+				long middle = (low + high) >>> 1;
+				if (timeOfLineAt(channel, ParallelLogIngester.nextLineStart(channel, middle), probe) < fromSecond) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return ParallelLogIngester.nextLineStart(channel, low);
+		}
+	}
+	
+	private static long timeOfLineAt(FileChannel channel, long offset, ByteBuffer probe) throws IOException {
+		probe.clear();
+		int read = offset < channel.size() ? channel.read(probe, offset) : -1;
+		if (read <= 0) {
+			return Long.MAX_VALUE;
+		}
+		int dateEnd = 0;
+		while (dateEnd < read && probe.get(dateEnd) != ',' && probe.get(dateEnd) != '\n') {
+			dateEnd++;
+		}
+		if (dateEnd == read || probe.get(dateEnd) != ',') {
+			return Long.MAX_VALUE;
+		}
+		long second = LineFilter.timestamp(probe, 0, dateEnd);
+		return second == LineFilter.UNKNOWN_TIME ? Long.MAX_VALUE : second;
+	}
+}
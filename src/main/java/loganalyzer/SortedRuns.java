@@ -0,0 +1,126 @@
+package loganalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External merge sort for reports with more entries than can be sorted in memory. The caller sorts one run 
+ * of entries at a time in memory and writes it to a temporary file, and merge() reads all runs back at once, 
+ * always taking the smallest current entry of the runs (a k-way merge), so the report is streamed in order 
+ * while only one entry per run is in memory.
+ * 
+ * The run files are deleted by close().
+ */
+final class SortedRuns implements Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final Path directory;
+	private final List<Path> runFiles = new ArrayList<Path>();
+	
+	/**
+	 * Writes the entries of a run in sorted order.
+	 */
+	interface RunWriter {
+		void write(DataOutput output) throws IOException;
+	}
+	
+	/**
+	 * Holds the current entry of a run during the merge. Subclasses read an entry into their fields.
+	 */
+	abstract static class Cursor {
+		DataInput input;
+		int remaining;
+		
+		abstract void read(DataInput input) throws IOException;
+		
+		/**
+		 * @return false if the run has no more entries
+		 */
+		boolean next() throws IOException {
+			if (remaining == 0) {
+				return false;
+			}
+			remaining--;
+			read(input);
+			return true;
+		}
+	}
+	
+	interface CursorFactory<C extends Cursor> {
+		C create();
+	}
+	
+	interface CursorVisitor<C extends Cursor> {
+		void visit(C cursor) throws IOException;
+	}
+	
+	SortedRuns(Path directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Writes a run of entryCount entries to a new temporary file.
+	 */
+	void addRun(int entryCount, RunWriter writer) throws IOException {
+		Path runFile = Files.createTempFile(directory, "loganalyzer-run", ".tmp");
+		runFiles.add(runFile);
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(runFile), BUFFER_SIZE))) {
+			output.writeInt(entryCount);
+			writer.write(output);
+		}
+	}
+	
+	/**
+	 * Visits the entries of all runs in the order given by the comparator of the cursors.
+	 */
+	<C extends Cursor> void merge(CursorFactory<C> factory, Comparator<? super C> order, CursorVisitor<? super C> visitor) throws IOException {
+		List<DataInputStream> inputs = new ArrayList<DataInputStream>();
+		try {
+			PriorityQueue<C> queue = new PriorityQueue<C>(Math.max(1, runFiles.size()), order);
+			for (Path runFile : runFiles) {
+				DataInputStream input = new DataInputStream(
+						new BufferedInputStream(Files.newInputStream(runFile), BUFFER_SIZE));
+				inputs.add(input);
+				C cursor = factory.create();
+				cursor.input = input;
+				cursor.remaining = input.readInt();
+				if (cursor.next()) {
+					queue.add(cursor);
+				}
+			}
+			
+			while (!queue.isEmpty()) {
+				C cursor = queue.poll();
+				visitor.visit(cursor);
+				if (cursor.next()) {
+					queue.add(cursor);
+				}
+			}
+		} finally {
+			for (DataInputStream input : inputs) {
+				input.close();
+			}
+		}
+	}
+	
+	@Override
+	public void close() throws IOException {
+		for (Path runFile : runFiles) {
+			Files.deleteIfExists(runFile);
+		}
+		runFiles.clear();
+	}
+}
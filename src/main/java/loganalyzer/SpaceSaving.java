@@ -0,0 +1,222 @@
+package loganalyzer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving summary of the most frequent keys using a fixed number of counters.
+ * 
+ * A key that isn't tracked replaces the key with the lowest count and inherits that count plus one. 
+ * The inherited part is remembered as the key's error, so its true count lies in [count - error, count].
+ * Any key occurring more than total / capacity times is guaranteed to be tracked.
+ * 
+ * Tracked keys are also indexed by their bytes, so counting a key that is already tracked costs no allocation. 
+ * A key only becomes a String when it starts being tracked.
+ */
+final class SpaceSaving {
+	private final TopK<String> counters;
+	private final Map<String, Long> errors;
+	// Hash table of the tracked keys with linear probing, null marks an empty slot. Per slot: key, its UTF-8 
+	// bytes and their Hashing.hash64().
+	private final String[] slotKeys;
+	private final byte[][] slotBytes;
+	private final long[] slotHashes;
+	
+	SpaceSaving(int capacity) {
+		counters = new TopK<String>(capacity);
+		errors = new HashMap<String, Long>(capacity * 2);
+		// At most half full
+		int slotCount = Integer.highestOneBit(capacity) * 4;
+		slotKeys = new String[slotCount];
+		slotBytes = new byte[slotCount][];
+		slotHashes = new long[slotCount];
+	}
+	
+	void add(String key) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer source = ByteBuffer.wrap(keyBytes);
+		add(Hashing.hash64(source, 0, keyBytes.length), source, 0, keyBytes.length);
+	}
+	
+	/**
+	 * Adds the key made of the UTF-8 bytes in [start, end) of the buffer.
+	 * 
+	 * @param hash Hashing.hash64() of the bytes, when the caller has it already
+	 */
+	void add(long hash, ByteBuffer source, int start, int end) {
+		int slot = find(hash, source, start, end);
+		if (slot >= 0) {
+			counters.increment(slotKeys[slot], 1);
+			return;
+		}
+		
+		byte[] keyBytes = new byte[end - start];
+		for (int i = 0; i < keyBytes.length; i++) {
+			keyBytes[i] = source.get(start + i);
+		}
+		String key = new String(keyBytes, StandardCharsets.UTF_8);
+		if (!counters.isFull()) {
+			counters.offer(key, 1);
+			errors.put(key, 0L);
+		} 
+		else {
+			long minCount = counters.minCount();
+			String evicted = counters.replaceMin(key, minCount + 1);
+			errors.remove(evicted);
+			errors.put(key, minCount);
+			removeSlot(evicted);
+		}
+		addSlot(key, keyBytes, hash);
+	}
+	
+	/**
+	 * @return the slot of the key, or -(empty slot) - 1 if it isn't tracked
+	 */
+	private int find(long hash, ByteBuffer source, int start, int end) {
+		int mask = slotKeys.length - 1;
+		for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+			if (slotKeys[slot] == null) {
+				return -slot - 1;
+			}
+			if (slotHashes[slot] == hash && matches(slotBytes[slot], source, start, end)) {
+				return slot;
+			}
+		}
+	}
+	
+	private static boolean matches(byte[] keyBytes, ByteBuffer source, int start, int end) {
+		if (keyBytes.length != end - start) {
+			return false;
+		}
+		for (int i = 0; i < keyBytes.length; i++) {
+			if (keyBytes[i] != source.get(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private void addSlot(String key, byte[] keyBytes, long hash) {
+		int slot = -find(hash, ByteBuffer.wrap(keyBytes), 0, keyBytes.length) - 1;
+		slotKeys[slot] = key;
+		slotBytes[slot] = keyBytes;
+		slotHashes[slot] = hash;
+	}
+	
+	private void addSlot(String key) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		addSlot(key, keyBytes, Hashing.hash64(ByteBuffer.wrap(keyBytes), 0, keyBytes.length));
+	}
+	
+	/**
+	 * Removes a tracked key, moving the keys probed after it back so that no probe sequence is broken.
+	 */
+	private void removeSlot(String key) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int hole = find(Hashing.hash64(ByteBuffer.wrap(keyBytes), 0, keyBytes.length), ByteBuffer.wrap(keyBytes), 0, 
+				keyBytes.length);
+		int mask = slotKeys.length - 1;
+		for (int slot = (hole + 1) & mask; slotKeys[slot] != null; slot = (slot + 1) & mask) {
+			// A key can fill the hole if the hole lies between its home slot and its slot
+			int home = (int) slotHashes[slot] & mask;
+			if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+				slotKeys[hole] = slotKeys[slot];
+				slotBytes[hole] = slotBytes[slot];
+				slotHashes[hole] = slotHashes[slot];
+				hole = slot;
+			}
+		}
+		slotKeys[hole] = null;
+		slotBytes[hole] = null;
+	}
+	
+	/**
+	 * @return upper bound of the key's count, or 0 if the key isn't tracked
+	 */
+	long count(String key) {
+		return Math.max(0, counters.count(key));
+	}
+	
+	long error(String key) {
+		Long error = errors.get(key);
+		return error == null ? 0 : error;
+	}
+	
+	/**
+	 * @return tracked keys by decreasing count
+	 */
+	List<String> keysDescending() {
+		return counters.keysDescending();
+	}
+	
+	/**
+	 * Combines another summary into this one. Keys missing from one summary could have occurred up to that 
+	 * summary's minimum count, so the minimum is added to both their count and error. The keys with the 
+	 * highest combined counts are kept.
+	 */
+	void merge(SpaceSaving other) {
+		long minCount = counters.isFull() ? counters.minCount() : 0;
+		long otherMinCount = other.counters.isFull() ? other.counters.minCount() : 0;
+		
+		Map<String, long[]> combined = new HashMap<String, long[]>();
+		for (String key : keysDescending()) {
+			boolean inOther = other.counters.contains(key);
+			combined.put(key, new long[] {
+					count(key) + (inOther ? other.count(key) : otherMinCount), 
+					error(key) + (inOther ? other.error(key) : otherMinCount)});
+		}
+		for (String key : other.keysDescending()) {
+			if (!combined.containsKey(key)) {
+				combined.put(key, new long[] {other.count(key) + minCount, other.error(key) + minCount});
+			}
+		}
+		
+		List<String> keys = new ArrayList<String>(combined.keySet());
+		keys.sort((a, b) -> Long.compare(combined.get(b)[0], combined.get(a)[0]));
+		counters.clear();
+		errors.clear();
+		Arrays.fill(slotKeys, null);
+		Arrays.fill(slotBytes, null);
+		for (int i = 0; i < keys.size() && i < counters.capacity(); i++) {
+			String key = keys.get(i);
+			counters.offer(key, combined.get(key)[0]);
+			errors.put(key, combined.get(key)[1]);
+			addSlot(key);
+		}
+	}
+	
+	/**
+	 * Keys are written by increasing count, so that reading them back keeps the order of equal counts.
+	 */
+	void writeTo(DataOutput output) throws IOException {
+		List<String> keys = keysDescending();
+		output.writeInt(counters.capacity());
+		output.writeInt(keys.size());
+		for (int i = keys.size() - 1; i >= 0; i--) {
+			String key = keys.get(i);
+			output.writeUTF(key);
+			output.writeLong(count(key));
+			output.writeLong(error(key));
+		}
+	}
+	
+	static SpaceSaving readFrom(DataInput input) throws IOException {
+		SpaceSaving summary = new SpaceSaving(input.readInt());
+		int size = input.readInt();
+		for (int i = 0; i < size; i++) {
+			String key = input.readUTF();
+			summary.counters.offer(key, input.readLong());
+			summary.errors.put(key, input.readLong());
+			summary.addSlot(key);
+		}
+		return summary;
+	}
+}
@@ -0,0 +1,186 @@
+package loganalyzer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes report rows as text lines through a large buffer, so the output stream is only written to (and, 
+ * for System.out, locked) once per buffer instead of once per row. Rows are formatted into a StringBuilder 
+ * that is reused for every row, and ASCII rows are copied into the buffer without creating a String.
+ * 
+ * The plain format is the one printed on the console: "IP yyyy/MM/dd HH:00:00 action count" for user counts, 
+ * "IP yyyy/MM/dd HH:mm:ss size action count" for user counts in other time buckets (e.g. size "5m"), 
+ * "yyyy/MM/dd domain count" for domains, "yyyy/MM/dd domain count +/- error" for approximate domains and 
+ * "yyyy/MM/dd domain ~users users" for domains ranked by distinct users. The CSV format has the same columns, 
+ * preceded by the row type ("user", "bucket", "domain" or "users"), with an error of 0 for exact domain counts.
+ * 
+ * Like the other sinks, an instance must only be used by one thread at a time.
+ */
+public final class TextReportSink implements ReportSink {
+	static final int BUFFER_SIZE = 1024 * 1024;
+	
+	private final OutputStream output;
+	private final boolean csv;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+	private final StringBuilder line = new StringBuilder(128);
+	
+	/**
+	 * Plain text output, e.g. to System.out.
+	 */
+	public TextReportSink(OutputStream output) {
+		this(output, false);
+	}
+	
+	public TextReportSink(OutputStream output, boolean csv) {
+		this.output = output;
+		this.csv = csv;
+	}
+	
+	@Override
+	public void userCount(String userIp, long epochHour, String action, long count) throws IOException {
+		line.setLength(0);
+		if (csv) {
+			line.append("user,");
+			appendCsvField(userIp).append(',');
+			LogTime.appendDateTime(line, epochHour * LogTime.SECONDS_PER_HOUR).append(',');
+			appendCsvField(action).append(',').append(count);
+		} 
+		else {
+			line.append(userIp).append(' ');
+			LogTime.appendDateTime(line, epochHour * LogTime.SECONDS_PER_HOUR).append(' ');
+			line.append(action).append(' ').append(count);
+		}
+		writeLine();
+	}
+	
+	@Override
+	public void bucketCount(String userIp, long epochSecond, int bucketSeconds, String action, long count) throws IOException {
+		line.setLength(0);
+		if (csv) {
+			line.append("bucket,");
+			appendCsvField(userIp).append(',');
+			LogTime.appendDateTime(line, epochSecond).append(',').append(TimeBuckets.format(bucketSeconds)).append(',');
+			appendCsvField(action).append(',').append(count);
+		} 
+		else {
+			line.append(userIp).append(' ');
+			LogTime.appendDateTime(line, epochSecond).append(' ').append(TimeBuckets.format(bucketSeconds)).append(' ');
+			line.append(action).append(' ').append(count);
+		}
+		writeLine();
+	}
+	
+	@Override
+	public void domainCount(long epochDay, String domain, long count) throws IOException {
+		line.setLength(0);
+		if (csv) {
+			appendCsvDomain(epochDay, domain, count, 0);
+		} 
+		else {
+			LogTime.appendDate(line, epochDay).append(' ').append(domain).append(' ').append(count);
+		}
+		writeLine();
+	}
+	
+	@Override
+	public void approximateDomainCount(long epochDay, String domain, long count, long error) throws IOException {
+		line.setLength(0);
+		if (csv) {
+			appendCsvDomain(epochDay, domain, count, error);
+		} 
+		else {
+			LogTime.appendDate(line, epochDay).append(' ').append(domain).append(' ').append(count)
+					.append(" +/- ").append(error);
+		}
+		writeLine();
+	}
+	
+	@Override
+	public void domainUsers(long epochDay, String domain, long distinctUsers) throws IOException {
+		line.setLength(0);
+		if (csv) {
+			line.append("users,");
+			LogTime.appendDate(line, epochDay).append(',');
+			appendCsvField(domain).append(',').append(distinctUsers);
+		} 
+		else {
+			LogTime.appendDate(line, epochDay).append(' ').append(domain).append(" ~").append(distinctUsers).append(" users");
+		}
+		writeLine();
+	}
+	
+	private void appendCsvDomain(long epochDay, String domain, long count, long error) {
+		line.append("domain,");
+		LogTime.appendDate(line, epochDay).append(',');
+		appendCsvField(domain).append(',').append(count).append(',').append(error);
+	}
+	
+	/**
+	 * Quotes the field if it contains a separator, quote or line break.
+	 */
+	private StringBuilder appendCsvField(String field) {
+		boolean quote = false;
+		for (int i = 0; i < field.length() && !quote; i++) {
+			char c = field.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			return line.append(field);
+		}
+		
+		line.append('"');
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == '"') {
+				line.append('"');
+			}
+			line.append(c);
+		}
+		return line.append('"');
+	}
+	
+	private void writeLine() throws IOException {
+		line.append(System.lineSeparator());
+		int length = line.length();
+		if (position + length * 3 > buffer.length) {
+			writeBuffer();
+		}
+		if (length * 3 > buffer.length) {
+			output.write(line.toString().getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		
+		for (int i = 0; i < length; i++) {
+			char c = line.charAt(i);
+			if (c >= 0x80) {
+				// Rare non ASCII row, encoded as a whole so that surrogate pairs stay together
+				byte[] encoded = line.substring(i).getBytes(StandardCharsets.UTF_8);
+				System.arraycopy(encoded, 0, buffer, position, encoded.length);
+				position += encoded.length;
+				return;
+			}
+			buffer[position++] = (byte) c;
+		}
+	}
+	
+	private void writeBuffer() throws IOException {
+		if (position > 0) {
+			output.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		writeBuffer();
+		output.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		flush();
+		output.close();
+	}
+}
@@ -0,0 +1,116 @@
+package loganalyzer;
+
+import java.util.Arrays;
+
+/**
+ * The sizes of the time buckets that requests of an IP are counted in, e.g. 1 minute, 5 minutes, an hour and a day.
+ * 
+ * Only the finest bucket is counted while the log is read: the user counts are keyed by the index of the finest 
+ * bucket (seconds since 1970/01/01 divided by its size) in place of the hour. Every other size is a multiple 
+ * of the finest one, so each of its buckets is made of whole finest buckets and its counts are the sums of 
+ * theirs (a roll-up). One pass over the log then answers every configured size, and a coarser report costs 
+ * a pass over the counts instead of the log.
+ * 
+ * The default is hourly buckets only, which is what LogDataEntry.epochHour() counts.
+ */
+final class TimeBuckets {
+	static final TimeBuckets HOURLY = new TimeBuckets(new int[] {LogTime.SECONDS_PER_HOUR});
+	
+	// The index of a minute bucket still fits in the int of the counter tables
+	private static final int MIN_SIZE_SECONDS = 60;
+	
+	// Ascending, the first is the finest
+	private final int[] sizes;
+	
+	private TimeBuckets(int[] sizes) {
+		this.sizes = sizes;
+	}
+	
+	/**
+	 * Parses a comma separated list of sizes, each a number followed by "m", "h" or "d", e.g. "1m,5m,1h,1d".
+	 * 
+	 * @throws IllegalArgumentException if a size is invalid, or is not a multiple of the finest size
+	 */
+	static TimeBuckets parse(String text) {
+		String[] parts = text.split(",");
+		int[] sizes = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			sizes[i] = parseSize(parts[i].trim());
+		}
+		sizes = Arrays.stream(sizes).sorted().distinct().toArray();
+		for (int size : sizes) {
+			if (size % sizes[0] != 0) {
+				throw new IllegalArgumentException("Bucket size " + format(size) + " is not a multiple of the finest size "
+						+ format(sizes[0]) + ".");
+			}
+		}
+		return new TimeBuckets(sizes);
+	}
+	
+	/**
+	 * Parses one size, e.g. "5m", into seconds.
+	 * 
+	 * @throws IllegalArgumentException if the size is not a positive number of minutes, hours or days
+	 */
+	static int parseSize(String text) {
+		int unit;
+		switch (text.isEmpty() ? ' ' : text.charAt(text.length() - 1)) {
+			case 'm':
+				unit = 60;
+				break;
+			case 'h':
+				unit = LogTime.SECONDS_PER_HOUR;
+				break;
+			case 'd':
+				unit = LogTime.SECONDS_PER_DAY;
+				break;
+			default:
+				throw new IllegalArgumentException("Expected a bucket size like 5m, 1h or 1d but was: " + text);
+		}
+		long size;
+		try {
+			size = Long.parseLong(text.substring(0, text.length() - 1)) * unit;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Expected a bucket size like 5m, 1h or 1d but was: " + text);
+		}
+		if (size < MIN_SIZE_SECONDS || size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Bucket size out of range: " + text);
+		}
+		return (int) size;
+	}
+	
+	/**
+	 * Formats a size in the largest unit that divides it, e.g. 300 as "5m".
+	 */
+	static String format(int sizeSeconds) {
+		if (sizeSeconds % LogTime.SECONDS_PER_DAY == 0) {
+			return sizeSeconds / LogTime.SECONDS_PER_DAY + "d";
+		}
+		if (sizeSeconds % LogTime.SECONDS_PER_HOUR == 0) {
+			return sizeSeconds / LogTime.SECONDS_PER_HOUR + "h";
+		}
+		return sizeSeconds / 60 + "m";
+	}
+	
+	int finest() {
+		return sizes[0];
+	}
+	
+	/**
+	 * @return the sizes in seconds, finest first
+	 */
+	int[] sizes() {
+		return sizes.clone();
+	}
+	
+	/**
+	 * @return the index of the finest bucket of the entry, its epoch hour for hourly buckets
+	 */
+	long bucket(LogDataEntry entry) {
+		return sizes[0] == LogTime.SECONDS_PER_HOUR ? entry.epochHour() : Math.floorDiv(entry.epochSecond(), sizes[0]);
+	}
+	
+	long bucketOfSecond(long epochSecond) {
+		return Math.floorDiv(epochSecond, sizes[0]);
+	}
+}
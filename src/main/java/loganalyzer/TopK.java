@@ -0,0 +1,206 @@
+package loganalyzer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the K keys with the highest counts seen so far, as a min heap of size K with an index from key to 
+ * heap slot. Counts of tracked keys can be updated in place in O(log K) without removing and re-adding them.
+ * 
+ * When counts are equal, the key that entered the heap first ranks lower, so it's the first one evicted. 
+ * A new key only replaces the minimum if its count is strictly higher.
+ */
+final class TopK<K> {
+	private final int capacity;
+	private final List<Node<K>> heap;
+	private final Map<K, Node<K>> index;
+	private long nextSequence;
+	
+	private static final class Node<K> {
+		private final K key;
+		private long count;
+		private final long sequence;
+		private int heapSlot;
+		
+		Node(K key, long count, long sequence) {
+			this.key = key;
+			this.count = count;
+			this.sequence = sequence;
+		}
+	}
+	
+	TopK(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Top-K capacity must be at least 1.");
+		}
+		this.capacity = capacity;
+		heap = new ArrayList<Node<K>>(capacity);
+		index = new HashMap<K, Node<K>>(capacity * 2);
+	}
+	
+	int capacity() {
+		return capacity;
+	}
+	
+	int size() {
+		return heap.size();
+	}
+	
+	boolean isEmpty() {
+		return heap.isEmpty();
+	}
+	
+	boolean isFull() {
+		return heap.size() == capacity;
+	}
+	
+	boolean contains(K key) {
+		return index.containsKey(key);
+	}
+	
+	/**
+	 * @return the tracked count of the key, or -1 if the key is not tracked
+	 */
+	long count(K key) {
+		Node<K> node = index.get(key);
+		return node == null ? -1 : node.count;
+	}
+	
+	/**
+	 * Lowest ranked tracked key, i.e. the K-th most popular one once K keys are tracked.
+	 */
+	K minKey() {
+		return heap.isEmpty() ? null : heap.get(0).key;
+	}
+	
+	long minCount() {
+		return heap.isEmpty() ? 0 : heap.get(0).count;
+	}
+	
+	/**
+	 * Sets the count of a key. A tracked key is updated in place. An untracked key is added if there's room, 
+	 * or replaces the minimum if its count is higher.
+	 * @return true if the key is tracked after the call
+	 */
+	boolean offer(K key, long count) {
+		Node<K> node = index.get(key);
+		if (node != null) {
+			long previous = node.count;
+			node.count = count;
+			if (count > previous) {
+				siftDown(node.heapSlot);
+			} else {
+				siftUp(node.heapSlot);
+			}
+			return true;
+		}
+		
+		if (heap.size() < capacity) {
+			node = new Node<K>(key, count, nextSequence++);
+			node.heapSlot = heap.size();
+			heap.add(node);
+			index.put(key, node);
+			siftUp(node.heapSlot);
+			return true;
+		}
+		
+		if (count > heap.get(0).count) {
+			replaceMin(key, count);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Adds delta to the count of a tracked key in O(log K).
+	 * @return false if the key is not tracked, in which case nothing changes
+	 */
+	boolean increment(K key, long delta) {
+		Node<K> node = index.get(key);
+		if (node == null) {
+			return false;
+		}
+		node.count += delta;
+		siftDown(node.heapSlot);
+		return true;
+	}
+	
+	/**
+	 * Evicts the minimum, whatever its count, and tracks the new key in its place. Heap must be full.
+	 * @return the evicted key
+	 */
+	K replaceMin(K key, long count) {
+		Node<K> evicted = heap.get(0);
+		index.remove(evicted.key);
+		Node<K> node = new Node<K>(key, count, nextSequence++);
+		node.heapSlot = 0;
+		heap.set(0, node);
+		index.put(key, node);
+		siftDown(0);
+		return evicted.key;
+	}
+	
+	void clear() {
+		heap.clear();
+		index.clear();
+	}
+	
+	/**
+	 * @return tracked keys from the most to the least popular
+	 */
+	List<K> keysDescending() {
+		List<Node<K>> nodes = new ArrayList<Node<K>>(heap);
+		nodes.sort((a, b) -> compare(b, a));
+		List<K> keys = new ArrayList<K>(nodes.size());
+		for (Node<K> node : nodes) {
+			keys.add(node.key);
+		}
+		return keys;
+	}
+	
+	private static <K> int compare(Node<K> a, Node<K> b) {
+		int result = Long.compare(a.count, b.count);
+		return result != 0 ? result : Long.compare(a.sequence, b.sequence);
+	}
+	
+	private void siftUp(int slot) {
+		Node<K> node = heap.get(slot);
+		while (slot > 0) {
+			int parentSlot = (slot - 1) >>> 1;
+			Node<K> parent = heap.get(parentSlot);
+			if (compare(node, parent) >= 0) {
+				break;
+			}
+			place(parent, slot);
+			slot = parentSlot;
+		}
+		place(node, slot);
+	}
+	
+	private void siftDown(int slot) {
+		Node<K> node = heap.get(slot);
+		int size = heap.size();
+		while (true) {
+			int child = 2 * slot + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && compare(heap.get(child + 1), heap.get(child)) < 0) {
+				child++;
+			}
+			if (compare(node, heap.get(child)) <= 0) {
+				break;
+			}
+			place(heap.get(child), slot);
+			slot = child;
+		}
+		place(node, slot);
+	}
+	
+	private void place(Node<K> node, int slot) {
+		heap.set(slot, node);
+		node.heapSlot = slot;
+	}
+}
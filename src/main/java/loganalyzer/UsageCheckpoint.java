@@ -0,0 +1,105 @@
+package loganalyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Binary checkpoint of the counts of a sequential run, so that a restarted run continues where the previous 
+ * one stopped instead of reading the log again from the start.
+ * 
+ * Besides the counts, a checkpoint holds the offset of the next unread line and a LogFingerprint of the log 
+ * up to that offset. The checkpoint is only used while the log still matches the fingerprint, i.e. it is the 
+ * same log, possibly with lines appended since.
+ * A checkpoint is written to a temporary file first and then moved over the previous one, so a crash while 
+ * writing leaves the previous checkpoint intact.
+ */
+final class UsageCheckpoint {
+	private static final int MAGIC = 0x4C414350;
+	private static final int VERSION = 4;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final Path checkpointPath;
+	private final Path logPath;
+	private final long intervalMillis;
+	private long nextSave;
+	
+	UsageCheckpoint(String checkpointPath, String logPath, long intervalMillis) {
+		this.checkpointPath = Paths.get(checkpointPath);
+		this.logPath = Paths.get(logPath);
+		this.intervalMillis = intervalMillis;
+		nextSave = System.currentTimeMillis() + intervalMillis;
+	}
+	
+	/**
+	 * Adds the counts of the checkpoint to usageData if the checkpoint exists and was written for the same log 
+	 * with the same counting mode.
+	 * 
+	 * @return the log offset to continue reading from, or 0 if there is no usable checkpoint
+	 */
+	long restore(LogUsageData usageData) throws IOException {
+		if (!Files.exists(checkpointPath)) {
+			return 0;
+		}
+		
+		// Counts are read into an empty instance first, so a damaged checkpoint doesn't leave partial counts behind
+		LogUsageData restored = usageData.newPartial();
+		long offset;
+		try (DataInputStream input = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(checkpointPath), BUFFER_SIZE))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				System.err.println("Ignoring checkpoint " + checkpointPath + ": unknown format.");
+				return 0;
+			}
+			offset = input.readLong();
+			long fingerprint = input.readLong();
+			if (Files.size(logPath) < offset || LogFingerprint.of(logPath, offset) != fingerprint) {
+				System.err.println("Ignoring checkpoint " + checkpointPath + ": it was written for a different log.");
+				return 0;
+			}
+			if (!restored.readCounts(input)) {
+				System.err.println("Ignoring checkpoint " + checkpointPath + ": it was written in another counting mode.");
+				return 0;
+			}
+		} catch (IOException e) {
+			System.err.println("Ignoring checkpoint " + checkpointPath + ": " + e);
+			return 0;
+		}
+		
+		usageData.merge(restored);
+		System.err.println("Resuming from checkpoint " + checkpointPath + " at byte " + offset);
+		return offset;
+	}
+	
+	/**
+	 * Saves a checkpoint if intervalMillis have passed since the last one.
+	 */
+	void saveIfDue(LogUsageData usageData, long offset) throws IOException {
+		if (System.currentTimeMillis() >= nextSave) {
+			save(usageData, offset);
+		}
+	}
+	
+	/**
+	 * @param offset log offset of the first line that is not included in the counts
+	 */
+	void save(LogUsageData usageData, long offset) throws IOException {
+		Path temporaryPath = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temporaryPath), BUFFER_SIZE))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeLong(offset);
+			output.writeLong(LogFingerprint.of(logPath, offset));
+			usageData.writeCounts(output);
+		}
+		Files.move(temporaryPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		nextSave = System.currentTimeMillis() + intervalMillis;
+	}
+}
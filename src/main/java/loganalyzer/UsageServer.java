@@ -0,0 +1,234 @@
+package loganalyzer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the reports over HTTP on the loopback interface, for dashboards that would otherwise run LogAnalyzer 
+ * and parse its output on every refresh. The log is counted once (or followed), and the queries are answered 
+ * from the counts in memory:
+ * 
+ * GET /users?ip=<IP>               the hourly counts of an IP 
+ * GET /users?ip=<IP>&bucket=<size>  the counts of an IP per bucket of the given size, e.g. 5m or 1d 
+ * GET /domains?day=<yyyy/MM/dd>    the selected domains of a day (second most popular, rank or top list) 
+ * GET /domains?day=...&by=users    the domains of a day selected by distinct users (see --distinct-users) 
+ * GET /status                      the time of the latest report and its number of IPs and days
+ * 
+ * Counts per bucket have the bucket size in the response and a "start" time instead of the "hour". Buckets 
+ * that the report doesn't have are summed from finer ones (see --buckets), so a report counted per minute 
+ * answers queries per 5 minutes, hour or day.
+ * 
+ * Every completed report becomes a ReportSnapshot that replaces the previous one through a volatile field, 
+ * so queries never wait for the counting thread and the counting never waits for queries. Until the first 
+ * report is complete, queries are answered with 503.
+ * 
+ * Requests are handled on virtual threads when the JVM has them (Java 21), otherwise on a cached thread pool.
+ */
+public final class UsageServer implements Closeable {
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private volatile ReportSnapshot snapshot;
+	
+	/**
+	 * @param port the port to listen on, or 0 for any free port
+	 */
+	public UsageServer(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		executor = newRequestExecutor();
+		server.setExecutor(executor);
+		server.createContext("/users", exchange -> handle(exchange, this::users));
+		server.createContext("/domains", exchange -> handle(exchange, this::domains));
+		server.createContext("/status", exchange -> handle(exchange, this::status));
+	}
+	
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor() is looked up at runtime, so the code still runs on Java 17.
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+	
+	public void start() {
+		server.start();
+	}
+	
+	public int port() {
+		return server.getAddress().getPort();
+	}
+	
+	/**
+	 * @return the sink to write the reports to. Each flushed report is published to the queries.
+	 */
+	public ReportSink reportSink() {
+		return new ReportSnapshot.Builder(published -> snapshot = published);
+	}
+	
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdown();
+	}
+	
+	/**
+	 * Answers a query from a snapshot. Throws IllegalArgumentException for an invalid query, which is answered 
+	 * with a 400, while other exceptions are answered with a 500.
+	 */
+	private interface Query {
+		String answer(ReportSnapshot snapshot, Map<String, String> parameters);
+	}
+	
+	private void handle(HttpExchange exchange, Query query) throws IOException {
+		try {
+			ReportSnapshot current = snapshot;
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				respond(exchange, 405, error("Only GET is supported."));
+			} else if (current == null) {
+				respond(exchange, 503, error("The log is still being read."));
+			} else {
+				respond(exchange, 200, query.answer(current, parameters(exchange.getRequestURI().getRawQuery())));
+			}
+		} catch (IllegalArgumentException e) {
+			respond(exchange, 400, error(e.getMessage()));
+		} catch (RuntimeException e) {
+			// Any other failure of a query still gets a status, instead of a connection closed without one
+			respond(exchange, 500, error(e.getMessage() != null ? e.getMessage() : e.toString()));
+		} finally {
+			exchange.close();
+		}
+	}
+	
+	private String users(ReportSnapshot snapshot, Map<String, String> parameters) {
+		String userIp = required(parameters, "ip");
+		String bucket = parameters.get("bucket");
+		int bucketSeconds = bucket == null ? LogTime.SECONDS_PER_HOUR : TimeBuckets.parseSize(bucket);
+		StringBuilder json = new StringBuilder(256).append("{\"ip\":");
+		appendString(json, userIp);
+		if (bucket != null) {
+			json.append(",\"bucket\":");
+			appendString(json, TimeBuckets.format(bucketSeconds));
+		}
+		json.append(",\"counts\":[");
+		String separator = "";
+		for (ReportSnapshot.UserRow row : snapshot.users(userIp, bucketSeconds)) {
+			json.append(separator).append(bucket == null ? "{\"hour\":" : "{\"start\":");
+			appendString(json, LogTime.formatDateTime(row.epochSecond)).append(",\"action\":");
+			appendString(json, row.action).append(",\"count\":").append(row.count).append('}');
+			separator = ",";
+		}
+		return json.append("]}").toString();
+	}
+	
+	private String domains(ReportSnapshot snapshot, Map<String, String> parameters) {
+		String day = required(parameters, "day");
+		if (day.length() != 10) {
+			throw new IllegalArgumentException("Expected a day as yyyy/MM/dd but was: " + day);
+		}
+		long epochDay = LogTime.epochDayOfSecond(LineFilter.parseTime(day));
+		String by = parameters.getOrDefault("by", "requests");
+		if (by.equals("users")) {
+			return domainsByUsers(day, snapshot.domainsByUsers(epochDay));
+		}
+		if (!by.equals("requests")) {
+			throw new IllegalArgumentException("Expected by=requests or by=users but was: " + by);
+		}
+		StringBuilder json = new StringBuilder(256).append("{\"day\":");
+		appendString(json, day).append(",\"domains\":[");
+		String separator = "";
+		for (ReportSnapshot.DomainRow row : snapshot.domains(epochDay)) {
+			json.append(separator).append("{\"domain\":");
+			appendString(json, row.domain).append(",\"count\":").append(row.count);
+			if (row.approximate) {
+				json.append(",\"error\":").append(row.error);
+			}
+			json.append('}');
+			separator = ",";
+		}
+		return json.append("]}").toString();
+	}
+	
+	private static String domainsByUsers(String day, List<ReportSnapshot.DomainRow> rows) {
+		StringBuilder json = new StringBuilder(256).append("{\"day\":");
+		appendString(json, day).append(",\"by\":\"users\",\"domains\":[");
+		String separator = "";
+		for (ReportSnapshot.DomainRow row : rows) {
+			json.append(separator).append("{\"domain\":");
+			appendString(json, row.domain).append(",\"users\":").append(row.count).append('}');
+			separator = ",";
+		}
+		return json.append("]}").toString();
+	}
+	
+	private String status(ReportSnapshot snapshot, Map<String, String> parameters) {
+		return "{\"reportTime\":" + snapshot.createdMillis() + ",\"ips\":" + snapshot.ipCount() 
+				+ ",\"days\":" + snapshot.dayCount() + "}";
+	}
+	
+	private static Map<String, String> parameters(String rawQuery) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (rawQuery == null) {
+			return parameters;
+		}
+		for (String pair : rawQuery.split("&")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0) {
+				parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8), 
+						URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return parameters;
+	}
+	
+	private static String required(Map<String, String> parameters, String name) {
+		String value = parameters.get(name);
+		if (value == null || value.isEmpty()) {
+			throw new IllegalArgumentException("Missing query parameter: " + name);
+		}
+		return value;
+	}
+	
+	private static String error(String message) {
+		return appendString(new StringBuilder("{\"error\":"), message).append('}').toString();
+	}
+	
+	private static StringBuilder appendString(StringBuilder json, String text) {
+		json.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		return json.append('"');
+	}
+	
+	private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(body);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package loganalyzer;
+
+import static loganalyzer.TestLogs.captureOutput;
+import static loganalyzer.TestLogs.createDataFile;
+import static loganalyzer.TestLogs.writeLines;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public final class AnalyzerMetricsTest {
+	
+	@Test
+	public void metricsTest_CountLinesAndBytesInEveryMode() throws Exception {
+		createDataFile("test-metrics.txt", 20000);
+		long fileSize = new File("test-metrics.txt").length();
+		
+		for (int mode = 0; mode < 3; mode++) {
+			AnalyzerMetrics metrics = new AnalyzerMetrics();
+			LogUsageData usageData = mode == 1 ? new LogUsageData("test-metrics.txt", 4) 
+					: new LogUsageData(new MappedLogFile("test-metrics.txt"));
+			if (mode == 2) {
+				usageData.enablePipeline(2);
+			}
+			usageData.setMetrics(metrics);
+			captureOutput(usageData);
+			
+			assertEquals(20000, metrics.getLinesRead());
+			assertEquals(fileSize, metrics.getBytesRead());
+			assertEquals(20000, metrics.getEntriesParsed());
+			assertEquals(0, metrics.getParseFailures());
+			assertEquals(5 * 28, metrics.getDomainKeys());
+			assertTrue(metrics.getUserKeys() > 0);
+		}
+	}
+	
+	@Test
+	public void metricsTest_ParseFailureIsCounted() throws Exception {
+		createDataFile("test-metrics-failure.txt", 5000);
+		writeLines("test-metrics-failure.txt", 0, 1, true, i -> "2014/13/01 00:00:00, 10.0.0.1, GET, google.com");
+		AnalyzerMetrics metrics = new AnalyzerMetrics();
+		LogUsageData usageData = new LogUsageData(new MappedLogFile("test-metrics-failure.txt"));
+		usageData.setMetrics(metrics);
+		
+		assertTrue(captureOutput(usageData).startsWith("java.text.ParseException"));
+		assertEquals(5001, metrics.getLinesRead());
+		assertEquals(5000, metrics.getEntriesParsed());
+		assertEquals(1, metrics.getParseFailures());
+		assertTrue(metrics.progressLine().startsWith("Progress: 5001 lines"));
+	}
+	
+	@Test
+	public void registerMBeanTest_AttributesAreReadable() throws Exception {
+		AnalyzerMetrics metrics = new AnalyzerMetrics();
+		metrics.addLines(10, 100, 9);
+		metrics.registerMBean();
+		try {
+			ObjectName name = new ObjectName(AnalyzerMetrics.OBJECT_NAME);
+			assertEquals(10L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "LinesRead"));
+			assertEquals(100L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BytesRead"));
+			assertEquals(9L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "EntriesParsed"));
+		} finally {
+			metrics.stop();
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(AnalyzerMetrics.OBJECT_NAME)));
+	}
+}
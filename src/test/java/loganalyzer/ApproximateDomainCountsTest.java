@@ -0,0 +1,64 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public final class ApproximateDomainCountsTest {
+	
+	@Test
+	public void forEachSelectedTest_FindsHeavyHittersWithinBounds() throws ParseException, IOException {
+		ApproximateDomainCounts counts = new ApproximateDomainCounts();
+		// Far more distinct domains than the summary can track, plus two popular ones
+		for (int i = 0; i < 20000; i++) {
+			add(counts, "2014/11/24 09:01:01, 10.0.0.1, GET, rare" + i + ".com");
+			if (i % 4 == 0) {
+				add(counts, "2014/11/24 09:01:01, 10.0.0.1, GET, google.com");
+			}
+			if (i % 10 == 0) {
+				add(counts, "2014/11/24 09:01:01, 10.0.0.1, GET, amazon.com");
+			}
+		}
+		
+		List<String> domains = new ArrayList<String>();
+		List<long[]> bounds = new ArrayList<long[]>();
+		counts.forEachSelected(2, true, (epochDay, domain, count, error) -> {
+			assertEquals("2014/11/24", LogTime.formatDate(epochDay));
+			domains.add(domain);
+			bounds.add(new long[] {count - error, count});
+		});
+		
+		assertEquals("google.com", domains.get(0));
+		assertEquals("amazon.com", domains.get(1));
+		assertTrue(bounds.get(0)[0] <= 5000 && 5000 <= bounds.get(0)[1]);
+		assertTrue(bounds.get(1)[0] <= 2000 && 2000 <= bounds.get(1)[1]);
+	}
+	
+	@Test
+	public void mergeTest_FewDomainsAreExact() throws ParseException, IOException {
+		ApproximateDomainCounts counts = new ApproximateDomainCounts();
+		ApproximateDomainCounts other = new ApproximateDomainCounts();
+		add(counts, "2014/11/24 09:01:01, 10.0.0.1, GET, google.com");
+		add(other, "2014/11/24 10:01:01, 10.0.0.2, GET, google.com");
+		add(other, "2014/11/24 10:01:01, 10.0.0.2, GET, amazon.com");
+		add(other, "2014/11/25 10:01:01, 10.0.0.2, GET, amazon.com");
+		
+		counts.merge(other);
+		
+		List<String> lines = new ArrayList<String>();
+		counts.forEachSelected(2, false, (epochDay, domain, count, error) -> 
+				lines.add(LogTime.formatDate(epochDay) + " " + domain + " " + count + " +/- " + error));
+		assertEquals(2, lines.size());
+		assertEquals("2014/11/24 amazon.com 1 +/- 0", lines.get(0));
+		assertEquals("2014/11/25 amazon.com 1 +/- 0", lines.get(1));
+	}
+	
+	private void add(ApproximateDomainCounts counts, String logLine) throws ParseException {
+		counts.add(new LogDataEntry(logLine));
+	}
+}
@@ -0,0 +1,66 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public final class ByteDictionaryTest {
+	
+	@Test
+	public void idTest_DenseIdsInFirstSeenOrder() {
+		ByteDictionary dictionary = new ByteDictionary(1000);
+		ByteBuffer line = ByteBuffer.wrap("GET,POST,GET,\u00fcber.com,POST".getBytes(StandardCharsets.UTF_8));
+		
+		assertEquals(0, dictionary.id(line, 0, 3));
+		assertEquals(1, dictionary.id(line, 4, 8));
+		assertEquals(0, dictionary.id(line, 9, 12));
+		assertEquals(2, dictionary.id(line, 13, 22));
+		assertEquals(1, dictionary.id(line, 23, 27));
+		assertEquals(3, dictionary.size());
+		
+		assertEquals("GET", dictionary.text(0));
+		assertEquals("POST", dictionary.text(1));
+		assertEquals("\u00fcber.com", dictionary.text(2));
+		assertEquals(2, dictionary.id("\u00fcber.com"));
+	}
+	
+	@Test
+	public void idTest_ManyValuesAndOtherDictionary() {
+		ByteDictionary dictionary = new ByteDictionary(100000);
+		for (int i = 0; i < 50000; i++) {
+			assertEquals(i, dictionary.id("domain" + i + ".com"));
+		}
+		
+		ByteDictionary other = new ByteDictionary(100000);
+		assertEquals(0, other.id("new.com"));
+		assertEquals(1, other.id("domain49999.com"));
+		assertEquals(49999, dictionary.id(other, 1));
+		assertEquals(50000, dictionary.id(other, 0));
+		assertEquals(50001, dictionary.size());
+		assertEquals("domain123.com", dictionary.text(123));
+	}
+	
+	@Test
+	public void clearTest_IdsStartAgain() {
+		ByteDictionary dictionary = new ByteDictionary(10);
+		dictionary.id("google.com");
+		dictionary.id("amazon.com");
+		dictionary.clear();
+		
+		assertEquals(0, dictionary.size());
+		assertEquals(0, dictionary.id("amazon.com"));
+		assertEquals("amazon.com", dictionary.text(0));
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void idTest_MaxSizeIsEnforced() {
+		ByteDictionary dictionary = new ByteDictionary(2);
+		dictionary.id("GET");
+		dictionary.id("POST");
+		dictionary.id("GET");
+		dictionary.id("PUT");
+	}
+}
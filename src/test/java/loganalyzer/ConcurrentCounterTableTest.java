@@ -0,0 +1,45 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public final class ConcurrentCounterTableTest {
+	
+	@Test
+	public void add_ThreadsCountSameKeysWhileTableGrows() throws InterruptedException {
+		ConcurrentCounterTable table = new ConcurrentCounterTable();
+		int threadCount = 8;
+		int keyCount = 50000;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < threadCount; t++) {
+			int offset = t * 977;
+			Thread thread = new Thread(() -> {
+				// Every thread adds every key, starting at a different one
+				for (int i = 0; i < keyCount; i++) {
+					int key = (i + offset) % keyCount;
+					table.add(key % 30, -key, (long) key << 32, key % 3 + 1);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		assertEquals(keyCount, table.size());
+		long[] total = new long[1];
+		table.forEach((key0, key1, key2, count) -> {
+			int key = (int) -key1;
+			assertEquals(key % 30, key0);
+			assertEquals((long) key << 32, key2);
+			assertEquals(threadCount * (key % 3 + 1), count);
+			total[0]++;
+		});
+		assertEquals(keyCount, total[0]);
+	}
+}
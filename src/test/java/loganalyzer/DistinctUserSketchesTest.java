@@ -0,0 +1,97 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+
+import org.junit.Test;
+
+public final class DistinctUserSketchesTest {
+	private static final long DAY = 16398;
+	
+	@Test
+	public void estimate_WithinErrorBoundsAndIgnoresRepeatedIps() throws ParseException {
+		DistinctUserSketches sketches = new DistinctUserSketches();
+		for (int i = 0; i < 20000; i++) {
+			sketches.add(DAY, 0, entry(i % 10000));
+			sketches.add(DAY, 1, entry(i % 5));
+		}
+		
+		// Three standard errors of 6.5%
+		assertEquals(10000, sketches.estimate(DAY, 0), 10000 * 0.2);
+		assertEquals(5, sketches.estimate(DAY, 1));
+		assertEquals(0, sketches.estimate(DAY, 2));
+		assertEquals(0, sketches.estimate(DAY + 1, 0));
+	}
+	
+	@Test
+	public void addAll_MergedSketchesEqualSketchOfAllIps() throws ParseException, IOException {
+		DistinctUserSketches all = new DistinctUserSketches();
+		DistinctUserSketches first = new DistinctUserSketches();
+		DistinctUserSketches second = new DistinctUserSketches();
+		for (int i = 0; i < 3000; i++) {
+			// Domain ids of the second half are shifted by 10, like ids of another dictionary
+			all.add(DAY + i % 3, i % 50, entry(i));
+			if (i < 2000) {
+				first.add(DAY + i % 3, i % 50, entry(i));
+			} else {
+				second.add(DAY + i % 3, i % 50 + 10, entry(i));
+			}
+		}
+		first.addAll(second, id -> id - 10);
+		
+		ByteDictionary domains = new ByteDictionary(1000);
+		for (int id = 0; id < 50; id++) {
+			domains.id("domain" + id + ".com");
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		first.writeTo(new DataOutputStream(bytes), domains);
+		DistinctUserSketches read = new DistinctUserSketches();
+		read.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), domains);
+		
+		assertEquals(150, read.size());
+		for (int day = 0; day < 3; day++) {
+			for (int domainId = 0; domainId < 50; domainId++) {
+				assertEquals(all.estimate(DAY + day, domainId), first.estimate(DAY + day, domainId));
+				assertEquals(all.estimate(DAY + day, domainId), read.estimate(DAY + day, domainId));
+			}
+		}
+	}
+	
+	@Test
+	public void add_KeysSpanSeveralPages() throws ParseException {
+		DistinctUserSketches sketches = new DistinctUserSketches();
+		int keyCount = 3 * DistinctUserSketches.PAGE_ENTRIES + 5;
+		for (int i = 0; i < keyCount; i++) {
+			sketches.add(DAY, i, entry(i % 3));
+			sketches.add(DAY, i, entry(i % 3 + 1));
+		}
+		
+		assertEquals(keyCount, sketches.size());
+		for (int i = 0; i < keyCount; i++) {
+			assertEquals(2, sketches.estimate(DAY, i));
+		}
+	}
+	
+	@Test
+	public void pageOffset_StaysInPageBeyondIntRegisterOffsets() {
+		// The register offset of key 2^22 doesn't fit an int anymore
+		for (int entry : new int[] {(1 << 22) - 1, 1 << 22, Integer.MAX_VALUE - 2}) {
+			assertEquals(entry / DistinctUserSketches.PAGE_ENTRIES, DistinctUserSketches.page(entry));
+			assertEquals((long) (entry % DistinctUserSketches.PAGE_ENTRIES) * DistinctUserSketches.REGISTERS, 
+					DistinctUserSketches.pageOffset(entry));
+			assertTrue(DistinctUserSketches.pageOffset(entry) + DistinctUserSketches.REGISTERS 
+					<= DistinctUserSketches.PAGE_ENTRIES * DistinctUserSketches.REGISTERS);
+		}
+	}
+	
+	private static LogDataEntry entry(int user) throws ParseException {
+		String ip = user % 2 == 0 ? "10." + (user >> 16) + "." + ((user >> 8) & 255) + "." + (user & 255) : "2001:db8::" + Integer.toHexString(user);
+		return new LogDataEntry("2014/11/24 10:00:00, " + ip + ", GET, google.com");
+	}
+}
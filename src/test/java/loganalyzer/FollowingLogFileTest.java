@@ -0,0 +1,88 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+public final class FollowingLogFileTest {
+	private String sampleLogEntry = "2014/11/24 09:01:01, 10.0.0.1, GET, google.com";
+	private String otherLogEntry = "2014/11/25 13:01:01, 10.0.0.2, POST, theonion.com";
+	
+	@Test
+	public void nextLineTest_ReadsAppendedLines() throws IOException {
+		append("test-follow.txt", sampleLogEntry + "\n", false);
+		FollowingLogFile logFile = new FollowingLogFile("test-follow.txt");
+		LineSlice line = new LineSlice();
+		
+		assertTrue(logFile.nextLine(line));
+		assertEquals(sampleLogEntry, line.toString());
+		assertFalse(logFile.nextLine(line));
+		
+		// Incomplete lines are held back until their newline is written
+		append("test-follow.txt", otherLogEntry.substring(0, 10), true);
+		assertFalse(logFile.nextLine(line));
+		append("test-follow.txt", otherLogEntry.substring(10) + "\n", true);
+		assertTrue(logFile.nextLine(line));
+		assertEquals(otherLogEntry, line.toString());
+		assertEquals(sampleLogEntry.length() + 1, line.fileOffset());
+		assertEquals(sampleLogEntry.length() + otherLogEntry.length() + 2, logFile.position());
+		logFile.close();
+	}
+	
+	@Test
+	public void nextLineTest_TruncatedFileIsReadAgain() throws IOException {
+		append("test-follow-truncate.txt", sampleLogEntry + "\n" + sampleLogEntry + "\n", false);
+		FollowingLogFile logFile = new FollowingLogFile("test-follow-truncate.txt");
+		LineSlice line = new LineSlice();
+		assertTrue(logFile.nextLine(line));
+		assertTrue(logFile.nextLine(line));
+		
+		append("test-follow-truncate.txt", otherLogEntry + "\n", false);
+		assertTrue(logFile.nextLine(line));
+		assertEquals(otherLogEntry, line.toString());
+		assertFalse(logFile.nextLine(line));
+		logFile.close();
+	}
+	
+	@Test
+	public void nextLineTest_BigLogReadInChunks() throws IOException {
+		// Lines cross the chunk boundaries, and one line is longer than a whole chunk
+		StringBuilder longLine = new StringBuilder("2014/11/24 09:01:01, 10.0.0.1, GET, ");
+		while (longLine.length() < 3 * 1024 * 1024) {
+			longLine.append("long.");
+		}
+		longLine.append("com");
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 50000; i++) {
+			text.append(i % 2 == 0 ? sampleLogEntry : otherLogEntry).append('\n');
+		}
+		text.append(longLine).append('\n').append(sampleLogEntry).append('\n');
+		append("test-follow-big.txt", text.toString(), false);
+		
+		FollowingLogFile logFile = new FollowingLogFile("test-follow-big.txt");
+		LineSlice line = new LineSlice();
+		long offset = 0;
+		for (int i = 0; i < 50000; i++) {
+			assertTrue(logFile.nextLine(line));
+			assertEquals(i % 2 == 0 ? sampleLogEntry : otherLogEntry, line.toString());
+			assertEquals(offset, line.fileOffset());
+			offset += line.length() + 1;
+		}
+		assertTrue(logFile.nextLine(line));
+		assertEquals(longLine.toString(), line.toString());
+		assertTrue(logFile.nextLine(line));
+		assertEquals(sampleLogEntry, line.toString());
+		assertFalse(logFile.nextLine(line));
+		assertEquals(text.length(), logFile.position());
+		logFile.close();
+	}
+	
+	private void append(String fileName, String text, boolean append) throws IOException {
+		PrintWriter writer = new PrintWriter(new FileOutputStream(fileName, append));
+		writer.print(text);
+		writer.close();
+	}
+}
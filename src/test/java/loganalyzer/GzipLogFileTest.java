@@ -0,0 +1,56 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+public final class GzipLogFileTest {
+	private String sampleLogEntry = "2014/11/24 09:01:01, 10.0.0.1, GET, google.com";
+	private String otherLogEntry = "2014/11/25 13:01:01, 10.0.0.2, POST, theonion.com";
+	
+	@Test
+	public void nextLineTest_CompressedLines() throws IOException {
+		writeGzip("test-gzip.txt.gz", false, "\n" + sampleLogEntry + "\r\n" + otherLogEntry);
+		GzipLogFile logFile = new GzipLogFile("test-gzip.txt.gz");
+		LineSlice line = new LineSlice();
+		
+		assertTrue(logFile.nextLine(line));
+		assertTrue(line.isEmpty());
+		assertTrue(logFile.nextLine(line));
+		assertEquals(sampleLogEntry, line.toString());
+		assertEquals(1, line.fileOffset());
+		// Last line has no line terminator
+		assertTrue(logFile.nextLine(line));
+		assertEquals(otherLogEntry, line.toString());
+		assertFalse(logFile.nextLine(line));
+		assertEquals("", logFile.readLine());
+	}
+	
+	@Test
+	public void nextLineTest_ConcatenatedMembersAndLongLine() throws IOException {
+		StringBuilder longDomain = new StringBuilder();
+		while (longDomain.length() < 3 * 1024 * 1024) {
+			longDomain.append("sub.");
+		}
+		String longLine = "2014/11/24 09:01:01, 10.0.0.1, GET, " + longDomain + "com";
+		writeGzip("test-gzip-members.txt.gz", false, sampleLogEntry + "\n" + longLine + "\n");
+		writeGzip("test-gzip-members.txt.gz", true, otherLogEntry + "\n");
+		GzipLogFile logFile = new GzipLogFile("test-gzip-members.txt.gz");
+		
+		assertEquals(sampleLogEntry, logFile.readLine());
+		assertEquals(longLine, logFile.readLine());
+		assertEquals(otherLogEntry, logFile.readLine());
+		assertFalse(logFile.nextLine(new LineSlice()));
+	}
+	
+	private void writeGzip(String fileName, boolean append, String content) throws IOException {
+		try (OutputStream output = new GZIPOutputStream(new FileOutputStream(fileName, append))) {
+			output.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
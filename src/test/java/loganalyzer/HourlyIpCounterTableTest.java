@@ -0,0 +1,103 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public final class HourlyIpCounterTableTest {
+	
+	@Test
+	public void forEachSortedTest_SameOrderAsTextKeys() throws ParseException, IOException {
+		HourlyIpCounterTable table = new HourlyIpCounterTable();
+		increment(table, "2014/11/24 09:01:01, 10.0.0.10, GET, google.com");
+		increment(table, "2014/11/24 09:59:59, 10.0.0.1, POST, google.com");
+		increment(table, "2014/11/24 09:01:01, 10.0.0.1, GET, google.com");
+		increment(table, "2014/11/24 08:01:01, 10.0.0.1, GET, google.com");
+		increment(table, "2014/11/24 09:30:00, 10.0.0.1, GET, google.com");
+		increment(table, "2014/11/24 09:01:01, 2001:db8::1, GET, google.com");
+		increment(table, "2014/11/24 09:01:01, 2001:DB8::1, GET, google.com");
+		increment(table, "2014/11/24 09:01:01, 010.0.0.1, GET, google.com");
+		
+		List<String> expected = new ArrayList<String>();
+		expected.add("010.0.0.1 2014/11/24 09:00:00 GET 1");
+		expected.add("10.0.0.1 2014/11/24 08:00:00 GET 1");
+		expected.add("10.0.0.1 2014/11/24 09:00:00 GET 2");
+		expected.add("10.0.0.1 2014/11/24 09:00:00 POST 1");
+		expected.add("10.0.0.10 2014/11/24 09:00:00 GET 1");
+		expected.add("2001:DB8::1 2014/11/24 09:00:00 GET 1");
+		expected.add("2001:db8::1 2014/11/24 09:00:00 GET 1");
+		
+		assertEquals(expected, report(table));
+	}
+	
+	@Test
+	public void addAllTest_MergesMatchingKeys() throws ParseException, IOException {
+		HourlyIpCounterTable table = new HourlyIpCounterTable();
+		HourlyIpCounterTable other = new HourlyIpCounterTable();
+		increment(table, "2014/11/24 09:01:01, 10.0.0.1, GET, google.com");
+		increment(other, "2014/11/24 09:02:01, 10.0.0.1, POST, google.com");
+		increment(other, "2014/11/24 09:03:01, 10.0.0.1, GET, google.com");
+		increment(other, "2014/11/24 09:03:01, some-host, GET, google.com");
+		
+		table.addAll(other);
+		
+		assertEquals(3, table.size());
+		assertEquals("10.0.0.1 2014/11/24 09:00:00 GET 2", report(table).get(0));
+		assertEquals("some-host 2014/11/24 09:00:00 GET 1", report(table).get(2));
+	}
+	
+	@Test
+	public void incrementTest_ManyKeysGrowTable() throws ParseException, IOException {
+		HourlyIpCounterTable table = new HourlyIpCounterTable();
+		for (int i = 0; i < 5000; i++) {
+			increment(table, "2014/11/24 09:01:01, 10.0." + (i / 256) + "." + (i % 256) + ", GET, google.com");
+			increment(table, "2014/11/24 09:01:01, 10.0." + (i / 256) + "." + (i % 256) + ", GET, google.com");
+		}
+		assertEquals(5000, table.size());
+		assertEquals("10.0.0.0 2014/11/24 09:00:00 GET 2", report(table).get(0));
+	}
+	
+	@Test
+	public void offHeapTest_SameCountsInMemoryAndSpilled() throws ParseException, IOException {
+		Path spillDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+		HourlyIpCounterTable heap = new HourlyIpCounterTable();
+		// Enough memory for the first slots only, the grown tables are spilled
+		HourlyIpCounterTable offHeap = HourlyIpCounterTable.offHeap(new OffHeapCounterSlots.Budget(100000, spillDirectory));
+		HourlyIpCounterTable spilled = HourlyIpCounterTable.offHeap(new OffHeapCounterSlots.Budget(0, spillDirectory));
+		HourlyIpCounterTable partial = spilled.newTable();
+		for (int i = 0; i < 20000; i++) {
+			String line = String.format("2014/11/24 %02d:01:01, 10.0.%d.%d, %s, google.com", 
+					i % 24, i / 256 % 256, i % 256, i % 3 == 0 ? "POST" : "GET");
+			increment(heap, line);
+			increment(offHeap, line);
+			increment(i % 2 == 0 ? spilled : partial, line);
+		}
+		spilled.addAll(partial);
+		partial.release();
+		
+		assertEquals(heap.size(), offHeap.size());
+		assertEquals(heap.size(), spilled.size());
+		assertEquals(report(heap), report(offHeap));
+		assertEquals(report(heap), report(spilled));
+		offHeap.release();
+		spilled.release();
+	}
+	
+	private void increment(HourlyIpCounterTable table, String logLine) throws ParseException {
+		table.increment(new LogDataEntry(logLine));
+	}
+	
+	private List<String> report(HourlyIpCounterTable table) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		table.forEachSorted((userIp, epochHour, action, count) -> 
+				lines.add(userIp + " " + LogTime.formatHour(epochHour) + " " + action + " " + count));
+		return lines;
+	}
+}
@@ -0,0 +1,108 @@
+package loganalyzer;
+
+import static loganalyzer.TestLogs.captureOutput;
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public final class LineFilterTest {
+	
+	@Test
+	public void test_ChecksColumnsOnRawBytes() {
+		LineFilter filter = new LineFilter();
+		filter.setTimeWindow(LineFilter.parseTime("2014/11/02"), LineFilter.parseTime("2014/11/03 12:00:00"));
+		filter.setIpRange("10.1.0.0/16");
+		filter.setAction("GET");
+		filter.setDomainSuffix("example.com");
+		
+		assertEquals(LineFilter.Result.MATCH, test(filter, "2014/11/02 00:00:00, 10.1.2.3, GET, example.com"));
+		assertEquals(LineFilter.Result.MATCH, test(filter, "2014/11/03 11:59:59,10.1.255.255,GET,www.example.com"));
+		assertEquals(LineFilter.Result.SKIP, test(filter, "2014/11/01 23:59:59, 10.1.2.3, GET, example.com"));
+		assertEquals(LineFilter.Result.SKIP, test(filter, "2014/11/03 12:00:00, 10.1.2.3, GET, example.com"));
+		assertEquals(LineFilter.Result.SKIP, test(filter, "2014/11/02 10:00:00, 10.2.2.3, GET, example.com"));
+		assertEquals(LineFilter.Result.SKIP, test(filter, "2014/11/02 10:00:00, 10.1.2.3, POST, example.com"));
+		assertEquals(LineFilter.Result.SKIP, test(filter, "2014/11/02 10:00:00, 10.1.2.3, GET, myexample.com"));
+		
+		// Left to the parser, which reports the error or decodes the time
+		assertEquals(LineFilter.Result.MATCH, test(filter, "2014/11/01 10:00:00, 10.2.2.3, GET"));
+		assertEquals(LineFilter.Result.MATCH, test(filter, "2014/11/1 10:00:00, 10.1.2.3, GET, example.com"));
+		
+		filter.setSortedByTime(true);
+		assertEquals(LineFilter.Result.PAST_WINDOW, test(filter, "2014/11/04 00:00:00, 10.1.2.3, GET, example.com"));
+		assertEquals(LineFilter.Result.SKIP, test(filter, "2014/11/01 00:00:00, 10.1.2.3, GET, example.com"));
+	}
+	
+	@Test
+	public void test_IpPrefixesAndNetworks() {
+		LineFilter filter = new LineFilter();
+		filter.setIpRange("192.168.");
+		assertEquals(LineFilter.Result.MATCH, test(filter, "2014/11/02 00:00:00, 192.168.0.1, GET, a.com"));
+		assertEquals(LineFilter.Result.SKIP, test(filter, "2014/11/02 00:00:00, 10.192.168.1, GET, a.com"));
+		
+		filter.setIpRange("2001:db8::/32");
+		assertEquals(LineFilter.Result.MATCH, test(filter, "2014/11/02 00:00:00, 2001:db8:1::5, GET, a.com"));
+		assertEquals(LineFilter.Result.SKIP, test(filter, "2014/11/02 00:00:00, 2001:db9::5, GET, a.com"));
+		assertEquals(LineFilter.Result.SKIP, test(filter, "2014/11/02 00:00:00, 192.168.0.1, GET, a.com"));
+		
+		filter.setIpRange("0.0.0.0/0");
+		assertEquals(LineFilter.Result.MATCH, test(filter, "2014/11/02 00:00:00, 255.255.255.255, GET, a.com"));
+		
+		try {
+			filter.setIpRange("10.1/16");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Invalid IP range: 10.1/16", e.getMessage());
+		}
+	}
+	
+	@Test
+	public void displayAllData_SortedLogIsSearchedAndSameAsUnsorted() throws Exception {
+		createDataFile("test-filter.txt", 20000);
+		long from = LineFilter.parseTime("2014/11/10 07:00:00");
+		long to = LineFilter.parseTime("2014/11/20");
+		assertEquals(0, SortedLogSearch.firstLineAtOrAfter("test-filter.txt", 0));
+		long windowStart = SortedLogSearch.firstLineAtOrAfter("test-filter.txt", from);
+		assertTrue(windowStart > 0);
+		
+		LineFilter unsorted = new LineFilter();
+		unsorted.setTimeWindow(from, to);
+		unsorted.setAction("GET");
+		LineFilter sorted = new LineFilter();
+		sorted.setTimeWindow(from, to);
+		sorted.setAction("GET");
+		sorted.setSortedByTime(true);
+		
+		String expected = captureOutput(filtered(new LogUsageData(new MappedLogFile("test-filter.txt")), unsorted));
+		assertTrue(expected.contains("2014/11/10"));
+		assertFalse(expected.contains("2014/11/09"));
+		assertFalse(expected.contains("2014/11/20"));
+		assertFalse(expected.contains("POST"));
+		
+		assertEquals(expected, captureOutput(filtered(new LogUsageData(new MappedLogFile("test-filter.txt")), sorted)));
+		assertEquals(expected, captureOutput(filtered(new LogUsageData("test-filter.txt", 4), sorted)));
+		LogUsageData pipelined = filtered(new LogUsageData(new MappedLogFile("test-filter.txt")), sorted);
+		pipelined.enablePipeline(2);
+		assertEquals(expected, captureOutput(pipelined));
+	}
+	
+	private static LineFilter.Result test(LineFilter filter, String line) {
+		return filter.test(LineSlice.wrap(line.getBytes(StandardCharsets.UTF_8)));
+	}
+	
+	private static LogUsageData filtered(LogUsageData usageData, LineFilter filter) {
+		usageData.setFilter(filter);
+		return usageData;
+	}
+	
+	/**
+	 * A line every 2 minutes from 2014/11/01, so a log is sorted by time.
+	 */
+	private void createDataFile(String fileName, int lineCount) throws FileNotFoundException {
+		TestLogs.writeLines(fileName, 0, lineCount, false, i -> String.format("2014/11/%02d %02d:%02d:00, 10.0.%d.%d, %s, %s", 
+				1 + i * 2 / 1440, i * 2 / 60 % 24, i * 2 % 60, i % 3, i % 17, i % 5 == 0 ? "POST" : "GET", 
+				TestLogs.DOMAINS[(i % 13) * (i % 7) % TestLogs.DOMAINS.length]));
+	}
+}
@@ -63,5 +63,60 @@ public final class LogDataEntryTest {
 		}
 	}
 	
+	@Test(expected=ParseException.class)
+	public void LogDataEntryTest_invalidDayOfMonth() throws ParseException {
+		logEntry = new LogDataEntry("2014/02/29 09:01:01, 10.0.0.1, GET, google.com");
+	}
+	
+	@Test(expected=ParseException.class)
+	public void LogDataEntryTest_trailingCharactersAfterTime() throws ParseException {
+		logEntry = new LogDataEntry("2014/11/24 09:01:01 , 10.0.0.1, GET, google.com");
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void LogDataEntryTest_tooManyDataColumns() throws ParseException {
+		logEntry = new LogDataEntry(sampleLogEntry + ", extra");
+	}
+	
+	@Test
+	public void LogDataEntryTest_trailingEmptyColumnsIgnored() throws ParseException {
+		// Same as String.split(","), which drops trailing empty strings
+		logEntry = new LogDataEntry(sampleLogEntry + ",,");
+		assertEquals("2014/11/24 google.com", logEntry.domainData());
+	}
+	
+	@Test
+	public void userDataTest_leapDayAndShortFields() throws ParseException {
+		logEntry = new LogDataEntry("2016/2/29 7:5:9,10.0.0.1 ,POST,  github.com ");
+		assertEquals("10.0.0.1 2016/02/29 07:00:00 POST", logEntry.userData());
+		assertEquals("2016/02/29 github.com", logEntry.domainData());
+	}
+	
+	@Test
+	public void parseTest_ReusedEntry() throws ParseException {
+		logEntry = new LogDataEntry();
+		logEntry.parse(LineSlice.wrap(sampleLogEntry.getBytes()));
+		assertEquals("google.com", logEntry.domain());
+		logEntry.parse(LineSlice.wrap("1999/12/31 23:59:59, 10.0.0.2, POST, amazon.com".getBytes()));
+		assertEquals("10.0.0.2 1999/12/31 23:00:00 POST", logEntry.userData());
+		assertEquals("amazon.com", logEntry.domain());
+	}
 	
+	@Test
+	public void tryParseTest_MalformedLinesKeepEntry() throws ParseException {
+		logEntry = new LogDataEntry(sampleLogEntry);
+		LineSlice badDate = LineSlice.wrap("2014/11/24 09:61:01, 10.0.0.2, POST, amazon.com".getBytes());
+		assertFalse(logEntry.tryParse(badDate));
+		assertFalse(logEntry.tryParse(LineSlice.wrap(logEntry_tooFewArguments.getBytes())));
+		assertEquals("10.0.0.1 2014/11/24 09:00:00 GET", logEntry.userData());
+		
+		assertFalse(logEntry.tryParse(badDate));
+		try {
+			logEntry.throwParseError(badDate);
+			fail();
+		} catch (ParseException e) {
+			assertEquals("2014/11/24 09:61:01", e.getMessage());
+			assertEquals(19, e.getErrorOffset());
+		}
+	}
 }
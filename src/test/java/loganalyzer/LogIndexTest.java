@@ -0,0 +1,71 @@
+package loganalyzer;
+
+import static loganalyzer.TestLogs.captureOutput;
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.ParseException;
+
+import org.junit.Test;
+
+public final class LogIndexTest {
+	
+	@Test
+	public void readFromIndexTest_SameReportsAsLog() throws IOException, ParseException {
+		createDataFile("test-index.txt", 20000);
+		assertEquals(20000, LogIndexWriter.write("test-index.txt", "test-index.idx"));
+		
+		String expected = captureOutput(new LogUsageData(new MappedLogFile("test-index.txt")));
+		LogUsageData indexed = new LogUsageData(new MappedLogFile("test-index.txt"));
+		indexed.readFromIndex("test-index.idx");
+		
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, captureOutput(indexed));
+	}
+	
+	@Test
+	public void readFromIndexTest_TopDomainsOfInterleavedDays() throws IOException, ParseException {
+		// Days alternate, so each day is made of many runs
+		createDataFile("test-index-interleaved.txt", 5000);
+		PrintWriter writer = new PrintWriter(new FileOutputStream("test-index-interleaved.txt", true));
+		writer.println("");
+		writer.println("2014/12/31 23:59:59, 10.9.9.9, GET, after-gap.com");
+		writer.close();
+		assertEquals(5000, LogIndexWriter.write("test-index-interleaved.txt", "test-index-interleaved.idx"));
+		
+		LogUsageData fromLog = new LogUsageData(new MappedLogFile("test-index-interleaved.txt"));
+		fromLog.setTopDomainCount(3);
+		LogUsageData indexed = new LogUsageData(new MappedLogFile("test-index-interleaved.txt"));
+		indexed.setTopDomainCount(3);
+		indexed.readFromIndex("test-index-interleaved.idx");
+		
+		String expected = captureOutput(fromLog);
+		assertFalse(expected.contains("after-gap.com"));
+		assertEquals(expected, captureOutput(indexed));
+	}
+	
+	@Test(expected=IOException.class)
+	public void logIndexTest_ChangedLogIsRejected() throws IOException, ParseException {
+		createDataFile("test-index-changed.txt", 1000);
+		LogIndexWriter.write("test-index-changed.txt", "test-index-changed.idx");
+		PrintWriter writer = new PrintWriter(new FileOutputStream("test-index-changed.txt", true));
+		writer.println("2014/12/31 23:59:59, 10.9.9.9, GET, appended.com");
+		writer.close();
+		
+		new LogIndex("test-index-changed.idx", "test-index-changed.txt");
+	}
+	
+	/**
+	 * Interleaved days, and IPs and domains of every kind.
+	 */
+	private void createDataFile(String fileName, int lineCount) throws FileNotFoundException {
+		String[] domains = {"google.com", "amazon.com", "github.com", "theonion.com", "example.org", "2001:db8::1.net"};
+		String[] ips = {"10.0.0.1", "10.0.0.12", "2001:db8::1", "::1", "localhost"};
+		TestLogs.writeLines(fileName, 0, lineCount, false, i -> String.format("2014/11/%02d %02d:%02d:%02d, %s, %s, %s", 
+				1 + (i % 9) * 3, (i / 7) % 24, i % 60, (i * 7) % 60, ips[i % ips.length], 
+				i % 5 == 0 ? "POST" : "GET", domains[(i % 13) * (i % 7) % domains.length]));
+	}
+}
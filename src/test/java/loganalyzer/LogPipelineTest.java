@@ -0,0 +1,112 @@
+package loganalyzer;
+
+import static loganalyzer.TestLogs.captureOutput;
+import static loganalyzer.TestLogs.createDataFile;
+import static loganalyzer.TestLogs.writeLines;
+import static org.junit.Assert.*;
+
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+public final class LogPipelineTest {
+	
+	@Test
+	public void pipelineTest_SameReportsAsSingleThread() throws Exception {
+		createDataFile("test-pipeline.txt", 30000);
+		// A line longer than a whole batch
+		StringBuilder longDomain = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			longDomain.append("domain");
+		}
+		PrintWriter writer = new PrintWriter(new FileOutputStream("test-pipeline.txt", true));
+		writer.println("2014/11/30 10:00:00, 10.0.0.1, GET, " + longDomain);
+		writer.println("2014/11/30 10:00:01, 10.0.0.1, GET, " + longDomain);
+		writer.println("2014/11/30 10:00:02, 10.0.0.2, GET, google.com");
+		writer.close();
+		
+		for (boolean streaming : new boolean[] {false, true}) {
+			LogUsageData singleThread = new LogUsageData(new MappedLogFile("test-pipeline.txt"));
+			LogUsageData pipelined = new LogUsageData(new MappedLogFile("test-pipeline.txt"));
+			pipelined.enablePipeline(3);
+			singleThread.setTopDomainCount(2);
+			pipelined.setTopDomainCount(2);
+			if (streaming) {
+				singleThread.enableDomainStreaming();
+				pipelined.enableDomainStreaming();
+			}
+			
+			String expected = captureOutput(singleThread);
+			assertTrue(expected.contains(longDomain));
+			assertEquals(expected, captureOutput(pipelined));
+			assertTrue(pipelined.pipelineStatistics().contains("aggregator x1: 30003 lines"));
+		}
+	}
+	
+	@Test
+	public void pipelineTest_StopsAtEmptyLineAndReportsErrors() throws Exception {
+		createDataFile("test-pipeline-gap.txt", 10000);
+		PrintWriter writer = new PrintWriter(new FileOutputStream("test-pipeline-gap.txt", true));
+		writer.println("");
+		writer.println("2014/12/31 23:59:59, 10.9.9.9, GET, after-gap.com");
+		writer.close();
+		
+		LogUsageData pipelined = new LogUsageData(new MappedLogFile("test-pipeline-gap.txt"));
+		pipelined.enablePipeline(2);
+		String output = captureOutput(pipelined);
+		assertFalse(output.contains("after-gap.com"));
+		assertEquals(captureOutput(new LogUsageData(new MappedLogFile("test-pipeline-gap.txt"))), output);
+		
+		createDataFile("test-pipeline-error.txt", 10000);
+		writer = new PrintWriter(new FileOutputStream("test-pipeline-error.txt", true));
+		writer.println("2014/12/31 23:59:59, 10.9.9.9, GET");
+		writer.close();
+		
+		pipelined = new LogUsageData(new MappedLogFile("test-pipeline-error.txt"));
+		pipelined.enablePipeline(2);
+		assertTrue(captureOutput(pipelined).startsWith("java.lang.IllegalArgumentException: Incorrect log format."));
+		
+		// In skip mode, the malformed line is left out and the lines after the empty line are counted
+		pipelined = new LogUsageData(new MappedLogFile("test-pipeline-gap.txt"));
+		pipelined.enablePipeline(2);
+		pipelined.skipMalformedLines(new MalformedLines(0, null));
+		assertTrue(captureOutput(pipelined).contains("after-gap.com"));
+		
+		pipelined = new LogUsageData(new MappedLogFile("test-pipeline-error.txt"));
+		pipelined.enablePipeline(2);
+		pipelined.skipMalformedLines(new MalformedLines(1, null));
+		assertEquals(output, captureOutput(pipelined));
+	}
+	
+	@Test
+	public void pipelineTest_SkipsMalformedLinesInFileOrder() throws Exception {
+		writeLines("test-pipeline-malformed.txt", 0, 30000, false, i -> i % 997 == 500 ? "malformed " + i 
+				: String.format("2014/11/%02d 10:00:00, 10.0.0.%d, GET, domain%d.com", 1 + i * 28 / 30000, i % 50, i % 11));
+		
+		// 30 malformed lines: within the budget, then spending it at the 21st
+		for (int maxErrors : new int[] {100, 20}) {
+			LogUsageData singleThread = new LogUsageData(new MappedLogFile("test-pipeline-malformed.txt"));
+			singleThread.skipMalformedLines(new MalformedLines(maxErrors, "test-pipeline-quarantine-1.txt"));
+			String expected = captureOutput(singleThread);
+			singleThread.malformedLines().close();
+			
+			LogUsageData pipelined = new LogUsageData(new MappedLogFile("test-pipeline-malformed.txt"));
+			pipelined.enablePipeline(4);
+			pipelined.skipMalformedLines(new MalformedLines(maxErrors, "test-pipeline-quarantine-2.txt"));
+			String output = captureOutput(pipelined);
+			pipelined.malformedLines().close();
+			
+			if (maxErrors == 100) {
+				assertEquals(expected, output);
+			} else {
+				assertTrue(output.startsWith("java.lang.IllegalArgumentException: Incorrect log format."));
+			}
+			assertEquals(maxErrors == 100 ? 30 : 20, pipelined.malformedLines().skipped());
+			assertEquals(Files.readAllLines(Paths.get("test-pipeline-quarantine-1.txt")), 
+					Files.readAllLines(Paths.get("test-pipeline-quarantine-2.txt")));
+		}
+	}
+}
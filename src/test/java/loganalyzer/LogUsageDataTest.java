@@ -4,14 +4,23 @@ package loganalyzer;
 
 //import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
-//import java.io.PrintStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 //import org.junit.After;
 //import org.junit.Before;
 import org.junit.Test;
 
+import static loganalyzer.TestLogs.captureOutput;
+import static loganalyzer.TestLogs.createDataFile;
+import static org.junit.Assert.*;
+
 public final class LogUsageDataTest {
 
 	//need to capture System.out.println output
@@ -40,6 +49,186 @@ public final class LogUsageDataTest {
 		//fail("Not yet implemented");
 	}
 	
+	@Test
+	public void displayAllData_ParallelMatchesSingleThreaded() throws IOException {
+		createDataFile("test-usage-large.txt", 100000);
+		
+		String expected = captureOutput(new LogUsageData(new LargeLogFile("test-usage-large.txt")));
+		String actual = captureOutput(new LogUsageData("test-usage-large.txt", 4));
+		
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+	}
+	
+	@Test
+	public void displayAllData_SharedCountersMatchSingleThreaded() throws IOException {
+		createDataFile("test-usage-shared.txt", 100000);
+		
+		String expected = captureOutput(new LogUsageData(new LargeLogFile("test-usage-shared.txt")));
+		LogUsageData shared = new LogUsageData("test-usage-shared.txt", 4);
+		shared.enableSharedCounters();
+		
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, captureOutput(shared));
+	}
+	
+	@Test
+	public void displayAllData_CoarserBucketsRolledUpFromFinest() throws IOException {
+		createDataFile("test-usage-buckets.txt", 20000);
+		
+		String hourly = captureOutput(new LogUsageData(new LargeLogFile("test-usage-buckets.txt")));
+		LogUsageData bucketed = new LogUsageData("test-usage-buckets.txt", 4);
+		bucketed.setTimeBuckets(TimeBuckets.parse("1h,1m"));
+		
+		// The minute counts come first, then the hours summed from them, which match a report counting hours
+		long minuteTotal = 0;
+		StringBuilder rest = new StringBuilder();
+		for (String line : captureOutput(bucketed).split("\n")) {
+			String[] columns = line.split(" ");
+			if (columns.length == 6 && columns[3].equals("1m")) {
+				assertEquals(0, rest.length());
+				minuteTotal += Long.parseLong(columns[5]);
+			} else {
+				rest.append(line).append('\n');
+			}
+		}
+		assertEquals(20000, minuteTotal);
+		assertEquals(hourly, rest.toString());
+	}
+	
+	@Test
+	public void displayAllData_DomainsRankedByDistinctUsers() throws IOException {
+		PrintWriter writer = new PrintWriter("test-usage-distinct.txt", "UTF-8");
+		for (int i = 0; i < 5; i++) {
+			writer.println("2014/11/24 09:01:01, 10.0.0.1, GET, a.com");
+		}
+		for (int i = 0; i < 3; i++) {
+			writer.println("2014/11/24 09:01:01, 10.0.1." + i + ", GET, b.com");
+		}
+		for (int i = 0; i < 2; i++) {
+			writer.println("2014/11/24 09:01:01, 10.0.2." + i + ", GET, c.com");
+		}
+		writer.close();
+		
+		LogUsageData usageData = new LogUsageData(new LargeLogFile("test-usage-distinct.txt"));
+		usageData.enableDistinctUsers();
+		String[] lines = captureOutput(usageData).split("\n");
+		
+		// Second by requests is b.com, second by distinct users c.com
+		assertEquals("2014/11/24 b.com 3", lines[lines.length - 2]);
+		assertEquals("2014/11/24 c.com ~2 users", lines[lines.length - 1]);
+	}
+	
+	@Test
+	public void displayAllData_DistinctUsersParallelMatchesSingleThreaded() throws IOException {
+		createDataFile("test-usage-distinct-large.txt", 50000);
+		
+		LogUsageData single = new LogUsageData(new LargeLogFile("test-usage-distinct-large.txt"));
+		single.enableDistinctUsers();
+		single.setTopDomainCount(3);
+		LogUsageData parallel = new LogUsageData("test-usage-distinct-large.txt", 4);
+		parallel.enableDistinctUsers();
+		parallel.setTopDomainCount(3);
+		String expected = captureOutput(single);
+		
+		assertTrue(expected.contains(" users"));
+		assertEquals(expected, captureOutput(parallel));
+	}
+	
+	@Test
+	public void displayAllData_ParallelStopsAtFirstEmptyLine() throws IOException {
+		createDataFile("test-usage-gap.txt", 100000);
+		PrintWriter writer = new PrintWriter(new java.io.FileOutputStream("test-usage-gap.txt", true));
+		writer.println("");
+		writer.println("2014/12/31 23:59:59, 10.9.9.9, GET, after-gap.com");
+		writer.close();
+		
+		String expected = captureOutput(new LogUsageData(new LargeLogFile("test-usage-gap.txt")));
+		String actual = captureOutput(new LogUsageData("test-usage-gap.txt", 4));
+		
+		assertFalse(actual.contains("after-gap.com"));
+		assertEquals(expected, actual);
+		
+		// Shared counters can't leave out the chunks after the empty line once they are counted
+		LogUsageData shared = new LogUsageData("test-usage-gap.txt", 4);
+		shared.enableSharedCounters();
+		assertEquals(expected, captureOutput(shared));
+		
+		// An empty line ending with "\r\n" halfway through the file
+		List<String> lines = Files.readAllLines(Paths.get("test-usage-gap.txt"));
+		lines.add(50000, "\r");
+		Files.write(Paths.get("test-usage-gap.txt"), lines);
+		expected = captureOutput(new LogUsageData(new LargeLogFile("test-usage-gap.txt")));
+		shared = new LogUsageData("test-usage-gap.txt", 4);
+		shared.enableSharedCounters();
+		
+		assertFalse(expected.contains("2014/11/28"));
+		assertEquals(expected, captureOutput(shared));
+	}
+	
+	@Test
+	public void displayAllData_SkipsMalformedLinesWithinBudget() throws IOException {
+		createDataFile("test-usage-malformed.txt", 100000);
+		String expected = captureOutput(new LogUsageData(new MappedLogFile("test-usage-malformed.txt")));
+		
+		// A blank line and a malformed line every 10000 lines, alternately with a bad date and too few columns
+		List<String> lines = Files.readAllLines(Paths.get("test-usage-malformed.txt"));
+		List<String> corrupted = new ArrayList<String>();
+		for (int i = 0; i < lines.size(); i++) {
+			if (i % 10000 == 5000) {
+				corrupted.add("");
+				corrupted.add(i % 20000 == 5000 ? "2014/11/31 10:00:00, 10.0.0.1, GET, bad-date.com" : "10.0.0.1, GET, bad-columns.com");
+			}
+			corrupted.add(lines.get(i));
+		}
+		Files.write(Paths.get("test-usage-malformed.txt"), corrupted);
+		
+		try (MalformedLines malformedLines = new MalformedLines(10, "test-usage-quarantine.txt")) {
+			LogUsageData single = new LogUsageData(new MappedLogFile("test-usage-malformed.txt"));
+			single.skipMalformedLines(malformedLines);
+			assertEquals(expected, captureOutput(single));
+			assertEquals(10, malformedLines.skipped());
+		}
+		byte[] log = Files.readAllBytes(Paths.get("test-usage-malformed.txt"));
+		List<String> quarantined = Files.readAllLines(Paths.get("test-usage-quarantine.txt"));
+		assertEquals(10, quarantined.size());
+		for (String line : quarantined) {
+			int tab = line.indexOf('\t');
+			String text = line.substring(tab + 1);
+			assertEquals(text, new String(log, Integer.parseInt(line.substring(0, tab)), text.length(), StandardCharsets.UTF_8));
+		}
+		
+		LogUsageData parallel = new LogUsageData("test-usage-malformed.txt", 4);
+		parallel.skipMalformedLines(new MalformedLines(10, null));
+		assertEquals(expected, captureOutput(parallel));
+		
+		// The tenth malformed line has too few columns
+		LogUsageData overBudget = new LogUsageData(new MappedLogFile("test-usage-malformed.txt"));
+		overBudget.skipMalformedLines(new MalformedLines(9, null));
+		assertTrue(captureOutput(overBudget).startsWith("java.lang.IllegalArgumentException: Incorrect log format."));
+	}
+	
+	@Test
+	public void displayAllData_StreamingDomainsMatchesBatchReport() throws IOException {
+		createDataFile("test-usage-stream.txt", 20000);
+		
+		String[] batch = captureOutput(new LogUsageData(new LargeLogFile("test-usage-stream.txt"))).split("\n");
+		LogUsageData streaming = new LogUsageData(new LargeLogFile("test-usage-stream.txt"));
+		streaming.enableDomainStreaming();
+		String[] streamed = captureOutput(streaming).split("\n");
+		
+		// Same lines, but the 28 daily domain lines come first since they are displayed while reading
+		int days = 28;
+		assertEquals(batch.length, streamed.length);
+		for (int i = 0; i < days; i++) {
+			assertEquals(batch[batch.length - days + i], streamed[i]);
+		}
+		for (int i = 0; i < batch.length - days; i++) {
+			assertEquals(batch[i], streamed[days + i]);
+		}
+	}
+	
+	
 	private void createSimpleDataFile(String fileName) throws FileNotFoundException, UnsupportedEncodingException{
 		PrintWriter writer = new PrintWriter(fileName, "UTF-8");
 		writer.println("2014/11/24 09:01:01, 10.0.0.1, GET, google.com");
@@ -0,0 +1,35 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public final class MalformedLinesTest {
+	
+	@Test
+	public void skip_QuarantinesLinesWithinBudget() throws IOException {
+		try (MalformedLines malformedLines = new MalformedLines(2, "test-malformed-quarantine.txt")) {
+			assertTrue(malformedLines.skip(LineSlice.wrap("bad line".getBytes()), null));
+			assertTrue(malformedLines.skip(LineSlice.wrap("2014/11/24, 10.0.0.1".getBytes()), "logs/a.log"));
+			assertFalse(malformedLines.skip(LineSlice.wrap("not quarantined".getBytes()), null));
+			assertEquals(2, malformedLines.skipped());
+		}
+		
+		// Wrapped lines have no offset in a file
+		assertEquals(Arrays.asList("-1\tbad line", "logs/a.log:-1\t2014/11/24, 10.0.0.1"),
+				Files.readAllLines(Paths.get("test-malformed-quarantine.txt")));
+	}
+	
+	@Test
+	public void skip_ZeroBudgetSkipsNothing() throws IOException {
+		try (MalformedLines malformedLines = new MalformedLines(0, null)) {
+			assertFalse(malformedLines.skip(LineSlice.wrap("bad line".getBytes()), null));
+			assertEquals(0, malformedLines.skipped());
+		}
+	}
+}
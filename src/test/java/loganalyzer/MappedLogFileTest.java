@@ -0,0 +1,73 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+
+public final class MappedLogFileTest {
+	private String sampleLogEntry = "2014/11/24 09:01:01, 10.0.0.1, GET, google.com";
+	private String otherLogEntry = "2014/11/25 13:01:01, 10.0.0.2, POST, theonion.com";
+	
+	@Test(expected=FileNotFoundException.class)
+	public void mappedLogFileTest_InvalidFilePath() throws IOException {
+		@SuppressWarnings("unused")
+		MappedLogFile invalidLogFile = new MappedLogFile("");
+	}
+	
+	@Test
+	public void readLineTest_OpenSimpleFile() throws IOException {
+		createSimpleDataFile("test-mapped.txt");
+		MappedLogFile simpleLogFile = new MappedLogFile("test-mapped.txt");
+		
+		// Same contract as LargeLogFile
+		assertEquals("", simpleLogFile.readLine());
+		assertEquals(sampleLogEntry, simpleLogFile.readLine());
+		assertEquals(otherLogEntry, simpleLogFile.readLine());
+		assertEquals("", simpleLogFile.readLine());
+		assertEquals("", simpleLogFile.readLine());
+	}
+	
+	@Test
+	public void nextLineTest_LinesCrossingWindows() throws IOException {
+		createSimpleDataFile("test-mapped-window.txt");
+		// Window is smaller than a single line, so it has to be moved and grown
+		MappedLogFile simpleLogFile = new MappedLogFile("test-mapped-window.txt", 8);
+		LineSlice line = new LineSlice();
+		
+		assertTrue(simpleLogFile.nextLine(line));
+		assertTrue(line.isEmpty());
+		assertTrue(simpleLogFile.nextLine(line));
+		assertEquals(sampleLogEntry, line.toString());
+		assertTrue(simpleLogFile.nextLine(line));
+		assertEquals(otherLogEntry, line.toString());
+		assertEquals(sampleLogEntry.length() + 2, line.fileOffset());
+		assertFalse(simpleLogFile.nextLine(line));
+	}
+	
+	@Test
+	public void nextLineTest_NoTrailingNewline() throws IOException {
+		PrintWriter writer = new PrintWriter("test-mapped-unterminated.txt", "UTF-8");
+		writer.print(sampleLogEntry + "\r\n" + otherLogEntry);
+		writer.close();
+		MappedLogFile simpleLogFile = new MappedLogFile("test-mapped-unterminated.txt");
+		LineSlice line = new LineSlice();
+		
+		assertTrue(simpleLogFile.nextLine(line));
+		assertEquals(sampleLogEntry, line.toString());
+		assertTrue(simpleLogFile.nextLine(line));
+		assertEquals(otherLogEntry, line.toString());
+		assertFalse(simpleLogFile.nextLine(line));
+	}
+	
+	private void createSimpleDataFile(String fileName) throws FileNotFoundException, UnsupportedEncodingException {
+		PrintWriter writer = new PrintWriter(fileName, "UTF-8");
+		writer.print("\n");
+		writer.print(sampleLogEntry + "\n");
+		writer.print(otherLogEntry + "\n");
+		writer.close();
+	}
+}
@@ -0,0 +1,82 @@
+package loganalyzer;
+
+import static loganalyzer.TestLogs.captureOutput;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public final class MultiFileIngesterTest {
+	private static final String[] DOMAINS = {"google.com", "amazon.com", "github.com", "theonion.com", "example.org"};
+	
+	@Test
+	public void resolveTest_DirectoryAndGlob() throws IOException {
+		File directory = createLogDirectory("test-multi-resolve");
+		new File(directory, "notes.txt").createNewFile();
+		
+		assertEquals(Arrays.asList(path(directory, "a.log"), path(directory, "b.log.gz"), path(directory, "c.log"), 
+				path(directory, "empty.log")), 
+				MultiFileIngester.resolve(directory.getPath()));
+		assertEquals(Arrays.asList(path(directory, "b.log.gz")), 
+				MultiFileIngester.resolve(directory.getPath() + File.separator + "*.gz"));
+		assertEquals(Arrays.asList("test-multi-missing.log"), MultiFileIngester.resolve("test-multi-missing.log"));
+	}
+	
+	@Test
+	public void displayAllData_FilesMatchConcatenatedLog() throws IOException {
+		File directory = createLogDirectory("test-multi");
+		PrintWriter writer = new PrintWriter("test-multi-all.txt", "UTF-8");
+		for (int i = 0; i < 30000; i++) {
+			writer.println(logLine(i));
+		}
+		writer.close();
+		
+		List<String> files = MultiFileIngester.resolve(directory.getPath());
+		String expected = captureOutput(new LogUsageData(new MappedLogFile("test-multi-all.txt")));
+		String actual = captureOutput(new LogUsageData(files, 2));
+		
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+		// One thread has fewer files in flight than there are files, so files are submitted as others are merged
+		assertEquals(expected, captureOutput(new LogUsageData(files, 1)));
+	}
+	
+	/**
+	 * Splits 30000 lines over a plain file, a compressed file, another plain file and an empty file.
+	 */
+	private File createLogDirectory(String name) throws IOException {
+		File directory = new File(name);
+		directory.mkdir();
+		writeLines(new FileOutputStream(new File(directory, "a.log")), 0, 10000);
+		writeLines(new GZIPOutputStream(new FileOutputStream(new File(directory, "b.log.gz"))), 10000, 25000);
+		writeLines(new FileOutputStream(new File(directory, "c.log")), 25000, 30000);
+		new FileOutputStream(new File(directory, "empty.log")).close();
+		return directory;
+	}
+	
+	private String path(File directory, String fileName) {
+		return new File(directory, fileName).getPath();
+	}
+	
+	private void writeLines(OutputStream output, int firstLine, int endLine) throws IOException {
+		try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+			for (int i = firstLine; i < endLine; i++) {
+				writer.println(logLine(i));
+			}
+		}
+	}
+	
+	private String logLine(int i) {
+		return String.format("2014/11/%02d %02d:%02d:%02d, 10.0.%d.%d, %s, %s", 
+				1 + i / 1000, (i / 7) % 24, i % 60, (i * 7) % 60, i % 3, i % 17, i % 5 == 0 ? "POST" : "GET", DOMAINS[(i % 13) * (i % 7) % DOMAINS.length]);
+	}
+}
@@ -0,0 +1,66 @@
+package loganalyzer;
+
+import static loganalyzer.TestLogs.captureOutput;
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public final class PartialResultTest {
+	
+	@Test
+	public void mergedShardsMatchSingleRun() throws IOException {
+		// Domain popularity differs between the shards, so counts have to be added up before domains are selected
+		createDataFile("test-partial-all.txt", 0, 30000);
+		createDataFile("test-partial-1.txt", 0, 10000);
+		createDataFile("test-partial-2.txt", 10000, 20000);
+		createDataFile("test-partial-3.txt", 20000, 30000);
+		
+		for (int shard = 1; shard <= 3; shard++) {
+			LogUsageData usageData = new LogUsageData(new MappedLogFile("test-partial-" + shard + ".txt"));
+			assertTrue(usageData.writePartialResult("test-partial-" + shard + ".bin"));
+		}
+		
+		for (int topDomains : new int[] {2, 3}) {
+			LogUsageData single = new LogUsageData(new MappedLogFile("test-partial-all.txt"));
+			single.setTopDomainCount(topDomains);
+			LogUsageData merged = new LogUsageData();
+			merged.readFromPartials(Arrays.asList("test-partial-1.bin", "test-partial-2.bin", "test-partial-3.bin"));
+			merged.setTopDomainCount(topDomains);
+			
+			String expected = captureOutput(single);
+			assertTrue(expected.contains("2014/11/28"));
+			assertEquals(expected, captureOutput(merged));
+		}
+	}
+	
+	@Test
+	public void otherCountingModeIsRejected() throws IOException {
+		createDataFile("test-partial-mode.txt", 0, 1000);
+		assertTrue(new LogUsageData(new MappedLogFile("test-partial-mode.txt")).writePartialResult("test-partial-mode.bin"));
+		
+		LogUsageData merged = new LogUsageData();
+		merged.enableApproximateDomains();
+		merged.readFromPartials(Arrays.asList("test-partial-mode.bin"));
+		assertTrue(captureOutput(merged).startsWith("java.io.IOException: Partial result test-partial-mode.bin was written in another counting mode"));
+		
+		merged = new LogUsageData();
+		merged.readFromPartials(Arrays.asList("test-partial-mode.txt"));
+		assertTrue(captureOutput(merged).startsWith("java.io.IOException: Not a partial result: test-partial-mode.txt"));
+	}
+	
+	/**
+	 * Writes the lines [from, to) of a log whose domain popularity shifts every 10000 lines.
+	 */
+	/**
+	 * The lines [from, to) of a log whose shards of 10000 lines cover the same days with different popular domains.
+	 */
+	private void createDataFile(String fileName, int from, int to) throws FileNotFoundException {
+		TestLogs.writeLines(fileName, from, to, false, i -> String.format("2014/11/%02d %02d:%02d:%02d, 10.0.%d.%d, %s, %s", 
+				1 + (i % 1000) * 28 / 1000, (i / 7) % 24, i % 60, (i * 7) % 60, i % 3, i % 17, i % 5 == 0 ? "POST" : "GET", 
+				TestLogs.DOMAINS[(i / 10000 + i % 13 * (i % 7)) % TestLogs.DOMAINS.length]));
+	}
+}
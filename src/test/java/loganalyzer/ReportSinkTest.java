@@ -0,0 +1,92 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+public final class ReportSinkTest {
+	private static final long EPOCH_DAY = LogTime.epochDay(2014, 11, 24);
+	private static final long EPOCH_HOUR = EPOCH_DAY * 24 + 9;
+	private static final String NEWLINE = System.lineSeparator();
+	
+	@Test
+	public void textReportSinkTest_ConsoleFormat() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		TextReportSink sink = new TextReportSink(output);
+		sink.userCount("10.0.0.1", EPOCH_HOUR, "GET", 2);
+		sink.domainCount(EPOCH_DAY, "b\u00fccher.de", 3);
+		sink.approximateDomainCount(EPOCH_DAY, "google.com", 7, 1);
+		
+		// Nothing is written before the buffer is flushed
+		assertEquals(0, output.size());
+		sink.flush();
+		assertEquals("10.0.0.1 2014/11/24 09:00:00 GET 2" + NEWLINE 
+				+ "2014/11/24 b\u00fccher.de 3" + NEWLINE 
+				+ "2014/11/24 google.com 7 +/- 1" + NEWLINE, output.toString("UTF-8"));
+	}
+	
+	@Test
+	public void textReportSinkTest_CsvFormat() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		TextReportSink sink = new TextReportSink(output, true);
+		sink.userCount("10.0.0.1", EPOCH_HOUR, "GET", 2);
+		sink.domainCount(EPOCH_DAY, "odd,\"domain\"", 3);
+		sink.close();
+		
+		assertEquals("user,10.0.0.1,2014/11/24 09:00:00,GET,2" + NEWLINE 
+				+ "domain,2014/11/24,\"odd,\"\"domain\"\"\",3,0" + NEWLINE, output.toString("UTF-8"));
+	}
+	
+	@Test
+	public void textReportSinkTest_MoreRowsThanBuffer() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		TextReportSink sink = new TextReportSink(output);
+		int rows = 2 * TextReportSink.BUFFER_SIZE / 30;
+		for (int i = 0; i < rows; i++) {
+			sink.userCount("10.0.0.1", EPOCH_HOUR, "GET", i);
+		}
+		sink.flush();
+		
+		String[] lines = output.toString("UTF-8").split(NEWLINE);
+		assertEquals(rows, lines.length);
+		assertEquals("10.0.0.1 2014/11/24 09:00:00 GET " + (rows - 1), lines[rows - 1]);
+	}
+	
+	@Test
+	public void binaryReportSinkTest_Rows() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		BinaryReportSink sink = new BinaryReportSink(output);
+		sink.userCount("10.0.0.1", EPOCH_HOUR, "GET", 2);
+		sink.userCount("10.0.0.1", EPOCH_HOUR + 1, "POST", 1);
+		sink.approximateDomainCount(EPOCH_DAY, "google.com", 7, 1);
+		sink.close();
+		
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(output.toByteArray()));
+		assertEquals(BinaryReportSink.MAGIC, input.readInt());
+		assertEquals(BinaryReportSink.VERSION, input.readByte());
+		
+		assertEquals(BinaryReportSink.USER_ROW, input.readByte());
+		assertEquals("10.0.0.1", input.readUTF());
+		assertEquals(EPOCH_HOUR, input.readInt());
+		assertEquals("GET", input.readUTF());
+		assertEquals(2, input.readLong());
+		
+		assertEquals(BinaryReportSink.SAME_USER_ROW, input.readByte());
+		assertEquals(EPOCH_HOUR + 1, input.readInt());
+		assertEquals("POST", input.readUTF());
+		assertEquals(1, input.readLong());
+		
+		assertEquals(BinaryReportSink.DOMAIN_ROW, input.readByte());
+		assertEquals(EPOCH_DAY, input.readInt());
+		assertEquals("google.com", input.readUTF());
+		assertEquals(7, input.readLong());
+		assertEquals(1, input.readLong());
+		
+		assertEquals(BinaryReportSink.END, input.readByte());
+		assertEquals(-1, input.read());
+	}
+}
@@ -0,0 +1,51 @@
+package loganalyzer;
+
+import static loganalyzer.TestLogs.captureOutput;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public final class SortedRunsTest {
+	
+	@Test
+	public void displayAllData_ExternalSortSameAsInMemory() throws IOException {
+		createDataFile("test-sort.txt", 40000);
+		File runDirectory = new File("test-sort-runs");
+		runDirectory.mkdir();
+		
+		for (int topDomains : new int[] {0, 3}) {
+			LogUsageData inMemory = new LogUsageData(new MappedLogFile("test-sort.txt"));
+			// Runs of 500 user entries and 4000 domain entries
+			LogUsageData external = new LogUsageData(new MappedLogFile("test-sort.txt"));
+			external.setSortMemory(32000, runDirectory.getPath());
+			if (topDomains > 0) {
+				inMemory.setTopDomainCount(topDomains);
+				external.setTopDomainCount(topDomains);
+			}
+			
+			String expected = captureOutput(inMemory);
+			assertTrue(expected.contains("10.0.1.1 2014/11/01"));
+			assertTrue(expected.indexOf("10.0.1.1 ") < expected.indexOf("10.0.1.10 "));
+			assertEquals(expected, captureOutput(external));
+			assertEquals(0, runDirectory.list().length);
+		}
+	}
+	
+	/**
+	 * Writes a log with a few thousand (IP, hour, action) keys, some IPs being prefixes of others, 
+	 * and 200 domains on each of 28 days.
+	 */
+	/**
+	 * Many distinct IPs and domains, so the reports have many entries to sort.
+	 */
+	private void createDataFile(String fileName, int lineCount) throws FileNotFoundException {
+		TestLogs.writeLines(fileName, 0, lineCount, false, i -> String.format("2014/11/%02d %02d:%02d:%02d, %s, %s, site%d.com", 
+				1 + i % 28, (i / 28) % 4, i % 60, (i * 7) % 60, 
+				i % 11 == 0 ? "2001:db8::" + Integer.toHexString(i % 7) : "10.0." + (i % 3) + "." + (i % 97), 
+				i % 5 == 0 ? "POST" : "GET", (i / 28) % 200));
+	}
+}
@@ -0,0 +1,80 @@
+package loganalyzer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntFunction;
+
+/**
+ * Test logs and the capture of the reports, shared by the tests.
+ */
+final class TestLogs {
+	static final String[] DOMAINS = {"google.com", "amazon.com", "github.com", "theonion.com", "example.org"};
+	
+	private TestLogs() {
+	}
+	
+	/**
+	 * Runs displayAllData() and returns what it printed on System.out.
+	 */
+	static String captureOutput(LogUsageData usageData) throws UnsupportedEncodingException {
+		return captureOutput(usageData, new StringBuilder());
+	}
+	
+	/**
+	 * Runs displayAllData() and returns what it printed on System.out, appending what it printed on 
+	 * System.err to errors.
+	 */
+	static String captureOutput(LogUsageData usageData, StringBuilder errors) throws UnsupportedEncodingException {
+		PrintStream originalOut = System.out;
+		PrintStream originalErr = System.err;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(output, true, "UTF-8"));
+		System.setErr(new PrintStream(errorOutput, true, "UTF-8"));
+		try {
+			usageData.displayAllData();
+		} finally {
+			System.setOut(originalOut);
+			System.setErr(originalErr);
+		}
+		errors.append(errorOutput.toString("UTF-8"));
+		return output.toString("UTF-8");
+	}
+	
+	/**
+	 * Writes a log of lineCount lines over the 28 first days of November 2014, in time order by day, with 
+	 * 51 IPs, two actions and the five DOMAINS.
+	 */
+	static void createDataFile(String fileName, int lineCount) throws FileNotFoundException {
+		appendDataFile(fileName, 0, lineCount, lineCount, false);
+	}
+	
+	/**
+	 * Writes the lines [firstLine, endLine) of the log of createDataFile(), e.g. to make it grow.
+	 */
+	static void appendDataFile(String fileName, int firstLine, int endLine, int lineCount, boolean append)
+			throws FileNotFoundException {
+		writeLines(fileName, firstLine, endLine, append, i -> String.format("2014/11/%02d %02d:%02d:%02d, 10.0.%d.%d, %s, %s",
+				1 + i * 28 / lineCount, (i / 7) % 24, i % 60, (i * 7) % 60, i % 3, i % 17, i % 5 == 0 ? "POST" : "GET",
+				DOMAINS[(i % 13) * (i % 7) % DOMAINS.length]));
+	}
+	
+	/**
+	 * Writes the given line for each number in [firstLine, endLine), each followed by "\n".
+	 */
+	static void writeLines(String fileName, int firstLine, int endLine, boolean append, IntFunction<String> line)
+			throws FileNotFoundException {
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(fileName, append), StandardCharsets.UTF_8));
+		for (int i = firstLine; i < endLine; i++) {
+			writer.print(line.apply(i));
+			writer.print('\n');
+		}
+		writer.close();
+	}
+}
@@ -0,0 +1,41 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+
+import java.text.ParseException;
+
+import org.junit.Test;
+
+public final class TimeBucketsTest {
+	
+	@Test
+	public void parse_SortsSizesFinestFirst() {
+		TimeBuckets buckets = TimeBuckets.parse("1d, 5m,1h,1m,5m");
+		
+		assertEquals(60, buckets.finest());
+		assertArrayEquals(new int[] {60, 300, 3600, 86400}, buckets.sizes());
+		assertEquals("5m", TimeBuckets.format(300));
+		assertEquals("2h", TimeBuckets.format(7200));
+		assertEquals("1d", TimeBuckets.format(86400));
+	}
+	
+	@Test
+	public void parse_RejectsSizesThatAreNoMultipleOfTheFinest() {
+		for (String text : new String[] {"5m,7m", "2h,1d,3d,5h", "30s", "0m", "m", "1w", ""}) {
+			try {
+				TimeBuckets.parse(text);
+				fail("Accepted " + text);
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+	}
+	
+	@Test
+	public void bucket_IndexOfTheFinestBucket() throws ParseException {
+		LogDataEntry entry = new LogDataEntry("2014/11/24 10:07:59, 10.0.0.1, GET, google.com");
+		
+		assertEquals(entry.epochHour(), TimeBuckets.HOURLY.bucket(entry));
+		assertEquals(entry.epochSecond() / 300, TimeBuckets.parse("5m,1h").bucket(entry));
+		assertEquals(entry.epochSecond() / 300, TimeBuckets.parse("5m").bucketOfSecond(entry.epochSecond()));
+	}
+}
@@ -0,0 +1,61 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public final class TopKTest {
+	
+	@Test
+	public void offerTest_KeepsHighestCounts() {
+		TopK<String> topK = new TopK<String>(3);
+		topK.offer("a.com", 5);
+		topK.offer("b.com", 1);
+		topK.offer("c.com", 7);
+		topK.offer("d.com", 3);
+		topK.offer("e.com", 2);
+		
+		assertEquals(3, topK.size());
+		assertEquals("d.com", topK.minKey());
+		assertEquals(Arrays.asList("c.com", "a.com", "d.com"), topK.keysDescending());
+	}
+	
+	@Test
+	public void offerTest_EqualCountDoesNotReplaceMinimum() {
+		TopK<String> topK = new TopK<String>(2);
+		topK.offer("a.com", 3);
+		topK.offer("b.com", 3);
+		// On equal counts the key that was added first ranks lower
+		assertEquals("a.com", topK.minKey());
+		
+		assertFalse(topK.offer("c.com", 3));
+		assertTrue(topK.offer("d.com", 5));
+		assertEquals("b.com", topK.minKey());
+	}
+	
+	@Test
+	public void incrementTest_UpdatesInPlace() {
+		TopK<String> topK = new TopK<String>(2);
+		topK.offer("a.com", 1);
+		topK.offer("b.com", 2);
+		
+		assertTrue(topK.increment("a.com", 5));
+		assertFalse(topK.increment("c.com", 1));
+		assertEquals("b.com", topK.minKey());
+		assertEquals(6, topK.count("a.com"));
+		assertEquals(-1, topK.count("c.com"));
+	}
+	
+	@Test
+	public void replaceMinTest_EvictsMinimum() {
+		TopK<String> topK = new TopK<String>(2);
+		topK.offer("a.com", 4);
+		topK.offer("b.com", 2);
+		
+		assertEquals("b.com", topK.replaceMin("c.com", 3));
+		assertFalse(topK.contains("b.com"));
+		assertEquals("c.com", topK.minKey());
+	}
+}
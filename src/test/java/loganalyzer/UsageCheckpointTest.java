@@ -0,0 +1,89 @@
+package loganalyzer;
+
+import static loganalyzer.TestLogs.appendDataFile;
+import static loganalyzer.TestLogs.captureOutput;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.junit.Test;
+
+public final class UsageCheckpointTest {
+	
+	@Test
+	public void resumedRunMatchesFullRun() throws IOException {
+		new File("test-checkpoint.bin").delete();
+		appendDataFile("test-checkpoint.txt", 0, 20000, 40000, false);
+		captureOutput(checkpointedRun("test-checkpoint.txt", false));
+		
+		// The second run only reads the appended lines
+		appendDataFile("test-checkpoint.txt", 20000, 40000, 40000, true);
+		StringBuilder errors = new StringBuilder();
+		String resumed = captureOutput(checkpointedRun("test-checkpoint.txt", false), errors);
+		String expected = captureOutput(new LogUsageData(new MappedLogFile("test-checkpoint.txt")));
+		
+		// The status goes to System.err, so it doesn't mix with the report
+		assertTrue(errors.toString().startsWith("Resuming from checkpoint"));
+		assertEquals(expected, resumed);
+	}
+	
+	@Test
+	public void resumedRunMatchesFullRun_Approximate() throws IOException {
+		new File("test-checkpoint.bin").delete();
+		appendDataFile("test-checkpoint-approximate.txt", 0, 20000, 40000, false);
+		captureOutput(checkpointedRun("test-checkpoint-approximate.txt", true));
+		
+		appendDataFile("test-checkpoint-approximate.txt", 20000, 40000, 40000, true);
+		StringBuilder errors = new StringBuilder();
+		String resumed = captureOutput(checkpointedRun("test-checkpoint-approximate.txt", true), errors);
+		LogUsageData fullRun = new LogUsageData(new MappedLogFile("test-checkpoint-approximate.txt"));
+		fullRun.enableApproximateDomains();
+		
+		assertTrue(errors.toString().startsWith("Resuming from checkpoint"));
+		assertEquals(captureOutput(fullRun), resumed);
+	}
+	
+	@Test
+	public void checkpointOfAnotherLogIsIgnored() throws IOException {
+		new File("test-checkpoint.bin").delete();
+		appendDataFile("test-checkpoint-replaced.txt", 0, 20000, 40000, false);
+		captureOutput(checkpointedRun("test-checkpoint-replaced.txt", false));
+		
+		// Same size, different content
+		appendDataFile("test-checkpoint-replaced.txt", 1, 20001, 40000, false);
+		StringBuilder errors = new StringBuilder();
+		String output = captureOutput(checkpointedRun("test-checkpoint-replaced.txt", false), errors);
+		String expected = captureOutput(new LogUsageData(new MappedLogFile("test-checkpoint-replaced.txt")));
+		
+		assertTrue(errors.toString().startsWith("Ignoring checkpoint"));
+		assertEquals(expected, output);
+	}
+	
+	@Test
+	public void resumedRunStopsAtSameEmptyLine() throws IOException {
+		new File("test-checkpoint.bin").delete();
+		appendDataFile("test-checkpoint-gap.txt", 0, 1000, 40000, false);
+		PrintWriter writer = new PrintWriter(new FileOutputStream("test-checkpoint-gap.txt", true));
+		writer.println("");
+		writer.println("2014/12/31 23:59:59, 10.9.9.9, GET, after-gap.com");
+		writer.close();
+		
+		String first = captureOutput(checkpointedRun("test-checkpoint-gap.txt", false));
+		String resumed = captureOutput(checkpointedRun("test-checkpoint-gap.txt", false));
+		
+		assertFalse(resumed.contains("after-gap.com"));
+		assertEquals(first, resumed);
+	}
+	
+	private LogUsageData checkpointedRun(String fileName, boolean approximate) throws IOException {
+		LogUsageData usageData = new LogUsageData(new MappedLogFile(fileName));
+		if (approximate) {
+			usageData.enableApproximateDomains();
+		}
+		usageData.enableCheckpoints("test-checkpoint.bin", 1);
+		return usageData;
+	}
+}
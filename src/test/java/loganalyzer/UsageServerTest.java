@@ -0,0 +1,118 @@
+package loganalyzer;
+
+import static org.junit.Assert.*;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public final class UsageServerTest {
+	
+	@Test
+	public void queriesAnsweredFromReport() throws IOException {
+		write("test-serve.txt", "2014/11/24 10:01:02, 10.0.0.1, GET, google.com\n" 
+				+ "2014/11/24 10:31:02, 10.0.0.1, GET, amazon.com\n" 
+				+ "2014/11/24 11:01:02, 10.0.0.1, POST, amazon.com\n" 
+				+ "2014/11/24 11:01:02, 10.0.0.2, GET, amazon.com\n", false);
+		try (UsageServer server = new UsageServer(0)) {
+			server.start();
+			assertEquals("503 {\"error\":\"The log is still being read.\"}", get(server, "/status"));
+			
+			LogUsageData usageData = new LogUsageData(new MappedLogFile("test-serve.txt"));
+			usageData.setReportSink(server.reportSink());
+			usageData.displayAllData();
+			
+			assertEquals("200 {\"ip\":\"10.0.0.1\",\"counts\":[{\"hour\":\"2014/11/24 10:00:00\",\"action\":\"GET\",\"count\":2}," 
+					+ "{\"hour\":\"2014/11/24 11:00:00\",\"action\":\"POST\",\"count\":1}]}", get(server, "/users?ip=10.0.0.1"));
+			assertEquals("200 {\"ip\":\"10.9.9.9\",\"counts\":[]}", get(server, "/users?ip=10.9.9.9"));
+			assertEquals("200 {\"day\":\"2014/11/24\",\"domains\":[{\"domain\":\"google.com\",\"count\":1}]}", 
+					get(server, "/domains?day=2014%2F11%2F24"));
+			assertTrue(get(server, "/status").endsWith("\"ips\":2,\"days\":1}"));
+			assertEquals("400 {\"error\":\"Missing query parameter: ip\"}", get(server, "/users"));
+			assertEquals("400 {\"error\":\"Expected a day as yyyy/MM/dd but was: 2014/11\"}", get(server, "/domains?day=2014/11"));
+		}
+	}
+	
+	@Test
+	public void bucketsSummedFromFinerReportedBuckets() throws IOException {
+		write("test-serve-buckets.txt", "2014/11/24 10:01:02, 10.0.0.1, GET, google.com\n" 
+				+ "2014/11/24 10:04:59, 10.0.0.1, GET, amazon.com\n" 
+				+ "2014/11/24 10:05:00, 10.0.0.1, GET, amazon.com\n" 
+				+ "2014/11/24 11:01:02, 10.0.0.1, POST, amazon.com\n", false);
+		try (UsageServer server = new UsageServer(0)) {
+			server.start();
+			LogUsageData usageData = new LogUsageData(new MappedLogFile("test-serve-buckets.txt"));
+			usageData.setTimeBuckets(TimeBuckets.parse("1m"));
+			usageData.setReportSink(server.reportSink());
+			usageData.displayAllData();
+			
+			assertEquals("200 {\"ip\":\"10.0.0.1\",\"bucket\":\"5m\",\"counts\":[{\"start\":\"2014/11/24 10:00:00\",\"action\":\"GET\",\"count\":2}," 
+					+ "{\"start\":\"2014/11/24 10:05:00\",\"action\":\"GET\",\"count\":1}," 
+					+ "{\"start\":\"2014/11/24 11:00:00\",\"action\":\"POST\",\"count\":1}]}", get(server, "/users?ip=10.0.0.1&bucket=5m"));
+			assertEquals("200 {\"ip\":\"10.0.0.1\",\"counts\":[{\"hour\":\"2014/11/24 10:00:00\",\"action\":\"GET\",\"count\":3}," 
+					+ "{\"hour\":\"2014/11/24 11:00:00\",\"action\":\"POST\",\"count\":1}]}", get(server, "/users?ip=10.0.0.1"));
+			assertEquals("200 {\"ip\":\"10.0.0.1\",\"bucket\":\"1d\",\"counts\":[{\"start\":\"2014/11/24 00:00:00\",\"action\":\"GET\",\"count\":3}," 
+					+ "{\"start\":\"2014/11/24 00:00:00\",\"action\":\"POST\",\"count\":1}]}", get(server, "/users?ip=10.0.0.1&bucket=1d"));
+			assertEquals("400 {\"error\":\"Expected a bucket size like 5m, 1h or 1d but was: 5x\"}", get(server, "/users?ip=10.0.0.1&bucket=5x"));
+		}
+	}
+	
+	@Test
+	public void followedLogIsQueriedWhileCounting() throws Exception {
+		write("test-serve-follow.txt", "2014/11/24 10:01:02, 10.0.0.1, GET, google.com\n", false);
+		try (UsageServer server = new UsageServer(0)) {
+			server.start();
+			LogUsageData usageData = new LogUsageData(new FollowingLogFile("test-serve-follow.txt"));
+			usageData.setReportSink(server.reportSink());
+			Thread follower = new Thread(() -> usageData.followAllData(20));
+			follower.start();
+			try {
+				String expected = "200 {\"ip\":\"10.0.0.2\",\"counts\":[{\"hour\":\"2014/11/24 12:00:00\",\"action\":\"GET\",\"count\":1}]}";
+				awaitResponse(server, "/users?ip=10.0.0.1", "200 {\"ip\":\"10.0.0.1\",\"counts\":[{");
+				assertEquals("200 {\"ip\":\"10.0.0.2\",\"counts\":[]}", get(server, "/users?ip=10.0.0.2"));
+				
+				write("test-serve-follow.txt", "2014/11/24 12:01:02, 10.0.0.2, GET, google.com\n", true);
+				awaitResponse(server, "/users?ip=10.0.0.2", expected);
+				assertEquals(expected, get(server, "/users?ip=10.0.0.2"));
+			} finally {
+				usageData.stopFollowing();
+				follower.join();
+			}
+		}
+	}
+	
+	private static void awaitResponse(UsageServer server, String path, String expectedStart) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!get(server, path).startsWith(expectedStart)) {
+			assertTrue("No response starting with " + expectedStart, System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+	
+	/**
+	 * @return the status code and the body of the response
+	 */
+	private static String get(UsageServer server, String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.port() + path).openConnection();
+		try {
+			int status = connection.getResponseCode();
+			try (InputStream input = status == 200 ? connection.getInputStream() : connection.getErrorStream()) {
+				return status + " " + new String(input.readAllBytes(), StandardCharsets.UTF_8);
+			}
+		} finally {
+			connection.disconnect();
+		}
+	}
+	
+	private static void write(String fileName, String text, boolean append) throws IOException {
+		try (OutputStream output = new FileOutputStream(fileName, append)) {
+			output.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}